@@ -0,0 +1,28 @@
+package org.pj.opendict.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Created by pingjiang on 14-6-29.</br>
+ *
+ * benchmarks.jar的入口，参数和JMH的命令行一样。没有指定-prof的时候默认加上GC profiler，
+ * 结果里面的gc.alloc.rate.norm就是每次操作分配的字节数。
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar                     # 运行所有基准测试
+ * java -jar target/benchmarks.jar Lookup -p entries=1000000
+ * java -jar target/benchmarks.jar -h                  # JMH的帮助
+ * </pre>
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<String>(Arrays.asList(args));
+        if (!options.contains("-prof")) {
+            options.add(0, "-prof");
+            options.add(1, "gc");
+        }
+        org.openjdk.jmh.Main.main(options.toArray(new String[options.size()]));
+    }
+}
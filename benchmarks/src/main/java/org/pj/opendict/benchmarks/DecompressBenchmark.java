@@ -0,0 +1,78 @@
+package org.pj.opendict.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pj.opendict.dicts.lingoes.LingoesDictReader;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by pingjiang on 14-6-29.</br>
+ *
+ * 解压所有数据块的吞吐量。解压后的数据写入一个丢弃数据的输出流，只测量解压本身。
+ * 结果里面的inflatedMB是每秒解压出来的MB数。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecompressBenchmark {
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    @Param({"false", "true"})
+    public boolean memoryMapped;
+
+    private LingoesDictReader dictReader;
+
+    @Setup(Level.Trial)
+    public void setUp(DictionaryFiles files) throws IOException {
+        dictReader = new LingoesDictReader(files.ld2.toString(), memoryMapped);
+    }
+
+    /**
+     * 解压的数据量，OPERATIONS类型的计数器按照时间归一化，报告的就是每秒解压的MB数
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Inflated {
+        public double inflatedMB;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            inflatedMB = 0;
+        }
+    }
+
+    private static class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+
+    @Benchmark
+    public void decompress(Inflated inflated) throws IOException {
+        dictReader.decompress(new NullOutputStream(), parallelism);
+        inflated.inflatedMB += dictReader.getInflatedLength() / (1024.0 * 1024.0);
+    }
+}
@@ -0,0 +1,57 @@
+package org.pj.opendict.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Created by pingjiang on 14-6-29.</br>
+ *
+ * 基准测试共用的词典文件，每次trial生成一次，结束以后删除
+ */
+@State(Scope.Benchmark)
+public class DictionaryFiles {
+
+    /**
+     * 词条数
+     */
+    @Param({"10000", "100000"})
+    public int entries;
+
+    /**
+     * 每个压缩数据块解压后的大小
+     */
+    @Param({"65536"})
+    public int blockSize;
+
+    public SyntheticDictionary dictionary;
+    public Path directory;
+    public Path ld2;
+    public Path ldf;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dictionary = new SyntheticDictionary(entries);
+        directory = Files.createTempDirectory("opendict-bench");
+        ld2 = dictionary.writeLd2(directory.resolve("synthetic.ld2"), blockSize);
+        ldf = dictionary.writeLdf(directory.resolve("synthetic.ldf"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+}
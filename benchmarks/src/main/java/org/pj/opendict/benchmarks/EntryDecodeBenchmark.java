@@ -0,0 +1,60 @@
+package org.pj.opendict.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.pj.opendict.dicts.lingoes.LingoesInflateDictReader;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by pingjiang on 14-6-29.</br>
+ *
+ * 解码解压后的数据：逐个解码所有词条，以及建立整个HashMap
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntryDecodeBenchmark {
+
+    private SyntheticDictionary dictionary;
+    private LingoesInflateDictReader reader;
+
+    @Setup(Level.Trial)
+    public void setUp(DictionaryFiles files) {
+        dictionary = files.dictionary;
+        reader = open(false);
+    }
+
+    private LingoesInflateDictReader open(boolean buildDict) {
+        return new LingoesInflateDictReader(ByteBuffer.wrap(dictionary.inflated()),
+                dictionary.tableLength(), dictionary.wordsLength(), dictionary.xmlLength(), buildDict);
+    }
+
+    @Benchmark
+    public void decodeEntries(Blackhole blackhole) {
+        for (int i = 0; i < reader.size(); i++) {
+            blackhole.consume(reader.getWord(i));
+            blackhole.consume(reader.getXml(i));
+        }
+    }
+
+    @Benchmark
+    public Map<String, String> buildDict() {
+        return open(true).getDict();
+    }
+}
@@ -0,0 +1,51 @@
+package org.pj.opendict.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pj.opendict.dicts.lingoes.LDSourceFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by pingjiang on 14-6-29.</br>
+ *
+ * LDF文件的读取解析和写入
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LDSourceFileBenchmark {
+
+    private LDSourceFile ldf;
+    private Path output;
+
+    @Setup(Level.Trial)
+    public void setUp(DictionaryFiles files) throws IOException {
+        ldf = new LDSourceFile(files.ldf.toString());
+        output = files.directory.resolve("output.ldf");
+    }
+
+    @Benchmark
+    public LDSourceFile read(DictionaryFiles files) throws IOException {
+        return new LDSourceFile(files.ldf.toString());
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        ldf.write(output.toString());
+    }
+}
@@ -0,0 +1,38 @@
+package org.pj.opendict.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pj.opendict.dicts.lingoes.LingoesDictReader;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by pingjiang on 14-6-29.</br>
+ *
+ * 打开LD2文件：读取（或者映射）文件并解析文件头、词典信息和数据块索引
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LingoesDictReaderBenchmark {
+
+    @Param({"false", "true"})
+    public boolean memoryMapped;
+
+    @Benchmark
+    public LingoesDictReader open(DictionaryFiles files) throws IOException {
+        return new LingoesDictReader(files.ld2.toString(), memoryMapped);
+    }
+}
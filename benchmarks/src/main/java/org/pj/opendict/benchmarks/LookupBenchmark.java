@@ -0,0 +1,95 @@
+package org.pj.opendict.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pj.opendict.dicts.lingoes.LingoesCompiledIndex;
+import org.pj.opendict.dicts.lingoes.LingoesDictLookup;
+import org.pj.opendict.dicts.lingoes.LingoesDictReader;
+import org.pj.opendict.dicts.lingoes.LingoesInflateDictReader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by pingjiang on 14-6-29.</br>
+ *
+ * 查询一个单词的延迟，使用采样模式可以看到百分位数：
+ * <ul>
+ *     <li>inflated：整个词典已经解压到内存，在索引表上二分查找</li>
+ *     <li>lookup：按需解压数据块的随机访问</li>
+ *     <li>compiled：编译后的索引文件</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBenchmark {
+
+    @Param({"inflated", "lookup", "compiled"})
+    public String mode;
+
+    /**
+     * 随机访问的时候缓存的解压数据块的最大字节数
+     */
+    @Param({"1048576"})
+    public long cacheBytes;
+
+    private LingoesInflateDictReader inflated;
+    private LingoesDictLookup lookup;
+    private LingoesCompiledIndex compiled;
+
+    private String[] words;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp(DictionaryFiles files) throws IOException {
+        SyntheticDictionary dictionary = files.dictionary;
+        String ld2 = files.ld2.toString();
+        if (mode.equals("inflated")) {
+            inflated = new LingoesInflateDictReader(ByteBuffer.wrap(dictionary.inflated()),
+                    dictionary.tableLength(), dictionary.wordsLength(), dictionary.xmlLength(), false);
+            inflated.getHeadwordIndex();
+        } else if (mode.equals("lookup")) {
+            lookup = new LingoesDictReader(ld2, true).openLookup(cacheBytes);
+            lookup.getHeadwordIndex();
+        } else {
+            String index = files.directory.resolve("synthetic.ld2" + LingoesCompiledIndex.EXT).toString();
+            compiled = LingoesCompiledIndex.openOrCompile(ld2, index, cacheBytes, 1);
+        }
+
+        // 固定种子的随机单词，每次查询取下一个
+        Random random = new Random(42);
+        words = new String[4096];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = SyntheticDictionary.word(random.nextInt(dictionary.size()));
+        }
+    }
+
+    @Benchmark
+    public String lookup() throws IOException {
+        String word = words[next];
+        next = (next + 1) & (words.length - 1);
+        if (inflated != null) {
+            return inflated.lookup(word);
+        } else if (lookup != null) {
+            return lookup.lookup(word);
+        } else {
+            return compiled.lookup(word);
+        }
+    }
+}
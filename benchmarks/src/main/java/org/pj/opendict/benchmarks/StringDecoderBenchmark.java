@@ -0,0 +1,77 @@
+package org.pj.opendict.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pj.opendict.dicts.SensitiveStringDecoder;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by pingjiang on 14-6-29.</br>
+ *
+ * 单个单词的解码，和JDK的new String(byte[], Charset)对比
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringDecoderBenchmark {
+
+    @Param({"UTF-8", "UTF-16LE"})
+    public String charset;
+
+    @Param({"ascii", "cjk"})
+    public String text;
+
+    private Charset cs;
+    private SensitiveStringDecoder decoder;
+    private byte[] bytes;
+    private final StringBuilder out = new StringBuilder();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cs = Charset.forName(charset);
+        decoder = new SensitiveStringDecoder(cs);
+        String word = text.equals("ascii") ? "internationalization" : "国际化的中文词典单词";
+        bytes = word.getBytes(cs);
+    }
+
+    @Benchmark
+    public char[] decode() {
+        return decoder.decode(bytes, 0, bytes.length);
+    }
+
+    @Benchmark
+    public String decodeString() {
+        return decoder.decodeString(bytes, 0, bytes.length);
+    }
+
+    @Benchmark
+    public CharSequence decodeView() {
+        return decoder.decodeView(bytes, 0, bytes.length);
+    }
+
+    @Benchmark
+    public int decodeToBuilder() {
+        out.setLength(0);
+        return decoder.decode(bytes, 0, bytes.length, out);
+    }
+
+    @Benchmark
+    public String jdkNewString() {
+        return new String(bytes, 0, bytes.length, cs);
+    }
+}
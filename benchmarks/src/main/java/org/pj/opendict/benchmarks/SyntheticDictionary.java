@@ -0,0 +1,114 @@
+package org.pj.opendict.benchmarks;
+
+import org.pj.opendict.SyntheticLD2;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Created by pingjiang on 14-6-29.</br>
+ *
+ * 基准测试用的词典，使用测试的{@link SyntheticLD2}生成指定词条数的LD2文件，也可以生成同样内容的LDF文件。</br>
+ *
+ * 单词按字母顺序排列，每5个词条有一个只引用前一个词条的释义，每3个释义有一个包含中文。
+ */
+public class SyntheticDictionary {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final int entries;
+    private final SyntheticLD2 ld2;
+    private final byte[] inflated;
+    private final int tableLength;
+    private final int wordsLength;
+    private final int xmlLength;
+
+    public SyntheticDictionary(int entries) {
+        this.entries = entries;
+        this.ld2 = new SyntheticLD2().id(0x1234abcdL + entries);
+        for (int i = 0; i < entries; i++) {
+            if (isReferencing(i)) {
+                ld2.add(word(i), xml(i), i - 1);
+            } else {
+                ld2.add(word(i), xml(i));
+            }
+        }
+        this.inflated = ld2.inflated();
+        this.tableLength = ld2.tableLength();
+        this.wordsLength = ld2.wordsLength();
+        this.xmlLength = ld2.xmlLength();
+    }
+
+    private static boolean isReferencing(int i) {
+        return i > 0 && i % 5 == 0;
+    }
+
+    public static String word(int i) {
+        return String.format("word%07d", i);
+    }
+
+    private static String xml(int i) {
+        if (isReferencing(i)) {
+            return "";
+        }
+        String text = i % 3 == 0 ? "释义 " + i + " 的中文解释" : "definition of " + word(i) + " #" + i;
+        return "<C><F><H></H><I><N><![CDATA[" + text + "]]></N></I></F></C>";
+    }
+
+    public int size() {
+        return entries;
+    }
+
+    /**
+     * @return 解压后的数据：索引表|单词|XML
+     */
+    public byte[] inflated() {
+        return inflated;
+    }
+
+    public int tableLength() {
+        return tableLength;
+    }
+
+    public int wordsLength() {
+        return wordsLength;
+    }
+
+    public int xmlLength() {
+        return xmlLength;
+    }
+
+    /**
+     * 生成LD2文件
+     *
+     * @param path 文件路径
+     * @param blockSize 每个压缩数据块解压后的大小
+     */
+    public Path writeLd2(Path path, int blockSize) throws IOException {
+        return ld2.blockSize(blockSize).write(path);
+    }
+
+    /**
+     * 生成同样内容的LDF文件，引用其他词条的释义直接展开
+     */
+    public Path writeLdf(Path path) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, UTF_8)) {
+            writer.write("###Title: Synthetic Dictionary\n");
+            writer.write("###Description: " + entries + " synthetic entries\n");
+            writer.write("###Author: opendict\n");
+            writer.write("###Email: opendict@example.com\n");
+            writer.write("###Website: http://example.com/\n");
+            writer.write("###Copyright: none\n");
+            writer.write("\n");
+            for (int i = 0; i < entries; i++) {
+                writer.write(i % 7 == 0 ? word(i) + "|" + word(i).toUpperCase() : word(i));
+                writer.write("\n");
+                writer.write(isReferencing(i) ? xml(i - 1) : xml(i));
+                writer.write("\n\n");
+            }
+        }
+        return path;
+    }
+}
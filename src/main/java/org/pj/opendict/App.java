@@ -1,7 +1,10 @@
 package org.pj.opendict;
 
+import org.pj.opendict.dicts.DictEntryHandler;
+import org.pj.opendict.dicts.ExportFormat;
+import org.pj.opendict.dicts.lingoes.InflatedDataCache;
 import org.pj.opendict.dicts.lingoes.LingoesDictReader;
-import sun.misc.BASE64Decoder;
+import org.pj.opendict.metrics.Metrics;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -18,11 +21,16 @@ public class App
 {
     private static Logger logger = LoggerFactory.getLogger(App.class);
 
+    /**
+     * 解压数据缓存目录的默认大小限制
+     */
+    private static final long CACHE_MAX_BYTES = 1024L * 1024 * 1024 * 4;
+
     private static final String LD2 = "/Users/pingjiang/Downloads/Oxford Advanced Learner's Dictionary.ld2";
 
     public static void main( String[] args ) {
         if (args.length == 0) {
-            logger.error("Usage: PROGRAM path/to/ld2/file [inflated file path]");
+            logger.error("Usage: PROGRAM path/to/ld2/file [inflated file path | output .ldf/.tsv/.jsonl path]");
             return;
         }
 
@@ -30,12 +38,37 @@ public class App
             LingoesDictReader dictReader = new LingoesDictReader(args[0]);
             logger.debug("Read file {} successfully", args[0]);
 
-            String inflatedFilePath = (args.length > 1 ? args[1] : (args[0] + ".inflated"));
-            dictReader.decompress(inflatedFilePath);
+            // 指定了缓存目录的时候，同一个词典再次处理不需要重新解压
+            String cacheDir = System.getProperty("opendict.cache.dir");
+            if (cacheDir != null) {
+                dictReader.setInflatedDataCache(new InflatedDataCache(cacheDir,
+                        Long.getLong("opendict.cache.maxBytes", CACHE_MAX_BYTES)));
+            }
+
+            final int parallelism = Runtime.getRuntime().availableProcessors();
+            if (args.length > 1 && ExportFormat.forPath(args[1]) != null) {
+                // 导出到LDF、TSV或者JSONL文件
+                long entries = dictReader.export(args[1], ExportFormat.forPath(args[1]), parallelism);
+                logger.info("Exported {} entries to {}", entries, args[1]);
+            } else if (args.length > 1) {
+                // 指定了解压文件的时候，保留解压后的文件
+                String inflatedFilePath = args[1];
+                dictReader.decompress(inflatedFilePath, parallelism);
 
-            dictReader.export(inflatedFilePath);
+                dictReader.export(inflatedFilePath);
+            } else {
+                dictReader.export(new DictEntryHandler() {
+                    @Override
+                    public void onEntry(String word, String xml) {
+                        logger.debug("Dictionary: {}={}", word, xml);
+                    }
+                }, parallelism);
+            }
 
             logger.debug("Export successfully");
+            if (Metrics.isEnabled()) {
+                logger.info("Metrics:\n{}", Metrics.report());
+            }
         } catch (IOException e) {
             logger.error("Process exception: {}", e);
         }
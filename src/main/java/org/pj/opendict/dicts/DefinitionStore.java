@@ -0,0 +1,201 @@
+package org.pj.opendict.dicts;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Created by pingjiang on 14-7-1.</br>
+ *
+ * 释义的紧凑存储。释义按照原来的编码（UTF-8或者UTF-16LE）保存在共享的字节数组页面中，
+ * 读取的时候才解码成字符串，大部分是ASCII的XML只占用String一半的内存。</br>
+ *
+ * 内容完全一样的释义通过哈希值去重，只保存一份，{@link #add(byte[], int, int)}返回同一个序号。
+ * 每个释义只在一个页面中，比页面还大的释义单独使用一个页面。
+ */
+public class DefinitionStore {
+    /**
+     * 每个页面的字节数
+     */
+    static final int PAGE_SIZE = 1024 * 1024;
+
+    private final SensitiveStringDecoder decoder;
+
+    private final List<byte[]> pages = new ArrayList<byte[]>();
+    private byte[] page = new byte[0];
+    private int pagePosition = 0;
+    private long bytes = 0;
+
+    // 每个释义的页面、页面中的位置、长度和哈希值
+    private int[] pageIndexes = new int[16];
+    private int[] offsets = new int[16];
+    private int[] lengths = new int[16];
+    private int[] hashes = new int[16];
+    private int size = 0;
+
+    /**
+     * 开放寻址的去重表，保存释义序号+1，0表示空
+     */
+    private int[] table = new int[32];
+
+    /**
+     * @param decoder 释义的编码
+     */
+    public DefinitionStore(SensitiveStringDecoder decoder) {
+        this.decoder = decoder;
+        // 空页面，第一个释义为空的时候也有对应的页面
+        this.pages.add(page);
+    }
+
+    /**
+     * @return 不同的释义的个数
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return 所有页面中使用的字节数
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * 保存一个释义，已经有内容完全一样的释义的时候不再复制
+     *
+     * @return 释义序号
+     */
+    public synchronized int add(byte[] b, int off, int len) {
+        final int hash = hash(b, off, len);
+        final int mask = table.length - 1;
+        int i = spread(hash) & mask;
+        for (int id; (id = table[i] - 1) >= 0; i = (i + 1) & mask) {
+            if (hashes[id] == hash && equals(id, b, off, len)) {
+                return id;
+            }
+        }
+
+        final int id = append(b, off, len, hash);
+        table[i] = id + 1;
+        // 装载因子不超过0.5
+        if (size * 2 > table.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    /**
+     * @return 第id个释义的字节数
+     */
+    public synchronized int length(int id) {
+        return lengths[checkId(id)];
+    }
+
+    /**
+     * @return 第id个释义解码以后的字符串
+     */
+    public String get(int id) {
+        final byte[] b;
+        final int off;
+        final int len;
+        synchronized (this) {
+            checkId(id);
+            b = pages.get(pageIndexes[id]);
+            off = offsets[id];
+            len = lengths[id];
+        }
+        return decoder.decodeString(b, off, len);
+    }
+
+    /**
+     * 解码第id个释义到sb后面
+     *
+     * @return 解码出来的字符数
+     */
+    public int appendTo(int id, StringBuilder sb) {
+        final byte[] b;
+        final int off;
+        final int len;
+        synchronized (this) {
+            checkId(id);
+            b = pages.get(pageIndexes[id]);
+            off = offsets[id];
+            len = lengths[id];
+        }
+        return decoder.decode(b, off, len, sb);
+    }
+
+    private int checkId(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("Definition " + id + " of " + size);
+        }
+        return id;
+    }
+
+    private int append(byte[] b, int off, int len, int hash) {
+        if (len > page.length - pagePosition) {
+            page = new byte[Math.max(PAGE_SIZE, len)];
+            pages.add(page);
+            pagePosition = 0;
+        }
+        System.arraycopy(b, off, page, pagePosition, len);
+
+        if (size == lengths.length) {
+            int capacity = size * 2;
+            pageIndexes = Arrays.copyOf(pageIndexes, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+        }
+        pageIndexes[size] = pages.size() - 1;
+        offsets[size] = pagePosition;
+        lengths[size] = len;
+        hashes[size] = hash;
+
+        pagePosition += len;
+        bytes += len;
+        return size++;
+    }
+
+    private boolean equals(int id, byte[] b, int off, int len) {
+        if (lengths[id] != len) {
+            return false;
+        }
+        final byte[] stored = pages.get(pageIndexes[id]);
+        final int storedOffset = offsets[id];
+        for (int i = 0; i < len; i++) {
+            if (stored[storedOffset + i] != b[off + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        final int mask = table.length - 1;
+        for (int id = 0; id < size; id++) {
+            int i = spread(hashes[id]) & mask;
+            while (table[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            table[i] = id + 1;
+        }
+    }
+
+    /**
+     * FNV-1a
+     */
+    private static int hash(byte[] b, int off, int len) {
+        int h = 0x811C9DC5;
+        for (int i = off, end = off + len; i < end; i++) {
+            h = (h ^ (b[i] & 0xFF)) * 0x01000193;
+        }
+        return h;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,216 @@
+package org.pj.opendict.dicts;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by pingjiang on 14-6-30.</br>
+ *
+ * 把词条写入LDF、TSV或者JSONL文件。解码词条的线程（生产者）把词条按照{@link #CHUNK_ENTRIES}个一段放入有界队列，
+ * 单独的写入线程（消费者）格式化并写入文件，解码和写文件同时进行。</br>
+ *
+ * 队列满的时候生产者等待，同时存在的词条最多是{@link #QUEUE_CHUNKS}段，内存占用和词典大小无关。
+ *
+ * @see org.pj.opendict.dicts.lingoes.LingoesDictReader#export(String, ExportFormat, int)
+ */
+public class DictEntryExporter implements DictEntryHandler, Closeable {
+    private static Logger logger = LoggerFactory.getLogger(DictEntryExporter.class);
+
+    /**
+     * 每段的词条数
+     */
+    static final int CHUNK_ENTRIES = 1024;
+
+    /**
+     * 队列中最多的段数
+     */
+    static final int QUEUE_CHUNKS = 8;
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * 一段词条
+     */
+    private static final class Chunk {
+        final String[] words;
+        final String[] xmls;
+        int size = 0;
+
+        Chunk(int capacity) {
+            words = new String[capacity];
+            xmls = new String[capacity];
+        }
+    }
+
+    /**
+     * 结束标记
+     */
+    private static final Chunk END = new Chunk(0);
+
+    private final ExportFormat format;
+    private final Writer writer;
+    private final BlockingQueue<Chunk> queue = new ArrayBlockingQueue<Chunk>(QUEUE_CHUNKS);
+    private final Thread thread;
+
+    private Chunk chunk = new Chunk(CHUNK_ENTRIES);
+    private long entries = 0;
+    private long skipped = 0;
+    private boolean closed = false;
+    private volatile Throwable failure = null;
+
+    /**
+     * 创建输出文件（UTF-8编码）并启动写入线程
+     *
+     * @param filePath 输出文件
+     * @param format 格式
+     * @param title 标题，只有LDF使用
+     * @throws IOException
+     */
+    public DictEntryExporter(String filePath, ExportFormat format, String title) throws IOException {
+        this.format = format;
+        this.writer = Files.newBufferedWriter(Paths.get(filePath), Charset.forName("UTF-8"));
+
+        StringBuilder sb = new StringBuilder();
+        format.header(sb, title);
+        try {
+            writer.append(sb);
+        } catch (IOException e) {
+            writer.close();
+            throw e;
+        }
+
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                consume();
+            }
+        }, "opendict-export");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public ExportFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * @return 已经接收的词条数，不包括跳过的
+     */
+    public long getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return 格式不能表示而跳过的词条数，见{@link ExportFormat#accepts(String)}
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    @Override
+    public void onEntry(String word, String xml) throws IOException {
+        if (closed) {
+            throw new IOException("Exporter is closed");
+        }
+        if (!format.accepts(word)) {
+            logger.debug("Skip entry {} with headword \"{}\" in {}", entries + skipped, word, format);
+            skipped++;
+            return;
+        }
+        chunk.words[chunk.size] = word;
+        chunk.xmls[chunk.size] = xml;
+        chunk.size++;
+        entries++;
+        if (chunk.size == CHUNK_ENTRIES) {
+            put(chunk);
+            chunk = new Chunk(CHUNK_ENTRIES);
+        }
+    }
+
+    /**
+     * 放入队列，写入线程失败的时候不再等待
+     */
+    private void put(Chunk chunk) throws IOException {
+        try {
+            while (!queue.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+                checkFailure();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Exporting is interrupted");
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure != null) {
+            throw new IOException(failure);
+        }
+    }
+
+    /**
+     * 写入线程：格式化每一段词条并写入文件，直到遇到结束标记
+     */
+    private void consume() {
+        final StringBuilder sb = new StringBuilder(BUFFER_SIZE);
+        try {
+            Chunk next;
+            while ((next = queue.take()) != END) {
+                sb.setLength(0);
+                for (int i = 0; i < next.size; i++) {
+                    format.entry(sb, next.words[i], next.xmls[i]);
+                }
+                writer.append(sb);
+            }
+            writer.flush();
+        } catch (Throwable e) {
+            logger.error("Export failed", e);
+            failure = e;
+        }
+    }
+
+    /**
+     * 写入剩下的词条，等待写入线程结束并关闭文件
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (chunk.size > 0) {
+                put(chunk);
+            }
+            put(END);
+            thread.join();
+            checkFailure();
+            logger.debug("Exported {} entries", entries);
+            if (skipped > 0) {
+                logger.warn("Skipped {} entries that can not be written as {}", skipped, format);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Exporting is interrupted");
+        } finally {
+            if (thread.isAlive()) {
+                thread.interrupt();
+            }
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package org.pj.opendict.dicts;
+
+import java.io.IOException;
+
+/**
+ * Created by pingjiang on 14-6-24.</br>
+ *
+ * 逐条处理词典内容的回调，用于不需要把整个词典加载到内存的场景
+ */
+public interface DictEntryHandler {
+    /**
+     * 处理一个词条
+     *
+     * @param word 单词
+     * @param xml 释义（已经合并了引用的释义）
+     * @throws IOException
+     */
+    void onEntry(String word, String xml) throws IOException;
+}
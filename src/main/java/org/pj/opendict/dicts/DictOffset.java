@@ -71,6 +71,9 @@ public class DictOffset {
         this.next = next;
     }
 
+    /**
+     * 只比较索引本身的内容，不比较前后的索引，否则比较会递归整个索引表
+     */
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -82,8 +85,6 @@ public class DictOffset {
         if (ref != that.ref) return false;
         if (wordOffset != that.wordOffset) return false;
         if (xmlOffset != that.xmlOffset) return false;
-        if (next != null ? !next.equals(that.next) : that.next != null) return false;
-        if (prev != null ? !prev.equals(that.prev) : that.prev != null) return false;
 
         return true;
     }
@@ -94,8 +95,6 @@ public class DictOffset {
         result = 31 * result + xmlOffset;
         result = 31 * result + (int) flag;
         result = 31 * result + (int) ref;
-        result = 31 * result + (prev != null ? prev.hashCode() : 0);
-        result = 31 * result + (next != null ? next.hashCode() : 0);
         return result;
     }
 
@@ -1,39 +1,136 @@
 package org.pj.opendict.dicts;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * Created by pingjiang on 14-6-20.</br>
  *
  * 解压后的字典数据文件索引表</br>
  *
- * 索引表由一个10Byte的数组组成，最后一个索引内容不能用，只能作为前一个索引的参考。
+ * 索引表由一个10Byte的数组组成，最后一个索引内容不能用，只能作为前一个索引的参考。</br>
+ *
+ * 索引直接保存为10Byte的记录，不会为每个索引创建对象。单词和XML的长度通过下一个索引计算。
+ * 可以用{@link #wrap(ByteBuffer, int, int)}直接建立在解压后数据上，这样不需要额外的内存。
  *
  * @see DictOffset 索引表的内容
  */
 public class DictOffsetTable {
-    private final List<DictOffset> data = new ArrayList<DictOffset>();
-    private DictOffset last = null;
+    private static final int BYTES = DictOffset.bytes();
+
+    private ByteBuffer data;
+    private int size;
+    private final boolean readOnly;
+
+    public DictOffsetTable() {
+        this.data = ByteBuffer.allocate(BYTES * 16).order(ByteOrder.LITTLE_ENDIAN);
+        this.size = 0;
+        this.readOnly = false;
+    }
+
+    private DictOffsetTable(ByteBuffer data, int size) {
+        this.data = data;
+        this.size = size;
+        this.readOnly = true;
+    }
+
+    /**
+     * 直接使用缓冲区里面的索引数据，不复制
+     *
+     * @param buffer 解压后的数据
+     * @param offset 索引表的开始位置
+     * @param length 索引表的长度
+     * @return 只读的索引表
+     */
+    public static DictOffsetTable wrap(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.clear();
+        view.limit(offset + length).position(offset);
+        return new DictOffsetTable(view.slice().order(ByteOrder.LITTLE_ENDIAN), length / BYTES);
+    }
 
     /**
-     * 从索引表里面增加一个索引，同时设置好prev, next指针
+     * 从索引表里面增加一个索引
      * @param dictOffset
      */
     public void add(DictOffset dictOffset) {
-        if (last != null) {
-            last.setNext(dictOffset);
-            dictOffset.setPrev(last);
+        add(dictOffset.getWordOffset(), dictOffset.getXmlOffset(), dictOffset.getFlag(), dictOffset.getRef());
+    }
+
+    public void add(int wordOffset, int xmlOffset, byte flag, byte ref) {
+        if (readOnly) {
+            throw new UnsupportedOperationException("DictOffsetTable is read only");
+        }
+        if ((size + 1) * BYTES > data.capacity()) {
+            ByteBuffer grown = ByteBuffer.allocate(data.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+            data.clear();
+            grown.put(data);
+            data = grown;
         }
-        last = dictOffset;
-        data.add(dictOffset);
+
+        int pos = size * BYTES;
+        data.putInt(pos, wordOffset);
+        data.putInt(pos + 4, xmlOffset);
+        data.put(pos + 8, flag);
+        data.put(pos + 9, ref);
+        size++;
     }
 
     public int size() {
-        return data.size();
+        return size;
+    }
+
+    public int getWordOffset(int i) {
+        return data.getInt(checkIndex(i) * BYTES);
+    }
+
+    public int getXmlOffset(int i) {
+        return data.getInt(checkIndex(i) * BYTES + 4);
+    }
+
+    public byte getFlag(int i) {
+        return data.get(checkIndex(i) * BYTES + 8);
+    }
+
+    public byte getRef(int i) {
+        return data.get(checkIndex(i) * BYTES + 9);
+    }
+
+    public int getRefInt(int i) {
+        return getRef(i) & 0xFF;
     }
 
+    /**
+     * @return 单词长度（包含前面的引用），最后一个索引没有长度
+     */
+    public int getWordLength(int i) {
+        return getWordOffset(i + 1) - getWordOffset(i);
+    }
+
+    /**
+     * @return XML长度，最后一个索引没有长度
+     */
+    public int getXmlLength(int i) {
+        return getXmlOffset(i + 1) - getXmlOffset(i);
+    }
+
+    /**
+     * 创建第i个索引对象，只用于兼容以前的代码，遍历的时候应该直接使用上面的方法
+     */
     public DictOffset get(int i) {
-        return data.get(i);
+        DictOffset dictOffset = new DictOffset(getWordOffset(i), getXmlOffset(i), getFlag(i), getRef(i));
+        if (i + 1 < size) {
+            DictOffset next = new DictOffset(getWordOffset(i + 1), getXmlOffset(i + 1), getFlag(i + 1), getRef(i + 1));
+            dictOffset.setNext(next);
+            next.setPrev(dictOffset);
+        }
+        return dictOffset;
+    }
+
+    private int checkIndex(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("index=" + i + ", size=" + size);
+        }
+        return i;
     }
 }
@@ -0,0 +1,179 @@
+package org.pj.opendict.dicts;
+
+/**
+ * Created by pingjiang on 14-6-30.</br>
+ *
+ * 导出词典内容的格式。每个词条占一条记录，单词和释义里面会破坏格式的字符都会被转义。
+ */
+public enum ExportFormat {
+    /**
+     * Lingoes的词典源文件，释义中的换行转换成&lt;br/&gt;。LDF没有转义，单词按照{@link #appendHeadword(StringBuilder, String)}替换，
+     * 空单词会变成空行破坏词条的分隔，不能导出
+     */
+    LDF(".ldf") {
+        @Override
+        public void header(StringBuilder sb, String title) {
+            sb.append("###Title: ").append(title).append('\n');
+            sb.append("###Description: ").append('\n');
+            sb.append("###Author: ").append('\n');
+            sb.append("###Email: ").append('\n');
+            sb.append("###Website: ").append('\n');
+            sb.append("###Copyright: ").append('\n');
+            sb.append('\n');
+        }
+
+        @Override
+        public boolean accepts(String word) {
+            return word != null && !word.isEmpty();
+        }
+
+        @Override
+        public void entry(StringBuilder sb, String word, String xml) {
+            appendHeadword(sb, word);
+            sb.append('\n');
+            appendLine(sb, xml, "<br/>");
+            sb.append("\n\n");
+        }
+    },
+
+    /**
+     * 制表符分隔的单词和释义，\t、\n、\r和\\转义
+     */
+    TSV(".tsv") {
+        @Override
+        public void entry(StringBuilder sb, String word, String xml) {
+            appendTsv(sb, word);
+            sb.append('\t');
+            appendTsv(sb, xml);
+            sb.append('\n');
+        }
+    },
+
+    /**
+     * 每行一个JSON对象：{"word":"...","xml":"..."}
+     */
+    JSONL(".jsonl") {
+        @Override
+        public void entry(StringBuilder sb, String word, String xml) {
+            sb.append("{\"word\":");
+            appendJson(sb, word);
+            sb.append(",\"xml\":");
+            appendJson(sb, xml);
+            sb.append("}\n");
+        }
+    };
+
+    private final String ext;
+
+    ExportFormat(String ext) {
+        this.ext = ext;
+    }
+
+    public String getExt() {
+        return ext;
+    }
+
+    /**
+     * @return 根据文件扩展名判断格式，不认识的扩展名返回null
+     */
+    public static ExportFormat forPath(String path) {
+        for (ExportFormat format : values()) {
+            if (path.toLowerCase().endsWith(format.ext)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 文件头，默认没有
+     */
+    public void header(StringBuilder sb, String title) {
+    }
+
+    /**
+     * @return 这个格式能否表示这个单词，不能表示的词条不会导出
+     */
+    public boolean accepts(String word) {
+        return true;
+    }
+
+    /**
+     * 格式化一个词条
+     */
+    public abstract void entry(StringBuilder sb, String word, String xml);
+
+    /**
+     * LDF单词行中的一个单词：|是备选单词的分隔符，换成全角的｜；换行换成空格
+     */
+    public static void appendHeadword(StringBuilder sb, String word) {
+        final int start = sb.length();
+        appendLine(sb, word, " ");
+        for (int i = start; i < sb.length(); i++) {
+            if (sb.charAt(i) == '|') {
+                sb.setCharAt(i, '\uFF5C');
+            }
+        }
+    }
+
+    private static void appendLine(StringBuilder sb, String s, String lineBreak) {
+        if (s == null) {
+            return;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\r') {
+                if (i + 1 < s.length() && s.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                sb.append(lineBreak);
+            } else if (c == '\n') {
+                sb.append(lineBreak);
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+
+    private static void appendTsv(StringBuilder sb, String s) {
+        if (s == null) {
+            return;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '\t': sb.append("\\t"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\\': sb.append("\\\\"); break;
+                default: sb.append(c); break;
+            }
+        }
+    }
+
+    private static void appendJson(StringBuilder sb, String s) {
+        if (s == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                    break;
+            }
+        }
+        sb.append('"');
+    }
+}
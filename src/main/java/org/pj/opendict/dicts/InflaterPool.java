@@ -0,0 +1,97 @@
+package org.pj.opendict.dicts;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.zip.Inflater;
+
+/**
+ * Created by pingjiang on 14-7-1.</br>
+ *
+ * 可以重复使用的Inflater。每个Inflater都占用zlib的本地内存，只有调用end()才会释放，
+ * 每次解压都创建新的Inflater又不调用end()会一直占用本地内存直到GC。</br>
+ *
+ * {@link #acquire()}和{@link #release(Inflater)}必须成对调用。释放的Inflater重置以后放回池中，
+ * 池中空闲的Inflater超过上限或者池已经关闭的时候直接调用end()。
+ */
+public class InflaterPool implements Closeable {
+    private static final InflaterPool SHARED = new InflaterPool(Runtime.getRuntime().availableProcessors() * 2);
+
+    private final int maxIdle;
+    private final ArrayDeque<Inflater> idle = new ArrayDeque<Inflater>();
+    private long created = 0;
+    private boolean closed = false;
+
+    /**
+     * @param maxIdle 最多保留的空闲Inflater个数
+     */
+    public InflaterPool(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * @return 所有词典默认使用的共享池，不会被关闭
+     */
+    public static InflaterPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * @return 重置过的Inflater，用完以后必须调用{@link #release(Inflater)}
+     */
+    public synchronized Inflater acquire() {
+        if (closed) {
+            throw new IllegalStateException("Inflater pool is closed");
+        }
+        Inflater inflater = idle.pollFirst();
+        if (inflater == null) {
+            inflater = new Inflater();
+            created++;
+        }
+        return inflater;
+    }
+
+    /**
+     * 放回池中，不能再使用这个Inflater
+     */
+    public void release(Inflater inflater) {
+        inflater.reset();
+        synchronized (this) {
+            if (!closed && idle.size() < maxIdle) {
+                idle.addFirst(inflater);
+                return;
+            }
+        }
+        inflater.end();
+    }
+
+    /**
+     * @return 一共创建过的Inflater个数
+     */
+    public synchronized long getCreated() {
+        return created;
+    }
+
+    /**
+     * @return 当前空闲的Inflater个数
+     */
+    public synchronized int getIdle() {
+        return idle.size();
+    }
+
+    /**
+     * 释放所有空闲的Inflater，之后释放的Inflater也会直接释放
+     */
+    @Override
+    public void close() {
+        if (this == SHARED) {
+            throw new UnsupportedOperationException("Shared inflater pool can not be closed");
+        }
+        synchronized (this) {
+            closed = true;
+            for (Inflater inflater : idle) {
+                inflater.end();
+            }
+            idle.clear();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package org.pj.opendict.dicts;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Created by pingjiang on 14-7-1.</br>
+ *
+ * 堆外内存区域。解压后的索引表、单词和XML翻译放在direct buffer中，不占用Java堆，GC的时候不需要扫描和复制。</br>
+ *
+ * 一个区域可以给多个词典使用，读取数据的时候先调用{@link #enter()}，读取完成以后调用{@link #exit()}。
+ * {@link #close()}等待正在读取的线程完成以后马上释放所有分配的内存，以后使用这个区域的词典都不能再访问数据（抛出IllegalStateException）。
+ * 运行环境不支持直接释放的时候，只是不再引用分配的内存，由direct buffer的Cleaner在GC的时候释放。
+ */
+public class OffHeapArena implements Closeable {
+    private static Logger logger = LoggerFactory.getLogger(OffHeapArena.class);
+
+    /**
+     * Java 9以后的Unsafe.invokeCleaner
+     */
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+        } catch (ReflectiveOperationException e) {
+            // Java 8，使用DirectByteBuffer.cleaner()
+            invokeCleaner = null;
+        } catch (RuntimeException e) {
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+    private long allocated = 0;
+    private volatile boolean open = true;
+
+    /**
+     * 读取数据的线程持有读锁，关闭的时候持有写锁
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * 分配一块堆外内存
+     *
+     * @param bytes 字节数
+     * @return 小端序的direct buffer
+     */
+    public synchronized ByteBuffer allocate(int bytes) {
+        checkOpen();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        buffers.add(buffer);
+        allocated += bytes;
+        return buffer;
+    }
+
+    /**
+     * @return 已经分配的字节数
+     */
+    public synchronized long getAllocated() {
+        return allocated;
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * @throws IllegalStateException 区域已经关闭
+     */
+    public void checkOpen() {
+        if (!open) {
+            throw new IllegalStateException("Off-heap arena is closed");
+        }
+    }
+
+    /**
+     * 开始读取区域中的数据，完成以后必须调用{@link #exit()}。可以嵌套调用，但是不能在读取的时候关闭区域
+     *
+     * @throws IllegalStateException 区域已经关闭
+     */
+    public void enter() {
+        lock.readLock().lock();
+        if (!open) {
+            lock.readLock().unlock();
+            throw new IllegalStateException("Off-heap arena is closed");
+        }
+    }
+
+    /**
+     * 结束读取
+     */
+    public void exit() {
+        lock.readLock().unlock();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!open) {
+            return;
+        }
+        open = false;
+
+        // 等待正在读取的线程，之后enter()都会失败，可以安全的释放内存
+        lock.writeLock().lock();
+        try {
+            int freed = 0;
+            for (ByteBuffer buffer : buffers) {
+                if (free(buffer)) {
+                    freed++;
+                }
+            }
+            logger.debug("Close off-heap arena of {} bytes, freed {}/{} buffers", allocated, freed, buffers.size());
+            buffers.clear();
+            allocated = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 直接释放direct buffer的内存
+     *
+     * @return 是否已经释放
+     */
+    private static boolean free(ByteBuffer buffer) {
+        try {
+            if (INVOKE_CLEANER != null) {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+                return true;
+            }
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner == null) {
+                return false;
+            }
+            cleaner.getClass().getMethod("clean").invoke(cleaner);
+            return true;
+        } catch (ReflectiveOperationException e) {
+            logger.debug("Can not free direct buffer: {}", e.toString());
+            return false;
+        } catch (RuntimeException e) {
+            logger.debug("Can not free direct buffer: {}", e.toString());
+            return false;
+        }
+    }
+}
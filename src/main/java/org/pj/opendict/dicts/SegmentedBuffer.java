@@ -0,0 +1,229 @@
+package org.pj.opendict.dicts;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Created by pingjiang on 14-6-24.</br>
+ *
+ * 只读的分段字节缓冲区，使用long寻址，可以表示超过2GB的文件。</br>
+ *
+ * 文件通过{@link FileChannel#map}映射为多个段，只有真正访问到的页面才会被操作系统加载。
+ * 所有数值都按照小端序（little endian byte order）读取。
+ */
+public class SegmentedBuffer {
+    /**
+     * 默认每段映射1GB
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+    private final ByteBuffer[] segments;
+    private final int segmentSize;
+    private final long size;
+
+    private SegmentedBuffer(ByteBuffer[] segments, int segmentSize, long size) {
+        this.segments = segments;
+        this.segmentSize = segmentSize;
+        this.size = size;
+    }
+
+    /**
+     * 包装一个已经在内存中的缓冲区（从0到limit）
+     *
+     * @param buffer 缓冲区
+     * @return 只有一个段的缓冲区
+     */
+    public static SegmentedBuffer wrap(ByteBuffer buffer) {
+        ByteBuffer segment = buffer.duplicate();
+        segment.clear();
+        segment.limit(buffer.limit());
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        int segmentSize = Math.max(segment.limit(), 1);
+        return new SegmentedBuffer(new ByteBuffer[] { segment }, segmentSize, segment.limit());
+    }
+
+    /**
+     * @see #map(FileChannel, int)
+     */
+    public static SegmentedBuffer map(FileChannel channel) throws IOException {
+        return map(channel, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * 将整个文件以只读方式映射到内存
+     *
+     * @param channel 文件通道，映射完成后可以关闭
+     * @param segmentSize 每段的大小
+     * @return 映射后的缓冲区
+     * @throws IOException
+     */
+    public static SegmentedBuffer map(FileChannel channel, int segmentSize) throws IOException {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("segmentSize must be positive: " + segmentSize);
+        }
+        final long size = channel.size();
+        final int count = (int) Math.max(1, (size + segmentSize - 1) / segmentSize);
+        final ByteBuffer[] segments = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long start = (long) i * segmentSize;
+            long length = Math.min(segmentSize, size - start);
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return new SegmentedBuffer(segments, segmentSize, size);
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    public byte get(long position) {
+        checkIndex(position, 1);
+        return segments[segmentIndex(position)].get(segmentOffset(position));
+    }
+
+    public short getShort(long position) {
+        checkIndex(position, 2);
+        ByteBuffer segment = segments[segmentIndex(position)];
+        int offset = segmentOffset(position);
+        if (offset + 2 <= segment.limit()) {
+            return segment.getShort(offset);
+        }
+        return (short) readSpanning(position, 2);
+    }
+
+    public int getInt(long position) {
+        checkIndex(position, 4);
+        ByteBuffer segment = segments[segmentIndex(position)];
+        int offset = segmentOffset(position);
+        if (offset + 4 <= segment.limit()) {
+            return segment.getInt(offset);
+        }
+        return (int) readSpanning(position, 4);
+    }
+
+    public long getLong(long position) {
+        checkIndex(position, 8);
+        ByteBuffer segment = segments[segmentIndex(position)];
+        int offset = segmentOffset(position);
+        if (offset + 8 <= segment.limit()) {
+            return segment.getLong(offset);
+        }
+        return readSpanning(position, 8);
+    }
+
+    /**
+     * 复制一段数据到数组中，可以跨越多个段
+     */
+    public void get(long position, byte[] dst, int off, int len) {
+        checkIndex(position, len);
+        while (len > 0) {
+            ByteBuffer segment = segments[segmentIndex(position)].duplicate();
+            int offset = segmentOffset(position);
+            int n = Math.min(len, segment.limit() - offset);
+            segment.position(offset);
+            segment.get(dst, off, n);
+            position += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * 返回一段数据的小端序视图。数据在同一个段内时不复制，跨段的时候才会复制一份。
+     *
+     * @param position 开始位置
+     * @param length 长度
+     * @return position=0, limit=length的缓冲区
+     */
+    public ByteBuffer slice(long position, int length) {
+        checkIndex(position, length);
+        ByteBuffer segment = segments[segmentIndex(position)];
+        int offset = segmentOffset(position);
+        if (offset + length <= segment.limit()) {
+            ByteBuffer view = segment.duplicate();
+            view.limit(offset + length).position(offset);
+            return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        byte[] copy = new byte[length];
+        get(position, copy, 0, length);
+        return ByteBuffer.wrap(copy).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * 返回读取一段数据的输入流。每个输入流有自己的读取位置，多个线程可以同时读取不同的部分。
+     *
+     * @param position 开始位置
+     * @param length 长度
+     * @return 输入流
+     */
+    public InputStream newInputStream(final long position, final long length) {
+        if (position < 0 || length < 0 || position + length > size) {
+            throw new IndexOutOfBoundsException("position=" + position + ", length=" + length + ", size=" + size);
+        }
+        return new InputStream() {
+            private final long end = position + length;
+            private long next = position;
+
+            @Override
+            public int read() {
+                return next < end ? get(next++) & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) {
+                    return 0;
+                }
+                if (next >= end) {
+                    return -1;
+                }
+                int n = (int) Math.min(len, end - next);
+                get(next, b, off, n);
+                next += n;
+                return n;
+            }
+
+            @Override
+            public long skip(long n) {
+                long skipped = Math.max(Math.min(n, end - next), 0);
+                next += skipped;
+                return skipped;
+            }
+
+            @Override
+            public int available() {
+                return (int) Math.min(end - next, Integer.MAX_VALUE);
+            }
+        };
+    }
+
+    private int segmentIndex(long position) {
+        return (int) (position / segmentSize);
+    }
+
+    private int segmentOffset(long position) {
+        return (int) (position % segmentSize);
+    }
+
+    private long readSpanning(long position, int length) {
+        long value = 0;
+        for (int i = length - 1; i >= 0; i--) {
+            value = (value << 8) | (get(position + i) & 0xFF);
+        }
+        return value;
+    }
+
+    private void checkIndex(long position, int length) {
+        if (position < 0 || length < 0 || position + length > size) {
+            throw new IndexOutOfBoundsException("position=" + position + ", length=" + length + ", size=" + size);
+        }
+    }
+}
@@ -1,37 +1,282 @@
 package org.pj.opendict.dicts;
 
+import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.*;
 import java.util.Arrays;
 
 /**
-* Created by pingjiang on 14-6-20.
+* Created by pingjiang on 14-6-20.</br>
+*
+* 严格的字符串解码，遇到不合法的字节直接报错。</br>
+*
+* 每个线程使用自己的CharsetDecoder和字符缓冲区，解码的时候不需要每次分配新的数组。
+* ASCII兼容的编码（UTF-8等）遇到ASCII字节、UTF-16LE遇到高字节为0的字符的时候直接逐字节转换，
+* 剩下的部分才交给CharsetDecoder。
 */
 public class SensitiveStringDecoder {
     public final String name;
-    private final CharsetDecoder cd;
+    private final Charset cs;
+    private final FastPath fastPath;
+
+    private final ThreadLocal<State> states = new ThreadLocal<State>() {
+        @Override
+        protected State initialValue() {
+            return new State(cs);
+        }
+    };
+
+    /**
+     * 可以直接逐字节转换的字符
+     */
+    private enum FastPath {
+        NONE, ASCII, LATIN1, UTF_16LE
+    }
+
+    /**
+     * 每个线程的解码状态
+     */
+    private static final class State {
+        final CharsetDecoder cd;
+        char[] chars = new char[256];
+        CharBuffer view = CharBuffer.wrap(chars);
+        // 上一次解码的字节数组的ByteBuffer，同一个数组（例如整个解压数据）可以复用。
+        // 缓存只使用弱引用，线程池中的线程不会让已经关闭的词典的数据一直留在内存中
+        WeakReference<ByteBuffer> in;
+        // 上一次解码的堆外缓冲区和这个线程使用的副本
+        WeakReference<ByteBuffer> source;
+        WeakReference<ByteBuffer> sourceView;
+
+        State(Charset cs) {
+            this.cd = cs.newDecoder().onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT);
+        }
+    }
 
     public SensitiveStringDecoder(final Charset cs) {
-        this.cd = cs.newDecoder().onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT);
+        this.cs = cs;
         this.name = cs.name();
+        if (cs.name().equals("ISO-8859-1")) {
+            fastPath = FastPath.LATIN1;
+        } else if (cs.name().equals("UTF-8") || cs.name().equals("US-ASCII")) {
+            fastPath = FastPath.ASCII;
+        } else if (cs.name().equals("UTF-16LE")) {
+            fastPath = FastPath.UTF_16LE;
+        } else {
+            fastPath = FastPath.NONE;
+        }
+    }
+
+    public Charset charset() {
+        return cs;
     }
 
     public char[] decode(final byte[] ba, final int off, final int len) {
-        final int en = (int) (len * (double) this.cd.maxCharsPerByte());
-        final char[] ca = new char[en];
-        if (len == 0) {
-            return ca;
-        }
-        this.cd.reset();
-        final ByteBuffer bb = ByteBuffer.wrap(ba, off, len);
-        final CharBuffer cb = CharBuffer.wrap(ca);
+        final State state = states.get();
+        return Arrays.copyOf(state.chars, decode(state, ba, off, len));
+    }
+
+    /**
+     * 解码成字符串，纯ASCII的时候不经过中间的字符数组
+     */
+    public String decodeString(final byte[] ba, final int off, final int len) {
+        if ((fastPath == FastPath.ASCII && isAscii(ba, off, len)) || fastPath == FastPath.LATIN1) {
+            return new String(ba, off, len, StandardCharsets.ISO_8859_1);
+        }
+        final State state = states.get();
+        return new String(state.chars, 0, decode(state, ba, off, len));
+    }
+
+    /**
+     * 解码到调用者提供的StringBuilder后面
+     *
+     * @return 解码出来的字符数
+     */
+    public int decode(final byte[] ba, final int off, final int len, final StringBuilder out) {
+        final State state = states.get();
+        final int count = decode(state, ba, off, len);
+        out.append(state.chars, 0, count);
+        return count;
+    }
+
+    /**
+     * 解码到当前线程的缓冲区，返回缓冲区的视图，不分配内存。</br>
+     *
+     * 返回的视图在同一个线程下一次使用这个解码器之前有效，需要保留的时候调用toString()。
+     */
+    public CharSequence decodeView(final byte[] ba, final int off, final int len) {
+        final State state = states.get();
+        final int count = decode(state, ba, off, len);
+        state.view.clear();
+        state.view.limit(count);
+        return state.view;
+    }
+
+    /**
+     * 解码ByteBuffer中[off, off+len)的字节，off是绝对位置
+     */
+    public String decodeString(final ByteBuffer buffer, final int off, final int len) {
+        if (buffer.hasArray()) {
+            return decodeString(buffer.array(), buffer.arrayOffset() + off, len);
+        }
+        final State state = states.get();
+        return new String(state.chars, 0, decode(state, buffer, off, len));
+    }
+
+    /**
+     * @see #decode(byte[], int, int, StringBuilder)
+     */
+    public int decode(final ByteBuffer buffer, final int off, final int len, final StringBuilder out) {
+        if (buffer.hasArray()) {
+            return decode(buffer.array(), buffer.arrayOffset() + off, len, out);
+        }
+        final State state = states.get();
+        final int count = decode(state, buffer, off, len);
+        out.append(state.chars, 0, count);
+        return count;
+    }
+
+    /**
+     * @see #decodeView(byte[], int, int)
+     */
+    public CharSequence decodeView(final ByteBuffer buffer, final int off, final int len) {
+        if (buffer.hasArray()) {
+            return decodeView(buffer.array(), buffer.arrayOffset() + off, len);
+        }
+        final State state = states.get();
+        final int count = decode(state, buffer, off, len);
+        state.view.clear();
+        state.view.limit(count);
+        return state.view;
+    }
+
+    private static boolean isAscii(final byte[] ba, final int off, final int len) {
+        for (int i = off, end = off + len; i < end; i++) {
+            if (ba[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 保证state.chars可以放下len个字节解码出来的字符
+     */
+    private static void ensureCapacity(final State state, final int len) {
+        final int en = (int) (len * (double) state.cd.maxCharsPerByte());
+        if (state.chars.length < en) {
+            state.chars = new char[Math.max(en, state.chars.length * 2)];
+            state.view = CharBuffer.wrap(state.chars);
+        }
+    }
+
+    /**
+     * 解码到state.chars
+     *
+     * @return 解码出来的字符数
+     */
+    private int decode(final State state, final byte[] ba, final int off, final int len) {
+        ensureCapacity(state, len);
+        final char[] ca = state.chars;
+
+        // 先逐字节转换开头可以直接转换的部分
+        int i = 0;
+        int n = 0;
+        switch (fastPath) {
+            case LATIN1:
+                for (; i < len; i++) {
+                    ca[n++] = (char) (ba[off + i] & 0xFF);
+                }
+                return n;
+            case ASCII:
+                for (; i < len && ba[off + i] >= 0; i++) {
+                    ca[n++] = (char) ba[off + i];
+                }
+                break;
+            case UTF_16LE:
+                for (; i + 1 < len && ba[off + i + 1] == 0; i += 2) {
+                    ca[n++] = (char) (ba[off + i] & 0xFF);
+                }
+                break;
+            default:
+                break;
+        }
+        if (i == len) {
+            return n;
+        }
+
+        ByteBuffer in = state.in == null ? null : state.in.get();
+        if (in == null || in.array() != ba) {
+            in = ByteBuffer.wrap(ba);
+            state.in = new WeakReference<ByteBuffer>(in);
+        }
+        return decodeRest(state, in, off + i, off + len, n);
+    }
+
+    /**
+     * 解码堆外缓冲区到state.chars，使用绝对位置读取
+     *
+     * @return 解码出来的字符数
+     */
+    private int decode(final State state, final ByteBuffer buffer, final int off, final int len) {
+        ensureCapacity(state, len);
+        final char[] ca = state.chars;
+
+        int i = 0;
+        int n = 0;
+        switch (fastPath) {
+            case LATIN1:
+                for (; i < len; i++) {
+                    ca[n++] = (char) (buffer.get(off + i) & 0xFF);
+                }
+                return n;
+            case ASCII:
+                for (byte b; i < len && (b = buffer.get(off + i)) >= 0; i++) {
+                    ca[n++] = (char) b;
+                }
+                break;
+            case UTF_16LE:
+                for (; i + 1 < len && buffer.get(off + i + 1) == 0; i += 2) {
+                    ca[n++] = (char) (buffer.get(off + i) & 0xFF);
+                }
+                break;
+            default:
+                break;
+        }
+        if (i == len) {
+            return n;
+        }
+
+        // 其他线程可能同时使用同一个缓冲区，每个线程使用自己的副本
+        ByteBuffer view = state.sourceView == null ? null : state.sourceView.get();
+        if (view == null || state.source.get() != buffer) {
+            view = buffer.duplicate();
+            state.source = new WeakReference<ByteBuffer>(buffer);
+            state.sourceView = new WeakReference<ByteBuffer>(view);
+        }
+        return decodeRest(state, view, off + i, off + len, n);
+    }
+
+    /**
+     * 用CharsetDecoder解码bb中[start, end)的字节，放到state.chars的n位置之后
+     *
+     * @return 解码出来的总字符数
+     */
+    private static int decodeRest(final State state, final ByteBuffer bb, final int start, final int end, final int n) {
+        final CharsetDecoder cd = state.cd;
+        cd.reset();
+        bb.clear();
+        bb.position(start);
+        bb.limit(end);
+        final CharBuffer cb = state.view;
+        cb.clear();
+        cb.position(n);
         try {
-            CoderResult cr = this.cd.decode(bb, cb, true);
+            CoderResult cr = cd.decode(bb, cb, true);
             if (!cr.isUnderflow()) {
                 cr.throwException();
             }
-            cr = this.cd.flush(cb);
+            cr = cd.flush(cb);
             if (!cr.isUnderflow()) {
                 cr.throwException();
             }
@@ -40,14 +285,6 @@ public class SensitiveStringDecoder {
             // so this shouldn't happen
             throw new Error(x);
         }
-        return SensitiveStringDecoder.safeTrim(ca, cb.position());
-    }
-
-    private static char[] safeTrim(final char[] ca, final int len) {
-        if (len == ca.length) {
-            return ca;
-        } else {
-            return Arrays.copyOf(ca, len);
-        }
+        return cb.position();
     }
 }
@@ -0,0 +1,12 @@
+package org.pj.opendict.dicts;
+
+import java.io.IOException;
+
+/**
+ * Created by pingjiang on 14-6-30.</br>
+ *
+ * 逐个接收解析出来的LDF词条，不需要把所有词条放到内存中
+ */
+public interface TermHandler {
+    void onTerm(Term term) throws IOException;
+}
@@ -0,0 +1,181 @@
+package org.pj.opendict.dicts;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Created by pingjiang on 14-6-30.</br>
+ *
+ * 词条的单词索引，包括每个词条的主单词和所有的替代单词（good|well|best中的well和best）。</br>
+ *
+ * 使用开放寻址的哈希表，每个槽位是一个long：高32位是词条序号，低32位是单词在词条中的序号，
+ * 单词本身不复制，比较的时候直接读取词条里面的单词。同一个单词出现在多个词条中的时候返回第一个词条，
+ * 和顺序查找的结果一样。</br>
+ *
+ * 词条列表只在后面增加词条的时候，查询之前会自动把新的词条加入索引；删除或者替换词条以后需要调用{@link #rebuild()}。
+ */
+public class TermIndex {
+    private static final long EMPTY = -1L;
+
+    private final List<Term> terms;
+    private final boolean ignoreCase;
+
+    private long[] slots;
+    private int size = 0;
+
+    /**
+     * 已经加入索引的词条数
+     */
+    private int indexed = 0;
+
+    /**
+     * @param terms 词条列表
+     * @param ignoreCase 是否忽略大小写，和{@link String#equalsIgnoreCase(String)}一致
+     */
+    public TermIndex(List<Term> terms, boolean ignoreCase) {
+        this.terms = terms;
+        this.ignoreCase = ignoreCase;
+        this.slots = new long[16];
+        Arrays.fill(slots, EMPTY);
+        update();
+    }
+
+    public boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+    /**
+     * @return 索引中不同的单词数
+     */
+    public synchronized int size() {
+        update();
+        return size;
+    }
+
+    /**
+     * 把新增加的词条加入索引。词条变少的时候重新建立索引
+     */
+    public synchronized void update() {
+        if (terms.size() < indexed) {
+            rebuild();
+            return;
+        }
+        for (int t = indexed; t < terms.size(); t++) {
+            List<String> words = terms.get(t).getWords();
+            for (int w = 0; w < words.size(); w++) {
+                put(words.get(w), t, w);
+            }
+        }
+        indexed = terms.size();
+    }
+
+    /**
+     * 重新建立整个索引
+     */
+    public synchronized void rebuild() {
+        Arrays.fill(slots, EMPTY);
+        size = 0;
+        indexed = 0;
+        update();
+    }
+
+    /**
+     * @param word 单词
+     * @return 包含这个单词的第一个词条的序号，没有找到返回-1
+     */
+    public synchronized int indexOf(String word) {
+        if (word == null) {
+            return -1;
+        }
+        update();
+
+        final int mask = slots.length - 1;
+        for (int i = spread(hash(word)) & mask; ; i = (i + 1) & mask) {
+            long slot = slots[i];
+            if (slot == EMPTY) {
+                return -1;
+            }
+            if (matches(slot, word)) {
+                return (int) (slot >>> 32);
+            }
+        }
+    }
+
+    /**
+     * @param word 单词
+     * @return 包含这个单词的第一个词条，没有找到返回null
+     */
+    public Term get(String word) {
+        int index = indexOf(word);
+        return index < 0 ? null : terms.get(index);
+    }
+
+    private String wordAt(long slot) {
+        return terms.get((int) (slot >>> 32)).getWords().get((int) slot);
+    }
+
+    private boolean matches(long slot, String word) {
+        String key = wordAt(slot);
+        return ignoreCase ? key.equalsIgnoreCase(word) : key.equals(word);
+    }
+
+    private void put(String word, int term, int index) {
+        if (word == null) {
+            return;
+        }
+        // 装载因子不超过0.5
+        if ((size + 1) * 2 > slots.length) {
+            resize();
+        }
+
+        final int mask = slots.length - 1;
+        for (int i = spread(hash(word)) & mask; ; i = (i + 1) & mask) {
+            long slot = slots[i];
+            if (slot == EMPTY) {
+                slots[i] = ((long) term << 32) | (index & 0xFFFFFFFFL);
+                size++;
+                return;
+            }
+            if (matches(slot, word)) {
+                // 保留第一个词条
+                return;
+            }
+        }
+    }
+
+    private void resize() {
+        long[] old = slots;
+        slots = new long[old.length * 2];
+        Arrays.fill(slots, EMPTY);
+        final int mask = slots.length - 1;
+        for (long slot : old) {
+            if (slot == EMPTY) {
+                continue;
+            }
+            int i = spread(hash(wordAt(slot))) & mask;
+            while (slots[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            slots[i] = slot;
+        }
+    }
+
+    /**
+     * 忽略大小写的时候每个字符先转大写再转小写，equalsIgnoreCase相等的单词哈希值一定相等
+     */
+    private int hash(String word) {
+        if (!ignoreCase) {
+            return word.hashCode();
+        }
+        int h = 0;
+        for (int i = 0; i < word.length(); i++) {
+            h = 31 * h + Character.toLowerCase(Character.toUpperCase(word.charAt(i)));
+        }
+        return h;
+    }
+
+    private static int spread(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
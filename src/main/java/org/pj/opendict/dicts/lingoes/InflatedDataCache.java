@@ -0,0 +1,212 @@
+package org.pj.opendict.dicts.lingoes;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Created by pingjiang on 14-6-28.</br>
+ *
+ * 解压后数据的缓存目录。同一个LD2文件再次处理的时候直接使用以前解压的数据，不需要重新解压。</br>
+ *
+ * 缓存文件名由LD2文件头的类型、id、checksum、版本号以及文件大小和修改时间计算出来，LD2文件变化以后就不会再命中。
+ * 缓存文件先写入临时文件，完成以后再改名，长度和文件头记录的解压后长度不一致的缓存文件会被当作损坏删除。
+ * 缓存目录的总大小超过限制的时候，按照最后使用时间删除最久没有使用的文件。
+ */
+public class InflatedDataCache {
+    private static Logger logger = LoggerFactory.getLogger(InflatedDataCache.class);
+
+    public static final String EXT = ".inflated";
+
+    private final Path directory;
+    private final long maxBytes;
+
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * @param directory 缓存目录，不存在的时候会自动创建
+     * @param maxBytes 缓存目录的最大字节数
+     * @throws IOException
+     */
+    public InflatedDataCache(String directory, long maxBytes) throws IOException {
+        this.directory = Paths.get(directory);
+        this.maxBytes = maxBytes;
+        Files.createDirectories(this.directory);
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return LD2文件对应的缓存文件路径（不一定存在）
+     */
+    public Path getPath(LingoesDictReader dictReader) throws IOException {
+        final Path ld2Path = Paths.get(dictReader.getFilePath());
+        final String key = dictReader.getType() + "|" + dictReader.getId() + "|" + dictReader.getVersion() + "|" + Files.size(ld2Path)
+                + "|" + Files.getLastModifiedTime(ld2Path).toMillis();
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(dictReader.getChecksumBytes());
+            byte[] hash = digest.digest(key.getBytes(Charset.forName("UTF-8")));
+            StringBuilder sb = new StringBuilder(dictReader.getId()).append('-');
+            for (byte b : hash) {
+                sb.append(String.format("%02x", b & 0xFF));
+            }
+            return directory.resolve(sb.append(EXT).toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * 返回解压后的数据文件，没有缓存的时候先解压到缓存目录
+     *
+     * @param dictReader LD2文件
+     * @param parallelism 并行解压的线程数
+     * @return 解压后的数据文件
+     * @throws IOException
+     */
+    public Path decompress(LingoesDictReader dictReader, int parallelism) throws IOException {
+        final Path path = getPath(dictReader);
+        if (isValid(path, dictReader)) {
+            synchronized (this) {
+                hits++;
+            }
+            // 更新最后使用时间，用于淘汰
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            logger.debug("Reuse inflated data {}", path);
+            return path;
+        }
+
+        synchronized (this) {
+            misses++;
+        }
+        final Path temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp), 1024 * 64)) {
+                dictReader.decompress(out, parallelism);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        if (!isValid(path, dictReader)) {
+            throw new IOException(String.format("Inflated data of %s is %d bytes, expected %d",
+                    dictReader.getFilePath(), Files.size(path), dictReader.getInflatedLength()));
+        }
+
+        evict(path);
+        return path;
+    }
+
+    /**
+     * 打开缓存的解压数据，没有缓存的时候先解压到缓存目录
+     *
+     * @param dictReader LD2文件
+     * @param parallelism 并行解压的线程数
+     * @return 解析后的词典
+     * @throws IOException
+     */
+    public LingoesInflateDictReader open(LingoesDictReader dictReader, int parallelism) throws IOException {
+        return open(dictReader, parallelism, true);
+    }
+
+    /**
+     * @param buildDict 是否马上建立所有词条的Map，为false时只用于查询
+     * @see #open(LingoesDictReader, int)
+     */
+    public LingoesInflateDictReader open(LingoesDictReader dictReader, int parallelism, boolean buildDict) throws IOException {
+        Path path = decompress(dictReader, parallelism);
+        return new LingoesInflateDictReader(ByteBuffer.wrap(Files.readAllBytes(path)), dictReader.getInflatWordsIndexLength(),
+                dictReader.getInflatWordsLength(), dictReader.getInflatedXmlLength(), buildDict);
+    }
+
+    /**
+     * 检查缓存文件是否完整，不完整的文件会被删除
+     */
+    private boolean isValid(Path path, LingoesDictReader dictReader) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return false;
+        }
+        if (Files.size(path) != dictReader.getInflatedLength()) {
+            logger.warn("Inflated data {} is truncated, delete it", path);
+            Files.deleteIfExists(path);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 删除最久没有使用的缓存文件，直到总大小不超过限制
+     *
+     * @param keep 不能删除的文件（刚刚写入的）
+     */
+    private synchronized void evict(Path keep) throws IOException {
+        final List<Path> files = new ArrayList<Path>();
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + EXT)) {
+            for (Path file : stream) {
+                files.add(file);
+                total += Files.size(file);
+            }
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+
+        final List<FileTime> times = new ArrayList<FileTime>();
+        for (Path file : files) {
+            times.add(Files.getLastModifiedTime(file));
+        }
+        final List<Integer> order = new ArrayList<Integer>();
+        for (int i = 0; i < files.size(); i++) {
+            order.add(i);
+        }
+        Collections.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return times.get(o1).compareTo(times.get(o2));
+            }
+        });
+
+        for (Integer i : order) {
+            if (total <= maxBytes) {
+                break;
+            }
+            Path file = files.get(i);
+            if (file.equals(keep)) {
+                continue;
+            }
+            long size = Files.size(file);
+            if (Files.deleteIfExists(file)) {
+                logger.debug("Evict inflated data {}", file);
+                total -= size;
+            }
+        }
+    }
+}
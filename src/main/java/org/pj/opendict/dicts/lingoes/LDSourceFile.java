@@ -1,16 +1,25 @@
 package org.pj.opendict.dicts.lingoes;
 
+import org.pj.opendict.dicts.SegmentedBuffer;
 import org.pj.opendict.dicts.Term;
+import org.pj.opendict.dicts.TermIndex;
+import org.pj.opendict.metrics.Metrics;
+import org.pj.opendict.metrics.Phase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * Created by pingjiang on 14-6-21.
@@ -28,6 +37,11 @@ public class LDSourceFile {
 
     public static final String EXT = ".ldf";
 
+    /**
+     * 并行解析的时候每段的最小字节数
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024 * 4;
+
     private String title;
     private String description;
     private String author;
@@ -36,6 +50,8 @@ public class LDSourceFile {
     private String copyright;
 
     List<Term> terms = new ArrayList<Term>();
+    private TermIndex termIndex;
+    private TermIndex caseInsensitiveIndex;
 
     public String getTitle() {
         return title;
@@ -89,150 +105,248 @@ public class LDSourceFile {
         return terms;
     }
 
+    /**
+     * 查找包含这个单词（主单词或者替代单词）的第一个词条。第一次查找的时候建立哈希索引
+     *
+     * @param word 单词
+     * @return 词条，没有找到返回null
+     */
     public Term searchTerm(String word) {
-        for (Term term : terms) {
-            if (term.getWords().contains(word)) {
-                return term;
+        return searchTerm(word, false);
+    }
+
+    /**
+     * @param word 单词
+     * @param ignoreCase 是否忽略大小写
+     * @return 包含这个单词的第一个词条，没有找到返回null
+     */
+    public Term searchTerm(String word, boolean ignoreCase) {
+        return getTermIndex(ignoreCase).get(word);
+    }
+
+    /**
+     * @return 词条的单词索引，第一次调用的时候建立，之后增加的词条会在查找之前自动加入索引
+     */
+    public synchronized TermIndex getTermIndex(boolean ignoreCase) {
+        if (ignoreCase) {
+            if (caseInsensitiveIndex == null) {
+                caseInsensitiveIndex = new TermIndex(terms, true);
             }
+            return caseInsensitiveIndex;
         }
-
-        return null;
+        if (termIndex == null) {
+            termIndex = new TermIndex(terms, false);
+        }
+        return termIndex;
     }
 
     /**
-     * 读取一个IDF文件，然后解析其中的单词和释义
+     * 读取一个IDF文件，然后解析其中的单词和释义。逐行流式解析，不会先把所有行读到内存中。
      *
      * @param filePath IDF文件路径
      * @throws IOException
+     * @see LDSourceReader 不需要保存所有词条的时候直接使用流式读取
      */
     public LDSourceFile(String filePath) throws IOException {
-        List<String> lines = Files.readAllLines(Paths.get(filePath), Charset.forName("UTF-8"));
-        readLines(lines);
+        this(filePath, 1);
     }
 
     /**
-     * @see #write(String, String)
-     *
-     * @param filePath
-     * @throws IOException
+     * @see #LDSourceFile(String, int, int)
      */
-    public void write(String filePath) throws IOException {
-        write(filePath, "UTF-8");
+    public LDSourceFile(String filePath, int parallelism) throws IOException {
+        this(filePath, parallelism, DEFAULT_CHUNK_SIZE);
     }
 
     /**
-     * 将单词和释义按照IDF定义的格式写入文件
+     * 并行读取一个UTF-8编码的IDF文件。文件映射到内存后按照空行切分成多段，每段在ForkJoinPool上独立解析，
+     * 最后按照文件中的顺序合并，结果和顺序解析完全一样。</br>
      *
-     * @param filePath 写入文件
-     * @param charset 字符集，默认是UTF-8
+     * 空行后面一定是一个新词条的开始：单词行不能为空，所以空行只能是词条之间的分隔或者一个空的释义，
+     * 两种情况下一行都从空闲状态开始解析。
+     *
+     * @param filePath IDF文件路径
+     * @param parallelism 并行解析的线程数，1表示顺序解析
+     * @param chunkSize 每段的最小字节数
      * @throws IOException
      */
-    public void write(String filePath, String charset) throws IOException {
-        // BufferedOutputStream buffer = new BufferedOutputStream(new FileOutputStream(filePath), 4096);
-        BufferedWriter writer = Files.newBufferedWriter(Paths.get(filePath), Charset.forName(charset));
-        writer.write("###Title: " + getTitle());
-        writer.newLine();
-        writer.write("###Description: " + getDescription());
-        writer.newLine();
-        writer.write("###Author: " + getAuthor());
-        writer.newLine();
-        writer.write("###Email: " + getEmail());
-        writer.newLine();
-        writer.write("###Website: " + getWebsite());
-        writer.newLine();
-        writer.write("###Copyright: " + getCopyright());
-        writer.newLine();
-        writer.newLine();
-
-        for (Term term : terms) {
-            writer.write(join(term.getWords(), "|"));
-            writer.write(term.getExplain());
-            writer.newLine();
+    public LDSourceFile(String filePath, int parallelism, int chunkSize) throws IOException {
+        final long start = Metrics.start();
+        if (parallelism > 1) {
+            readParallel(filePath, parallelism, chunkSize);
+        } else {
+            readSequential(filePath);
         }
+        Metrics.stop(Phase.LDF_PARSE, start, Files.size(Paths.get(filePath)));
+    }
 
-        writer.flush();
-        writer.close();
+    private void readHeader(LDSourceReader reader) {
+        setTitle(reader.getTitle());
+        setDescription(reader.getDescription());
+        setAuthor(reader.getAuthor());
+        setEmail(reader.getEmail());
+        setWebsite(reader.getWebsite());
+        setCopyright(reader.getCopyright());
     }
 
-    private static <T> String join(List<T> items, String delimiter) {
-        if (items.isEmpty()) {
-            return "";
+    private void readSequential(String filePath) throws IOException {
+        try (LDSourceReader reader = new LDSourceReader(filePath)) {
+            readHeader(reader);
+
+            Term term;
+            while ((term = reader.readTerm()) != null) {
+                terms.add(term);
+            }
         }
-        StringBuilder sb = new StringBuilder();
-        boolean first = true;
-        for (T item : items) {
-            if (!first) {
-                sb.append(delimiter);
-            } else {
-                first = false;
+    }
+
+    private void readParallel(String filePath, int parallelism, int chunkSize) throws IOException {
+        final SegmentedBuffer buffer;
+        try (RandomAccessFile file = new RandomAccessFile(filePath, "r"); final FileChannel fChannel = file.getChannel();) {
+            buffer = SegmentedBuffer.map(fChannel);
+        }
+
+        // 文件头
+        long bodyStart = 0;
+        for (int i = 0; i < LDSourceReader.HEADER_LINES && bodyStart < buffer.size(); i++) {
+            bodyStart = nextLine(buffer, bodyStart);
+        }
+        try (LDSourceReader reader = new LDSourceReader(newReader(buffer, 0, bodyStart), true)) {
+            readHeader(reader);
+        }
+
+        // 按照空行切分
+        final List<Long> bounds = new ArrayList<Long>();
+        bounds.add(bodyStart);
+        long target = bodyStart + Math.max(chunkSize, 1);
+        while (target < buffer.size()) {
+            long bound = nextRecord(buffer, target);
+            if (bound >= buffer.size()) {
+                break;
             }
+            bounds.add(bound);
+            target = bound + Math.max(chunkSize, 1);
+        }
+        bounds.add(buffer.size());
+        logger.debug("Parse {} in {} chunks", filePath, bounds.size() - 1);
+
+        final List<Callable<List<Term>>> tasks = new ArrayList<Callable<List<Term>>>();
+        for (int i = 0; i + 1 < bounds.size(); i++) {
+            final long chunkStart = bounds.get(i);
+            final long chunkEnd = bounds.get(i + 1);
+            tasks.add(new Callable<List<Term>>() {
+                @Override
+                public List<Term> call() throws IOException {
+                    List<Term> chunk = new ArrayList<Term>();
+                    try (LDSourceReader reader = new LDSourceReader(newReader(buffer, chunkStart, chunkEnd), false)) {
+                        Term term;
+                        while ((term = reader.readTerm()) != null) {
+                            chunk.add(term);
+                        }
+                    }
+                    return chunk;
+                }
+            });
+        }
 
-            sb.append(item);
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            for (Future<List<Term>> future : pool.invokeAll(tasks)) {
+                terms.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Parsing is interrupted");
+        } catch (ExecutionException e) {
+            // ForkJoinPool把Callable抛出的IOException包装在RuntimeException中
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdown();
         }
+    }
 
-        return sb.toString();
+    private static BufferedReader newReader(SegmentedBuffer buffer, long start, long end) {
+        return new BufferedReader(new InputStreamReader(buffer.newInputStream(start, end - start),
+                Charset.forName("UTF-8").newDecoder()), (int) Math.max(Math.min(end - start, LDSourceReader.BUFFER_SIZE), 1));
     }
 
-    private static String readHeadInfo(String line) {
-        int pos = line.indexOf(':');
-        if (pos != -1) {
-            return line.substring(pos + 1).trim();
-        }
+    private static boolean isLineTerminator(byte b) {
+        return b == '\n' || b == '\r';
+    }
 
-        return "";
+    /**
+     * @return 下一行的开始位置（\n、\r和\r\n都是行结束符），没有下一行的时候返回文件大小
+     */
+    private static long nextLine(SegmentedBuffer buffer, long position) {
+        final long size = buffer.size();
+        while (position < size) {
+            byte b = buffer.get(position++);
+            if (b == '\n') {
+                return position;
+            }
+            if (b == '\r') {
+                return position < size && buffer.get(position) == '\n' ? position + 1 : position;
+            }
+        }
+        return size;
     }
 
-    private void readLines(List<String> lines) throws IOException {
-        int state = 0;// empty
-        int i = 0;
-        if (lines.size() < 6) {
-            throw new IOException("Too short, lines is less than 6");
+    /**
+     * @return position之后第一个空行的下一行的开始位置，也就是一个词条的开始位置
+     */
+    private static long nextRecord(SegmentedBuffer buffer, long position) {
+        final long size = buffer.size();
+        // 先对齐到行首，position可能在\r\n中间
+        if (position > 0 && buffer.get(position - 1) == '\r' && buffer.get(position) == '\n') {
+            position++;
+        } else if (position > 0 && !isLineTerminator(buffer.get(position - 1))) {
+            position = nextLine(buffer, position);
         }
 
-        setTitle(readHeadInfo(lines.get(i++)));
-        setDescription(readHeadInfo(lines.get(i++)));
-        setAuthor(readHeadInfo(lines.get(i++)));
-        setEmail(readHeadInfo(lines.get(i++)));
-        setWebsite(readHeadInfo(lines.get(i++)));
-        setCopyright(readHeadInfo(lines.get(i++)));
-
-        String termWord = null;
-        String termExplain = null;
-        final String[] STATE_NAMES = { "EMPTY", "WORD", "EXPLAIN" };
-
-        while (i < lines.size()) {
-            String line = lines.get(i);
-            System.out.println("state: " + STATE_NAMES[state] + ", line= " + i + ", content= " + line);
-            switch (state) {
-                case 0: // 支持前面有多个空行
-                {
-                    if (!line.isEmpty()) {
-                        state = 1;
-                    } else {
-                        i += 1;
-                    }
-                    break;
-                }
-                case 1: // 解析word
-                {
-                    termWord = line;
-                    i += 1;
-                    state = 2;
-                    break;
-                }
-                case 2: // 解析explain
-                {
-                    termExplain = line;
-                    terms.add(new Term(termWord, termExplain));
-                    i += 1;
-                    state = 0;
-                    break;
-                }
-                default:
-                {
-                    throw new IllegalStateException("state is " + state);
-                }
+        while (position < size) {
+            if (isLineTerminator(buffer.get(position))) {
+                return nextLine(buffer, position);
             }
+            position = nextLine(buffer, position);
+        }
+        return size;
+    }
+
+    /**
+     * @see #write(String, String)
+     *
+     * @param filePath
+     * @throws IOException
+     */
+    public void write(String filePath) throws IOException {
+        write(filePath, "UTF-8");
+    }
+
+    /**
+     * @see #write(String, String, int)
+     */
+    public void write(String filePath, String charset) throws IOException {
+        write(filePath, charset, 1);
+    }
+
+    /**
+     * 将单词和释义按照IDF定义的格式写入文件
+     *
+     * @param filePath 写入文件
+     * @param charset 字符集，默认是UTF-8
+     * @param parallelism 并行格式化的线程数
+     * @throws IOException
+     * @see LDSourceWriter 词条不在内存中的时候直接流式写入
+     */
+    public void write(String filePath, String charset, int parallelism) throws IOException {
+        try (LDSourceWriter writer = new LDSourceWriter(filePath, charset, parallelism)) {
+            writer.writeHeader(getTitle(), getDescription(), getAuthor(), getEmail(), getWebsite(), getCopyright());
+            writer.write(terms.iterator());
         }
     }
 
@@ -0,0 +1,232 @@
+package org.pj.opendict.dicts.lingoes;
+
+import org.pj.opendict.dicts.Term;
+import org.pj.opendict.dicts.TermHandler;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Created by pingjiang on 14-6-30.</br>
+ *
+ * 流式读取LDF文件，打开的时候只解析文件头，词条一个一个的读取，内存占用和文件大小无关。</br>
+ *
+ * 词条可以通过{@link #readTerm()}、{@link #iterator()}、{@link #terms()}或者{@link #readAll(TermHandler)}读取。
+ * 词条之间用空行分隔，第一行是单词（多个单词之间用|分隔），第二行是释义。
+ *
+ * @see LDSourceFile 一次性读取所有词条
+ */
+public class LDSourceReader implements Closeable, Iterable<Term> {
+
+    /**
+     * 读取缓冲区的字符数
+     */
+    static final int BUFFER_SIZE = 1024 * 1024;
+
+    static final int HEADER_LINES = 6;
+
+    private final BufferedReader reader;
+
+    private String title;
+    private String description;
+    private String author;
+    private String email;
+    private String website;
+    private String copyright;
+
+    /**
+     * 已经读取的下一个词条，用于iterator的hasNext()
+     */
+    private Term peeked;
+
+    public LDSourceReader(String filePath) throws IOException {
+        this(filePath, "UTF-8");
+    }
+
+    /**
+     * 打开LDF文件并解析文件头
+     *
+     * @param filePath LDF文件路径
+     * @param charset 字符集，默认是UTF-8
+     * @throws IOException 文件不存在或者文件头不完整
+     */
+    public LDSourceReader(String filePath, String charset) throws IOException {
+        this(new BufferedReader(new InputStreamReader(Files.newInputStream(Paths.get(filePath)),
+                Charset.forName(charset).newDecoder()), BUFFER_SIZE), true);
+    }
+
+    /**
+     * @param reader 输入
+     * @param header 是否先读取文件头，读取文件中间的一段词条的时候为false
+     */
+    LDSourceReader(BufferedReader reader, boolean header) throws IOException {
+        this.reader = reader;
+        if (header) {
+            try {
+                readHeader();
+            } catch (IOException e) {
+                reader.close();
+                throw e;
+            }
+        }
+    }
+
+    private void readHeader() throws IOException {
+        String[] lines = new String[HEADER_LINES];
+        for (int i = 0; i < HEADER_LINES; i++) {
+            lines[i] = reader.readLine();
+            if (lines[i] == null) {
+                throw new IOException("Too short, lines is less than 6");
+            }
+        }
+
+        title = readHeadInfo(lines[0]);
+        description = readHeadInfo(lines[1]);
+        author = readHeadInfo(lines[2]);
+        email = readHeadInfo(lines[3]);
+        website = readHeadInfo(lines[4]);
+        copyright = readHeadInfo(lines[5]);
+    }
+
+    static String readHeadInfo(String line) {
+        int pos = line.indexOf(':');
+        if (pos != -1) {
+            return line.substring(pos + 1).trim();
+        }
+
+        return "";
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getWebsite() {
+        return website;
+    }
+
+    public String getCopyright() {
+        return copyright;
+    }
+
+    /**
+     * 读取下一个词条。跳过词条前面的空行，然后读取单词行和释义行。
+     * 文件最后只有单词没有释义的词条会被忽略。
+     *
+     * @return 词条，没有更多词条的时候返回null
+     * @throws IOException
+     */
+    public Term readTerm() throws IOException {
+        if (peeked != null) {
+            Term term = peeked;
+            peeked = null;
+            return term;
+        }
+
+        String termWord;
+        do {
+            termWord = reader.readLine();
+            if (termWord == null) {
+                return null;
+            }
+        } while (termWord.isEmpty());
+
+        String termExplain = reader.readLine();
+        if (termExplain == null) {
+            return null;
+        }
+        return new Term(termWord, termExplain);
+    }
+
+    /**
+     * 逐个回调所有剩下的词条
+     *
+     * @return 回调的词条数
+     */
+    public long readAll(TermHandler handler) throws IOException {
+        long count = 0;
+        Term term;
+        while ((term = readTerm()) != null) {
+            handler.onTerm(term);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 剩下的词条，读取出错的时候抛出{@link UncheckedIOException}
+     */
+    @Override
+    public Iterator<Term> iterator() {
+        return new Iterator<Term>() {
+            @Override
+            public boolean hasNext() {
+                if (peeked == null) {
+                    try {
+                        peeked = readTerm();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return peeked != null;
+            }
+
+            @Override
+            public Term next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Term term = peeked;
+                peeked = null;
+                return term;
+            }
+        };
+    }
+
+    /**
+     * 剩下的词条组成的顺序流，关闭流的时候关闭文件
+     */
+    public Stream<Term> terms() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(),
+                Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            close();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                });
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
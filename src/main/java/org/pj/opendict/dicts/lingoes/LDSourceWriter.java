@@ -0,0 +1,352 @@
+package org.pj.opendict.dicts.lingoes;
+
+import org.pj.opendict.dicts.ExportFormat;
+import org.pj.opendict.dicts.Term;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Created by pingjiang on 14-6-30.</br>
+ *
+ * 流式写入LDF文件。词条按照{@link #CHUNK_TERMS}个一段，在ForkJoinPool上并行格式化并编码成字节，
+ * 然后按照原来的顺序用FileChannel的gather写入文件，每次写入多段。</br>
+ *
+ * 同时在格式化的段数有上限，写入的速度跟不上的时候{@link #write(Term)}会等待，内存占用和词条总数无关，
+ * 所以可以直接从{@link Iterator}或者{@link Stream}写入，不需要先把所有词条读到内存中。
+ *
+ * @see LDSourceReader
+ */
+public class LDSourceWriter implements Closeable {
+    private static Logger logger = LoggerFactory.getLogger(LDSourceWriter.class);
+
+    /**
+     * 每段的词条数
+     */
+    static final int CHUNK_TERMS = 4096;
+
+    /**
+     * 一次gather写入的最多段数
+     */
+    static final int GATHER_CHUNKS = 16;
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final FileChannel channel;
+    /**
+     * 编码每一段用的字符集，不会写入BOM
+     */
+    private final Charset charset;
+    private final int parallelism;
+    private final ForkJoinPool pool;
+
+    /**
+     * 正在格式化的段，按照写入顺序
+     */
+    private final ArrayDeque<Future<ByteBuffer>> pending = new ArrayDeque<Future<ByteBuffer>>();
+    private List<Term> chunk = new ArrayList<Term>(CHUNK_TERMS);
+
+    private long count = 0;
+    private boolean closed = false;
+
+    public LDSourceWriter(String filePath) throws IOException {
+        this(filePath, "UTF-8", 1);
+    }
+
+    /**
+     * 创建LDF文件，已经存在的文件会被覆盖
+     *
+     * @param filePath 写入文件
+     * @param charset 字符集，默认是UTF-8
+     * @param parallelism 并行格式化的线程数，1表示在调用的线程中格式化
+     * @throws IOException
+     */
+    public LDSourceWriter(String filePath, String charset, int parallelism) throws IOException {
+        // 每一段用单独的编码器，UTF-16这样的字符集会在每一段前面都写BOM。
+        // 所以BOM只在文件开始写一次，每一段用同样字节序但是不写BOM的字符集编码
+        final Charset fileCharset = Charset.forName(charset);
+        final byte[] bom = byteOrderMark(fileCharset);
+        this.charset = bom.length == 0 ? fileCharset : withoutByteOrderMark(fileCharset, bom);
+        this.parallelism = Math.max(parallelism, 1);
+        this.channel = FileChannel.open(Paths.get(filePath),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.pool = this.parallelism > 1 ? new ForkJoinPool(this.parallelism) : null;
+        if (bom.length > 0) {
+            writeFully(new ByteBuffer[] { ByteBuffer.wrap(bom) });
+        }
+    }
+
+    /**
+     * 比较编码一个字符和两个字符的结果，多出来的前缀就是编码器在开始写的BOM
+     *
+     * @return BOM，没有的时候是空数组
+     */
+    static byte[] byteOrderMark(Charset charset) throws CharacterCodingException {
+        final ByteBuffer one = encode(charset, "a");
+        final ByteBuffer two = encode(charset, "aa");
+        final int length = one.remaining() - (two.remaining() - one.remaining());
+        final byte[] bom = new byte[Math.max(length, 0)];
+        one.get(bom);
+        return bom;
+    }
+
+    /**
+     * @return 和BOM的字节序相同但是不写BOM的字符集
+     * @throws IOException 不认识的BOM
+     */
+    private static Charset withoutByteOrderMark(Charset charset, byte[] bom) throws IOException {
+        final String[] names = { "UTF-8", "UTF-16BE", "UTF-16LE", "UTF-32BE", "UTF-32LE" };
+        for (String name : names) {
+            Charset candidate = Charset.forName(name);
+            ByteBuffer mark = encode(candidate, "\uFEFF");
+            if (mark.equals(ByteBuffer.wrap(bom))) {
+                return candidate;
+            }
+        }
+        throw new IOException("Unknown byte order mark of charset " + charset.name());
+    }
+
+    /**
+     * @return 已经写入（或者正在写入）的词条数
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * 写入文件头，必须在所有词条之前调用
+     */
+    public void writeHeader(String title, String description, String author, String email, String website,
+                            String copyright) throws IOException {
+        if (count > 0) {
+            throw new IllegalStateException("Header must be written before terms");
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("###Title: ").append(title).append(LINE_SEPARATOR);
+        sb.append("###Description: ").append(description).append(LINE_SEPARATOR);
+        sb.append("###Author: ").append(author).append(LINE_SEPARATOR);
+        sb.append("###Email: ").append(email).append(LINE_SEPARATOR);
+        sb.append("###Website: ").append(website).append(LINE_SEPARATOR);
+        sb.append("###Copyright: ").append(copyright).append(LINE_SEPARATOR);
+        sb.append(LINE_SEPARATOR);
+        writeFully(new ByteBuffer[] { encode(charset, sb) });
+    }
+
+    /**
+     * @return 是否写入，所有单词都是空的词条会变成空行破坏词条的分隔，跳过不写
+     */
+    public boolean write(Term term) throws IOException {
+        if (closed) {
+            throw new IOException("Writer is closed");
+        }
+        if (isEmptyWordLine(term)) {
+            logger.warn("Skip the term after {} terms, its headword line is empty", count);
+            return false;
+        }
+        chunk.add(term);
+        count++;
+        if (chunk.size() >= CHUNK_TERMS) {
+            submit();
+        }
+        return true;
+    }
+
+    private static boolean isEmptyWordLine(Term term) {
+        for (String word : term.getWords()) {
+            if (word != null && !word.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return 写入的词条数
+     */
+    public long write(Iterator<Term> terms) throws IOException {
+        long written = 0;
+        while (terms.hasNext()) {
+            if (write(terms.next())) {
+                written++;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * @return 写入的词条数
+     */
+    public long write(Stream<Term> terms) throws IOException {
+        return write(terms.iterator());
+    }
+
+    /**
+     * 提交当前段，正在格式化的段太多的时候先写入最前面的段
+     */
+    private void submit() throws IOException {
+        final List<Term> terms = chunk;
+        chunk = new ArrayList<Term>(CHUNK_TERMS);
+        if (pool == null) {
+            writeFully(new ByteBuffer[] { format(charset, terms) });
+            return;
+        }
+
+        pending.add(pool.submit(new Callable<ByteBuffer>() {
+            @Override
+            public ByteBuffer call() throws IOException {
+                return format(charset, terms);
+            }
+        }));
+        if (pending.size() >= parallelism * 2) {
+            drain(false);
+        }
+    }
+
+    /**
+     * 写入最前面已经格式化的段，至少写入一段
+     *
+     * @param all 是否写入所有的段
+     */
+    private void drain(boolean all) throws IOException {
+        while (!pending.isEmpty()) {
+            List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+            buffers.add(await(pending.poll()));
+            while (!pending.isEmpty() && buffers.size() < GATHER_CHUNKS && (all || pending.peek().isDone())) {
+                buffers.add(await(pending.poll()));
+            }
+            writeFully(buffers.toArray(new ByteBuffer[buffers.size()]));
+            if (!all) {
+                return;
+            }
+        }
+    }
+
+    private static ByteBuffer await(Future<ByteBuffer> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Writing is interrupted");
+        } catch (ExecutionException e) {
+            // ForkJoinPool把Callable抛出的IOException包装在RuntimeException中
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private void writeFully(ByteBuffer[] buffers) throws IOException {
+        long remaining = 0;
+        for (ByteBuffer buffer : buffers) {
+            remaining += buffer.remaining();
+        }
+        while (remaining > 0) {
+            remaining -= channel.write(buffers);
+        }
+    }
+
+    /**
+     * 格式化一段词条：单词行（多个单词之间用|分隔）、释义行和一个空行
+     */
+    static ByteBuffer format(Charset charset, List<Term> terms) throws CharacterCodingException {
+        int length = 0;
+        for (Term term : terms) {
+            for (String word : term.getWords()) {
+                length += word.length() + 1;
+            }
+            length += String.valueOf(term.getExplain()).length() + LINE_SEPARATOR.length() * 3;
+        }
+
+        StringBuilder sb = new StringBuilder(length);
+        for (Term term : terms) {
+            List<String> words = term.getWords();
+            for (int i = 0; i < words.size(); i++) {
+                if (i > 0) {
+                    sb.append('|');
+                }
+                ExportFormat.appendHeadword(sb, words.get(i));
+            }
+            sb.append(LINE_SEPARATOR);
+            sb.append(term.getExplain()).append(LINE_SEPARATOR);
+            sb.append(LINE_SEPARATOR);
+        }
+        return encode(charset, sb);
+    }
+
+    /**
+     * 按照平均字节数预先分配缓冲区，不够的时候再扩大
+     */
+    private static ByteBuffer encode(Charset charset, CharSequence chars) throws CharacterCodingException {
+        final CharsetEncoder encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT);
+        final CharBuffer in = CharBuffer.wrap(chars);
+        ByteBuffer out = ByteBuffer.allocate((int) (chars.length() * (double) encoder.averageBytesPerChar()) + 16);
+        while (true) {
+            CoderResult cr = in.hasRemaining() ? encoder.encode(in, out, true) : CoderResult.UNDERFLOW;
+            if (cr.isUnderflow()) {
+                cr = encoder.flush(out);
+            }
+            if (cr.isUnderflow()) {
+                break;
+            }
+            if (cr.isOverflow()) {
+                ByteBuffer larger = ByteBuffer.allocate(out.capacity() * 2);
+                out.flip();
+                larger.put(out);
+                out = larger;
+                continue;
+            }
+            cr.throwException();
+        }
+        out.flip();
+        return out;
+    }
+
+    /**
+     * 写入剩下的词条并关闭文件
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (!chunk.isEmpty()) {
+                submit();
+            }
+            drain(true);
+            logger.debug("Wrote {} terms", count);
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+            channel.close();
+        }
+    }
+}
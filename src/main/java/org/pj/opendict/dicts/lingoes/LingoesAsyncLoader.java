@@ -0,0 +1,343 @@
+package org.pj.opendict.dicts.lingoes;
+
+import org.pj.opendict.dicts.InflaterPool;
+import org.pj.opendict.dicts.SegmentedBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Function;
+import java.util.zip.Inflater;
+
+/**
+ * Created by pingjiang on 14-7-2.</br>
+ *
+ * 使用AsynchronousFileChannel加载LD2文件，适用于网络存储或者机械硬盘上的文件。</br>
+ *
+ * {@link LingoesDictReader}先把整个文件读到内存中才开始解压。这里先只读取文件头和数据块索引，
+ * 然后把压缩数据按照数据块的边界分成大约{@link #DEFAULT_CHUNK_SIZE}字节的段，同时最多预读readAhead段，
+ * 每一段读完以后马上在线程池中解压，读取后面的段和解压前面的段同时进行。解压结果仍然按照数据块的顺序输出。
+ */
+public class LingoesAsyncLoader {
+    private static Logger logger = LoggerFactory.getLogger(LingoesAsyncLoader.class);
+
+    /**
+     * 每段压缩数据的默认字节数
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024 * 4;
+
+    /**
+     * 默认同时读取和解压的段数
+     */
+    public static final int DEFAULT_READ_AHEAD = 4;
+
+    /**
+     * 第一次读取文件头的字节数，不够的时候每次扩大4倍
+     */
+    private static final int HEADER_READ = 1024 * 64;
+
+    private final String filePath;
+    private final int chunkSize;
+    private final int readAhead;
+    private final int parallelism;
+
+    /**
+     * 只包含文件头和数据块索引的LD2文件
+     */
+    private final LingoesDictReader header;
+
+    /**
+     * 每一段的第一个数据块序号，最后一个是数据块总数
+     */
+    private final int[] chunks;
+
+    private InflaterPool inflaterPool = InflaterPool.shared();
+
+    public LingoesAsyncLoader(String filePath) throws IOException {
+        this(filePath, DEFAULT_CHUNK_SIZE, DEFAULT_READ_AHEAD, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * 读取文件头和数据块索引
+     *
+     * @param filePath LD2文件路径
+     * @param chunkSize 每段压缩数据的最小字节数，一段包含一个或者多个完整的数据块
+     * @param readAhead 同时读取和解压的最多段数
+     * @param parallelism 解压的线程数
+     * @throws IOException
+     */
+    public LingoesAsyncLoader(String filePath, int chunkSize, int readAhead, int parallelism) throws IOException {
+        if (chunkSize < 1 || readAhead < 1 || parallelism < 1) {
+            throw new IllegalArgumentException(String.format("Invalid chunkSize=%d, readAhead=%d, parallelism=%d",
+                    chunkSize, readAhead, parallelism));
+        }
+        this.filePath = filePath;
+        this.chunkSize = chunkSize;
+        this.readAhead = readAhead;
+        this.parallelism = parallelism;
+
+        try (AsynchronousFileChannel channel = AsynchronousFileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            this.header = readHeader(channel);
+        }
+        this.chunks = split();
+        logger.debug("Load {} blocks of {} in {} chunks", header.getBlocks(), filePath, chunks.length - 1);
+    }
+
+    public InflaterPool getInflaterPool() {
+        return inflaterPool;
+    }
+
+    public void setInflaterPool(InflaterPool inflaterPool) {
+        this.inflaterPool = inflaterPool;
+    }
+
+    public int getBlocks() {
+        return header.getBlocks();
+    }
+
+    /**
+     * @return 压缩数据分成的段数
+     */
+    public int getChunks() {
+        return chunks.length - 1;
+    }
+
+    /**
+     * @return 解压后的总长度：索引表|单词|XML翻译
+     */
+    public long getInflatedLength() {
+        return header.getInflatedLength();
+    }
+
+    /**
+     * 读取文件开头的一部分，直到能够解析出完整的数据块索引
+     */
+    private LingoesDictReader readHeader(AsynchronousFileChannel channel) throws IOException {
+        final long size = channel.size();
+        long length = Math.min(size, HEADER_READ);
+        while (true) {
+            ByteBuffer prefix = await(read(channel, 0, (int) length));
+            try {
+                return new LingoesDictReader(filePath, SegmentedBuffer.wrap(prefix), size);
+            } catch (IndexOutOfBoundsException e) {
+                if (length == size) {
+                    throw new IOException(String.format("File %s is truncated", filePath), e);
+                }
+                length = Math.min(Math.min(size, length * 4), Integer.MAX_VALUE);
+            }
+        }
+    }
+
+    /**
+     * 按照数据块的边界分段，每段至少chunkSize字节（最后一段除外）
+     */
+    private int[] split() {
+        final int blocks = header.getBlocks();
+        final List<Integer> starts = new ArrayList<Integer>();
+        int first = 0;
+        while (first < blocks) {
+            starts.add(first);
+            int last = first + 1;
+            while (last < blocks && header.blockEnd(last - 1) - header.blockStart(first) < chunkSize) {
+                last++;
+            }
+            first = last;
+        }
+        starts.add(blocks);
+
+        int[] result = new int[starts.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = starts.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * 异步读取文件的一部分，一次没有读完的时候继续读取
+     */
+    private static CompletableFuture<ByteBuffer> read(final AsynchronousFileChannel channel, final long position, int length) {
+        final CompletableFuture<ByteBuffer> future = new CompletableFuture<ByteBuffer>();
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        channel.read(buffer, position, buffer, new CompletionHandler<Integer, ByteBuffer>() {
+            @Override
+            public void completed(Integer result, ByteBuffer attachment) {
+                if (result < 0) {
+                    future.completeExceptionally(new EOFException(String.format("Unexpected end of file at %d",
+                            position + attachment.position())));
+                } else if (attachment.hasRemaining()) {
+                    channel.read(attachment, position + attachment.position(), attachment, this);
+                } else {
+                    attachment.flip();
+                    future.complete(attachment);
+                }
+            }
+
+            @Override
+            public void failed(Throwable exc, ByteBuffer attachment) {
+                future.completeExceptionally(exc);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 解压一段中的所有数据块
+     *
+     * @param chunk 段序号
+     * @param compressed 这一段的压缩数据
+     * @return 解压后的数据
+     */
+    private ByteBuffer inflateChunk(int chunk, ByteBuffer compressed) throws IOException {
+        final int first = chunks[chunk];
+        final int last = chunks[chunk + 1];
+        final long base = header.blockStart(first);
+
+        final Inflater inflater = inflaterPool.acquire();
+        try {
+            byte[] out = new byte[(int) Math.min((long) header.estimateBlockLength() * (last - first), Integer.MAX_VALUE - 8)];
+            int position = 0;
+            for (int i = first; i < last; i++) {
+                int offset = (int) (header.blockStart(i) - base);
+                int length = (int) (header.blockEnd(i) - header.blockStart(i));
+                out = LingoesDictReader.inflate(i, inflater, compressed.array(), compressed.arrayOffset() + offset, length,
+                        out, position, true);
+                position += (int) inflater.getBytesWritten();
+            }
+            return ByteBuffer.wrap(out, 0, position);
+        } finally {
+            inflaterPool.release(inflater);
+        }
+    }
+
+    /**
+     * 边读取边解压所有数据块到输出流，输出流不会被关闭
+     *
+     * @param out 输出流
+     * @throws IOException
+     */
+    public void decompress(OutputStream out) throws IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+            private int count = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ld2-async-inflater-" + (count++));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        final Deque<CompletableFuture<ByteBuffer>> inflight = new ArrayDeque<CompletableFuture<ByteBuffer>>(readAhead);
+
+        try (AsynchronousFileChannel channel = AsynchronousFileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            int next = 0;
+            while (next < getChunks() || !inflight.isEmpty()) {
+                while (next < getChunks() && inflight.size() < readAhead) {
+                    final int chunk = next++;
+                    final long start = header.blockStart(chunks[chunk]);
+                    final int length = (int) (header.blockEnd(chunks[chunk + 1] - 1) - start);
+                    inflight.addLast(read(channel, start, length).thenApplyAsync(new Function<ByteBuffer, ByteBuffer>() {
+                        @Override
+                        public ByteBuffer apply(ByteBuffer compressed) {
+                            try {
+                                return inflateChunk(chunk, compressed);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }
+                    }, executor));
+                }
+
+                // 按照段的顺序写入
+                ByteBuffer inflated = await(inflight.removeFirst());
+                out.write(inflated.array(), 0, inflated.limit());
+            }
+        } finally {
+            for (CompletableFuture<ByteBuffer> future : inflight) {
+                future.cancel(true);
+            }
+            executor.shutdownNow();
+        }
+        out.flush();
+    }
+
+    /**
+     * 边读取边解压到内存中
+     *
+     * @return 解压后的数据
+     * @throws IOException
+     */
+    public ByteBuffer inflate() throws IOException {
+        final long inflatedLength = getInflatedLength();
+        if (inflatedLength > Integer.MAX_VALUE) {
+            throw new IOException(String.format("Inflated data is %d bytes, too large to keep in memory", inflatedLength));
+        }
+
+        final ByteBuffer inflated = ByteBuffer.allocate((int) inflatedLength);
+        decompress(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (len > inflated.remaining()) {
+                    throw new IOException("Inflated data is larger than " + inflated.capacity() + " bytes");
+                }
+                inflated.put(b, off, len);
+            }
+        });
+
+        if (inflated.hasRemaining()) {
+            throw new IOException(String.format("Inflated data is truncated: %d/%d bytes", inflated.position(), inflated.capacity()));
+        }
+        inflated.flip();
+        return inflated;
+    }
+
+    /**
+     * 边读取边解压，打开解压后的词典
+     *
+     * @param buildDict 是否马上建立所有词条的Map，为false时只用于查询
+     * @return 解析后的词典
+     * @throws IOException
+     */
+    public LingoesInflateDictReader open(boolean buildDict) throws IOException {
+        return new LingoesInflateDictReader(inflate(), header.getInflatWordsIndexLength(), header.getInflatWordsLength(),
+                header.getInflatedXmlLength(), buildDict);
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Loading is interrupted");
+        } catch (ExecutionException e) {
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,488 @@
+package org.pj.opendict.dicts.lingoes;
+
+import org.pj.opendict.dicts.SegmentedBuffer;
+import org.pj.opendict.dicts.SensitiveStringDecoder;
+import org.pj.opendict.metrics.Metrics;
+import org.pj.opendict.metrics.Phase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Created by pingjiang on 14-6-27.</br>
+ *
+ * 编译后的词典索引文件。每个LD2文件只需要编译一次，之后直接内存映射就可以查询，不需要反序列化，
+ * 也不需要再解析索引表和解压数据块。查询的时候只解压XML翻译所在的数据块。</br>
+ *
+ * 索引文件通过LD2文件头的id、checksum、版本号和文件大小来判断是否过期。文件格式（小端序）：
+ *
+ * <pre>
+ * - Header 136B
+ * -- 4B magic(LDXI)|4B 格式版本
+ * -- 8B LD2文件大小|8B LD2编号|20B LD2校验和|2B 主要版本号|2B 次要版本号
+ * -- 4B 索引表长度|4B 单词长度|4B XML长度
+ * -- 4B 词条数|4B 数据块数|4B 单词排列顺序
+ * -- 7*8B 下面各部分的开始位置
+ * -- 4B 单词编码|4B XML编码（{@link LingoesEncoding}，编译的时候抽样判断）
+ * - long[blocks+1] 每个数据块解压后的开始位置
+ * - int[entries+1] 每个词条XML的偏移地址（相对于XML部分）
+ * - int[entries+1] 每个词条引用列表的开始位置
+ * - int[] 所有词条的引用列表
+ * - int[entries] 排好序的词条序号
+ * - int[entries+1] 排好序的单词（UTF-8）的偏移地址
+ * - byte[] 排好序的单词（UTF-8）
+ * </pre>
+ */
+public class LingoesCompiledIndex implements LingoesHeadwordIndex.Headwords {
+    private static Logger logger = LoggerFactory.getLogger(LingoesCompiledIndex.class);
+
+    public static final String EXT = ".ldxi";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] MAGIC = { 'L', 'D', 'X', 'I' };
+    private static final int VERSION = 2;
+    private static final int LENGTH_HEADER = 136;
+    private static final int LENGTH_CHECKSUM = 20;
+
+    private static final int POS_FILE_SIZE = 8;
+    private static final int POS_ID = 16;
+    private static final int POS_CHECKSUM = 24;
+    private static final int POS_MAJOR_VERSION = 44;
+    private static final int POS_MINOR_VERSION = 46;
+    private static final int POS_TABLE_LENGTH = 48;
+    private static final int POS_WORDS_LENGTH = 52;
+    private static final int POS_XML_LENGTH = 56;
+    private static final int POS_ENTRIES = 60;
+    private static final int POS_BLOCKS = 64;
+    private static final int POS_COLLATION = 68;
+    private static final int POS_SECTIONS = 72;
+    private static final int POS_WORD_ENCODING = 128;
+    private static final int POS_XML_ENCODING = 132;
+
+    private static final int SECTION_BLOCK_STARTS = 0;
+    private static final int SECTION_XML_OFFSETS = 1;
+    private static final int SECTION_REF_STARTS = 2;
+    private static final int SECTION_REF_TARGETS = 3;
+    private static final int SECTION_SORTED_ENTRIES = 4;
+    private static final int SECTION_KEY_OFFSETS = 5;
+    private static final int SECTION_KEY_BYTES = 6;
+    private static final int SECTIONS = 7;
+
+    private final SegmentedBuffer index;
+    private final LingoesDictReader dictReader;
+    private final LingoesInflatedBlocks blocks;
+    private final LingoesHeadwordIndex headwordIndex;
+    private final long[] sections = new long[SECTIONS];
+    private final int entries;
+    private final long xmlPosition;
+
+    // 编码在编译的时候已经判断好，打开的时候直接读取
+    private final LingoesEncoding wordEncoding;
+    private final LingoesEncoding xmlEncoding;
+    private final SensitiveStringDecoder xmlStringDecoder;
+
+    private LingoesCompiledIndex(SegmentedBuffer index, LingoesDictReader dictReader, long cacheBytes) throws IOException {
+        this.index = index;
+        this.dictReader = dictReader;
+
+        if (!matches(index, dictReader)) {
+            throw new IOException("Compiled index does not match " + dictReader.getFilePath());
+        }
+
+        this.entries = index.getInt(POS_ENTRIES);
+        for (int i = 0; i < SECTIONS; i++) {
+            sections[i] = index.getLong(POS_SECTIONS + i * 8);
+        }
+        this.wordEncoding = LingoesEncoding.values()[index.getInt(POS_WORD_ENCODING)];
+        this.xmlEncoding = LingoesEncoding.values()[index.getInt(POS_XML_ENCODING)];
+        this.xmlStringDecoder = xmlEncoding.newDecoder();
+        this.xmlPosition = (long) dictReader.getInflatWordsIndexLength() + dictReader.getInflatWordsLength();
+
+        final int blockCount = index.getInt(POS_BLOCKS);
+        long[] blockStarts = new long[blockCount + 1];
+        for (int i = 0; i <= blockCount; i++) {
+            blockStarts[i] = index.getLong(sections[SECTION_BLOCK_STARTS] + i * 8L);
+        }
+        this.blocks = new LingoesInflatedBlocks(dictReader, cacheBytes, blockStarts);
+
+        // 单词已经排好序，直接在排好序的单词上二分查找
+        LingoesHeadwordIndex.Collation collation = LingoesHeadwordIndex.Collation.values()[index.getInt(POS_COLLATION)];
+        this.headwordIndex = LingoesHeadwordIndex.of(this, collation, null);
+    }
+
+    /**
+     * 打开编译后的索引文件
+     *
+     * @param ld2Path LD2文件路径
+     * @param indexPath 索引文件路径
+     * @param cacheBytes 缓存的解压数据块的最大字节数
+     * @return 索引
+     * @throws IOException 索引文件不存在、损坏或者已经过期
+     */
+    public static LingoesCompiledIndex open(String ld2Path, String indexPath, long cacheBytes) throws IOException {
+        return new LingoesCompiledIndex(map(indexPath), new LingoesDictReader(ld2Path, true), cacheBytes);
+    }
+
+    /**
+     * 打开编译后的索引文件，不存在或者已经过期的时候重新编译
+     *
+     * @param ld2Path LD2文件路径
+     * @param indexPath 索引文件路径
+     * @param cacheBytes 缓存的解压数据块的最大字节数
+     * @param parallelism 编译的时候并行解压的线程数
+     * @return 索引
+     * @throws IOException
+     */
+    public static LingoesCompiledIndex openOrCompile(String ld2Path, String indexPath, long cacheBytes, int parallelism) throws IOException {
+        LingoesDictReader dictReader = new LingoesDictReader(ld2Path, true);
+        if (Files.isRegularFile(Paths.get(indexPath))) {
+            SegmentedBuffer index = map(indexPath);
+            if (matches(index, dictReader)) {
+                return new LingoesCompiledIndex(index, dictReader, cacheBytes);
+            }
+            logger.debug("Compiled index {} is stale, compile again", indexPath);
+        }
+
+        compile(dictReader, indexPath, parallelism);
+        return new LingoesCompiledIndex(map(indexPath), dictReader, cacheBytes);
+    }
+
+    private static SegmentedBuffer map(String indexPath) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(indexPath, "r"); final FileChannel fChannel = file.getChannel();) {
+            return SegmentedBuffer.map(fChannel);
+        }
+    }
+
+    /**
+     * 检查索引文件是否属于这个LD2文件
+     */
+    private static boolean matches(SegmentedBuffer index, LingoesDictReader dictReader) throws IOException {
+        if (index.size() < LENGTH_HEADER) {
+            return false;
+        }
+        byte[] magic = new byte[MAGIC.length];
+        index.get(0, magic, 0, magic.length);
+        byte[] checksum = new byte[LENGTH_CHECKSUM];
+        index.get(POS_CHECKSUM, checksum, 0, checksum.length);
+
+        return Arrays.equals(MAGIC, magic)
+                && index.getInt(4) == VERSION
+                && index.getLong(POS_FILE_SIZE) == dictReader.getFileSize()
+                && Long.toHexString(index.getLong(POS_ID)).equals(dictReader.getId())
+                && Arrays.equals(checksum, dictReader.getChecksumBytes())
+                && index.getShort(POS_MAJOR_VERSION) == dictReader.getMajorVersion()
+                && index.getShort(POS_MINOR_VERSION) == dictReader.getMinorVersion()
+                && index.getInt(POS_TABLE_LENGTH) == dictReader.getInflatWordsIndexLength()
+                && index.getInt(POS_WORDS_LENGTH) == dictReader.getInflatWordsLength()
+                && index.getInt(POS_XML_LENGTH) == dictReader.getInflatedXmlLength()
+                && index.getInt(POS_BLOCKS) == dictReader.getBlocks();
+    }
+
+    /**
+     * 解压整个词典，编译索引文件。先写入临时文件，完成以后再替换，不会留下不完整的索引文件。
+     *
+     * @param dictReader LD2文件
+     * @param indexPath 索引文件路径
+     * @param parallelism 并行解压的线程数
+     * @throws IOException
+     */
+    public static void compile(LingoesDictReader dictReader, String indexPath, int parallelism) throws IOException {
+        final long[] blockStarts = new long[dictReader.getBlocks() + 1];
+        final ByteBuffer inflated = dictReader.inflate(parallelism, blockStarts);
+        final LingoesInflateDictReader reader = new LingoesInflateDictReader(inflated,
+                dictReader.getInflatWordsIndexLength(), dictReader.getInflatWordsLength(), dictReader.getInflatedXmlLength(), false);
+        final LingoesHeadwordIndex headwords = reader.getHeadwordIndex();
+        final int entries = reader.size();
+
+        // 引用列表
+        int[] refStarts = new int[entries + 1];
+        int refCount = 0;
+        for (int i = 0; i < entries; i++) {
+            refStarts[i] = refCount;
+            refCount += reader.getOffsetTable().getRefInt(i);
+        }
+        refStarts[entries] = refCount;
+
+        // 排好序的单词
+        byte[][] keys = new byte[entries][];
+        long keyBytes = 0;
+        for (int i = 0; i < entries; i++) {
+            keys[i] = reader.getWord(headwords.entryAt(i)).getBytes(UTF_8);
+            keyBytes += keys[i].length;
+        }
+        if (keyBytes > Integer.MAX_VALUE) {
+            throw new IOException("Headwords are too large: " + keyBytes + " bytes");
+        }
+
+        long[] sections = new long[SECTIONS];
+        sections[SECTION_BLOCK_STARTS] = LENGTH_HEADER;
+        sections[SECTION_XML_OFFSETS] = sections[SECTION_BLOCK_STARTS] + 8L * blockStarts.length;
+        sections[SECTION_REF_STARTS] = sections[SECTION_XML_OFFSETS] + 4L * (entries + 1);
+        sections[SECTION_REF_TARGETS] = sections[SECTION_REF_STARTS] + 4L * (entries + 1);
+        sections[SECTION_SORTED_ENTRIES] = sections[SECTION_REF_TARGETS] + 4L * refCount;
+        sections[SECTION_KEY_OFFSETS] = sections[SECTION_SORTED_ENTRIES] + 4L * entries;
+        sections[SECTION_KEY_BYTES] = sections[SECTION_KEY_OFFSETS] + 4L * (entries + 1);
+
+        final Path target = Paths.get(indexPath).toAbsolutePath();
+        final Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (LittleEndianOutput out = new LittleEndianOutput(Files.newOutputStream(temp))) {
+                out.write(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(dictReader.getFileSize());
+                out.writeLong(Long.parseUnsignedLong(dictReader.getId(), 16));
+                out.write(Arrays.copyOf(dictReader.getChecksumBytes(), LENGTH_CHECKSUM));
+                out.writeShort(dictReader.getMajorVersion());
+                out.writeShort(dictReader.getMinorVersion());
+                out.writeInt(dictReader.getInflatWordsIndexLength());
+                out.writeInt(dictReader.getInflatWordsLength());
+                out.writeInt(dictReader.getInflatedXmlLength());
+                out.writeInt(entries);
+                out.writeInt(dictReader.getBlocks());
+                out.writeInt(headwords.getCollation().ordinal());
+                for (long section : sections) {
+                    out.writeLong(section);
+                }
+                out.writeInt(reader.getWordEncoding().ordinal());
+                out.writeInt(reader.getXmlEncoding().ordinal());
+                out.pad(LENGTH_HEADER);
+
+                for (long start : blockStarts) {
+                    out.writeLong(start);
+                }
+                for (int i = 0; i <= entries; i++) {
+                    out.writeInt(reader.getOffsetTable().getXmlOffset(i));
+                }
+                for (int refStart : refStarts) {
+                    out.writeInt(refStart);
+                }
+                for (int i = 0; i < entries; i++) {
+                    for (int ref : reader.getRefs(i)) {
+                        out.writeInt(ref);
+                    }
+                }
+                for (int i = 0; i < entries; i++) {
+                    out.writeInt(headwords.entryAt(i));
+                }
+                int keyOffset = 0;
+                for (byte[] key : keys) {
+                    out.writeInt(keyOffset);
+                    keyOffset += key.length;
+                }
+                out.writeInt(keyOffset);
+                for (byte[] key : keys) {
+                    out.write(key);
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        logger.debug("Compiled index {} with {} entries", indexPath, entries);
+    }
+
+    /**
+     * @return LD2文件里面单词的编码（索引文件里面的单词已经转换成UTF-8）
+     */
+    public LingoesEncoding getWordEncoding() {
+        return wordEncoding;
+    }
+
+    public LingoesEncoding getXmlEncoding() {
+        return xmlEncoding;
+    }
+
+    public LingoesDictReader getDictReader() {
+        return dictReader;
+    }
+
+    public LingoesInflatedBlocks getBlocks() {
+        return blocks;
+    }
+
+    public LingoesHeadwordIndex getHeadwordIndex() {
+        return headwordIndex;
+    }
+
+    /**
+     * @return 词条数
+     */
+    @Override
+    public int size() {
+        return entries;
+    }
+
+    /**
+     * @return 按照排列顺序第position个单词
+     */
+    @Override
+    public String getWord(int position) {
+        long offsets = sections[SECTION_KEY_OFFSETS] + position * 4L;
+        int start = index.getInt(offsets);
+        int length = index.getInt(offsets + 4) - start;
+        byte[] key = new byte[length];
+        index.get(sections[SECTION_KEY_BYTES] + start, key, 0, length);
+        return new String(key, UTF_8);
+    }
+
+    /**
+     * @return 按照排列顺序第position个词条的序号
+     */
+    public int entryAt(int position) {
+        return index.getInt(sections[SECTION_SORTED_ENTRIES] + position * 4L);
+    }
+
+    /**
+     * @return 第entry个词条引用的其他词条序号
+     */
+    public int[] getRefs(int entry) {
+        long refStarts = sections[SECTION_REF_STARTS] + entry * 4L;
+        int start = index.getInt(refStarts);
+        int[] refs = new int[index.getInt(refStarts + 4) - start];
+        for (int j = 0; j < refs.length; j++) {
+            refs[j] = index.getInt(sections[SECTION_REF_TARGETS] + (start + j) * 4L);
+        }
+        return refs;
+    }
+
+    /**
+     * 二分查找单词。完全一样的单词优先，否则返回忽略大小写相同的单词
+     *
+     * @param word 单词
+     * @return 词条序号，没有找到返回-1
+     */
+    public int indexOf(String word) throws IOException {
+        int position = headwordIndex.indexOf(word);
+        return position < 0 ? -1 : entryAt(position);
+    }
+
+    /**
+     * @return 第entry个词条的XML翻译，已经合并了引用的释义
+     */
+    public synchronized String getXml(int entry) throws IOException {
+        long start = Metrics.start();
+        int[] refs = getRefs(entry);
+        if (refs.length == 0) {
+            String xml = readXml(entry);
+            Metrics.stop(Phase.ENTRY_DECODE, start, xmlLength(entry));
+            return xml;
+        }
+
+        int capacity = xmlLength(entry);
+        for (int ref : refs) {
+            capacity += xmlLength(ref) + 2;
+        }
+        StringBuilder sb = new StringBuilder(capacity);
+        appendXml(entry, sb);
+        Metrics.stop(Phase.ENTRY_DECODE, start, xmlLength(entry));
+
+        start = Metrics.start();
+        long refBytes = 0;
+        for (int ref : refs) {
+            refBytes += xmlLength(ref);
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            appendXml(ref, sb);
+        }
+        Metrics.stop(Phase.REF_RESOLVE, start, refBytes);
+        return sb.toString();
+    }
+
+    private int xmlLength(int entry) {
+        long xmlOffsets = sections[SECTION_XML_OFFSETS] + entry * 4L;
+        return index.getInt(xmlOffsets + 4) - index.getInt(xmlOffsets);
+    }
+
+    private String readXml(int entry) throws IOException {
+        long xmlOffsets = sections[SECTION_XML_OFFSETS] + entry * 4L;
+        int start = index.getInt(xmlOffsets);
+        int length = index.getInt(xmlOffsets + 4) - start;
+        byte[] xml = blocks.read(xmlPosition + start, length);
+        return xmlStringDecoder.decodeString(xml, 0, length);
+    }
+
+    private void appendXml(int entry, StringBuilder sb) throws IOException {
+        long xmlOffsets = sections[SECTION_XML_OFFSETS] + entry * 4L;
+        int start = index.getInt(xmlOffsets);
+        int length = index.getInt(xmlOffsets + 4) - start;
+        byte[] xml = blocks.read(xmlPosition + start, length);
+        xmlStringDecoder.decode(xml, 0, length, sb);
+    }
+
+    /**
+     * 查询单词的释义
+     *
+     * @param word 单词
+     * @return XML翻译，没有找到返回null
+     */
+    public String lookup(String word) throws IOException {
+        int entry = indexOf(word);
+        return entry < 0 ? null : getXml(entry);
+    }
+
+    /**
+     * 小端序的输出流
+     */
+    private static class LittleEndianOutput implements Closeable {
+        private final OutputStream out;
+        private final ByteBuffer scratch = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        private long written = 0;
+
+        LittleEndianOutput(OutputStream out) {
+            this.out = new BufferedOutputStream(out, 1024 * 64);
+        }
+
+        void write(byte[] bytes) throws IOException {
+            out.write(bytes);
+            written += bytes.length;
+        }
+
+        void writeShort(short value) throws IOException {
+            scratch.clear();
+            scratch.putShort(value);
+            out.write(scratch.array(), 0, 2);
+            written += 2;
+        }
+
+        void writeInt(int value) throws IOException {
+            scratch.clear();
+            scratch.putInt(value);
+            out.write(scratch.array(), 0, 4);
+            written += 4;
+        }
+
+        void writeLong(long value) throws IOException {
+            scratch.clear();
+            scratch.putLong(value);
+            out.write(scratch.array(), 0, 8);
+            written += 8;
+        }
+
+        void pad(long position) throws IOException {
+            while (written < position) {
+                out.write(0);
+                written++;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
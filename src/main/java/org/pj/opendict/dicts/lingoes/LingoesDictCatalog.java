@@ -0,0 +1,158 @@
+package org.pj.opendict.dicts.lingoes;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Created by pingjiang on 14-7-2.</br>
+ *
+ * 词典目录的目录：并行读取目录下所有LD2文件的{@link LingoesDictInfo}。</br>
+ *
+ * 每个文件只读取文件头和索引信息，不能读取的文件记录在{@link #getFailures()}里面，不影响其他文件。
+ */
+public class LingoesDictCatalog {
+    private static Logger logger = LoggerFactory.getLogger(LingoesDictCatalog.class);
+
+    public static final String EXT = ".ld2";
+
+    private final List<LingoesDictInfo> dicts;
+    private final Map<String, IOException> failures;
+
+    private LingoesDictCatalog(List<LingoesDictInfo> dicts, Map<String, IOException> failures) {
+        this.dicts = Collections.unmodifiableList(dicts);
+        this.failures = Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * @return 按照文件路径排序的词典信息
+     */
+    public List<LingoesDictInfo> getDicts() {
+        return dicts;
+    }
+
+    /**
+     * @return 不能读取的文件路径和原因
+     */
+    public Map<String, IOException> getFailures() {
+        return failures;
+    }
+
+    public int size() {
+        return dicts.size();
+    }
+
+    /**
+     * @return 编号为id的第一个词典，没有的时候返回null
+     */
+    public LingoesDictInfo findById(String id) {
+        for (LingoesDictInfo info : dicts) {
+            if (info.getId().equals(id)) {
+                return info;
+            }
+        }
+        return null;
+    }
+
+    public static LingoesDictCatalog scan(String directory) throws IOException {
+        return scan(directory, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * 扫描目录（不包括子目录）下所有扩展名为.ld2的文件（不区分大小写）
+     *
+     * @param directory 词典目录
+     * @param parallelism 同时读取的文件数，网络存储上可以大于CPU个数
+     * @return 词典目录
+     * @throws IOException 目录不能读取
+     */
+    public static LingoesDictCatalog scan(String directory, int parallelism) throws IOException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Invalid parallelism " + parallelism);
+        }
+
+        final List<String> paths = new ArrayList<String>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(directory))) {
+            for (Path path : stream) {
+                if (path.getFileName().toString().toLowerCase().endsWith(EXT) && Files.isRegularFile(path)) {
+                    paths.add(path.toString());
+                }
+            }
+        }
+        Collections.sort(paths);
+
+        final List<LingoesDictInfo> dicts = new ArrayList<LingoesDictInfo>(paths.size());
+        final Map<String, IOException> failures = new LinkedHashMap<String, IOException>();
+        if (parallelism == 1 || paths.size() < 2) {
+            for (String path : paths) {
+                try {
+                    dicts.add(LingoesDictInfo.probe(path));
+                } catch (IOException e) {
+                    fail(failures, path, e);
+                }
+            }
+            return new LingoesDictCatalog(dicts, failures);
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, paths.size()), new ThreadFactory() {
+            private int count = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ld2-catalog-" + (count++));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            final List<Future<LingoesDictInfo>> futures = new ArrayList<Future<LingoesDictInfo>>(paths.size());
+            for (final String path : paths) {
+                futures.add(executor.submit(new Callable<LingoesDictInfo>() {
+                    @Override
+                    public LingoesDictInfo call() throws IOException {
+                        return LingoesDictInfo.probe(path);
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    dicts.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    if (!(e.getCause() instanceof IOException)) {
+                        throw new IOException(e.getCause());
+                    }
+                    fail(failures, paths.get(i), (IOException) e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Scanning " + directory + " is interrupted");
+        } finally {
+            executor.shutdownNow();
+        }
+        logger.debug("Scanned {} dictionaries in {}, {} failed", dicts.size(), directory, failures.size());
+        return new LingoesDictCatalog(dicts, failures);
+    }
+
+    private static void fail(Map<String, IOException> failures, String path, IOException e) {
+        logger.warn("Skip {}: {}", path, e.getMessage());
+        failures.put(path, e);
+    }
+}
@@ -0,0 +1,190 @@
+package org.pj.opendict.dicts.lingoes;
+
+import org.pj.opendict.dicts.DictOffset;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Created by pingjiang on 14-7-2.</br>
+ *
+ * LD2文件的基本信息，只读取96字节的文件头和infoPosition位置28字节的索引信息，不读取数据块索引和压缩数据。</br>
+ *
+ * 字段的含义和{@link LingoesDictReader}中同名的字段相同，适用于快速扫描大量词典文件，见{@link LingoesDictCatalog}。
+ */
+public class LingoesDictInfo {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private static final int LENGTH_HEADER = 96;
+    private static final int LENGTH_INFO = 28;
+
+    private final String filePath;
+    private final long fileSize;
+
+    private final String type;
+    private final String checksum;
+    private final byte[] checksumBytes;
+    private final short majorVersion;
+    private final short minorVersion;
+    private final String id;
+    private final int infoPosition;
+
+    private final int dictType;
+    private final int definitions;
+    private final int inflatWordsIndexLength;
+    private final int inflatWordsLength;
+    private final int inflatedXmlLength;
+
+    private LingoesDictInfo(String filePath, long fileSize, ByteBuffer header, int infoPosition, ByteBuffer info) {
+        this.filePath = filePath;
+        this.fileSize = fileSize;
+
+        this.type = ascii(header, 0, 4);
+        this.checksum = ascii(header, 4, 20);
+        this.checksumBytes = Arrays.copyOfRange(header.array(), header.arrayOffset() + 4, header.arrayOffset() + 24);
+        this.majorVersion = header.getShort(24);
+        this.minorVersion = header.getShort(26);
+        this.id = Long.toHexString(header.getLong(28));
+        this.infoPosition = infoPosition;
+
+        this.dictType = info.getInt(0);
+        this.definitions = info.getInt(8) / 4;
+        this.inflatWordsIndexLength = info.getInt(12);
+        this.inflatWordsLength = info.getInt(16);
+        this.inflatedXmlLength = info.getInt(20);
+    }
+
+    /**
+     * 读取LD2文件的基本信息
+     *
+     * @param filePath LD2文件路径
+     * @return 基本信息
+     * @throws IOException 文件太短或者词典类型不支持
+     */
+    public static LingoesDictInfo probe(String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            final long fileSize = channel.size();
+            final ByteBuffer header = read(channel, 0, LENGTH_HEADER);
+            final long infoPosition = LENGTH_HEADER + (header.getInt(LENGTH_HEADER - 4) & 0xFFFFFFFFL);
+            if (infoPosition + LENGTH_INFO > fileSize) {
+                throw new EOFException(String.format("File %s is truncated, info at %d is beyond %d bytes",
+                        filePath, infoPosition, fileSize));
+            }
+            final ByteBuffer info = read(channel, infoPosition, LENGTH_INFO);
+
+            int dictType = info.getInt(0);
+            if (dictType != 3) {
+                throw new IOException(String.format("Dictionary type %d is not supported yet", dictType));
+            }
+            return new LingoesDictInfo(filePath, fileSize, header, (int) infoPosition, info);
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException(String.format("Unexpected end of file at %d", position + buffer.position()));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static String ascii(ByteBuffer buffer, int position, int length) {
+        return new String(buffer.array(), buffer.arrayOffset() + position, length, ASCII);
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * @see LingoesDictReader#getChecksumBytes()
+     */
+    public byte[] getChecksumBytes() {
+        return checksumBytes.clone();
+    }
+
+    public short getMajorVersion() {
+        return majorVersion;
+    }
+
+    public short getMinorVersion() {
+        return minorVersion;
+    }
+
+    public String getVersion() {
+        return String.format("%d.%d", majorVersion, minorVersion);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getInfoPosition() {
+        return infoPosition;
+    }
+
+    public int getDictType() {
+        return dictType;
+    }
+
+    /**
+     * @return 索引表长度/4，和{@link LingoesDictReader#getDefinitions()}相同
+     */
+    public int getDefinitions() {
+        return definitions;
+    }
+
+    /**
+     * @return 词条数，根据解压后的索引表长度计算（最后一个索引只表示结束位置）
+     */
+    public int getEntries() {
+        return Math.max(inflatWordsIndexLength / DictOffset.bytes() - 1, 0);
+    }
+
+    public int getInflatWordsIndexLength() {
+        return inflatWordsIndexLength;
+    }
+
+    public int getInflatWordsLength() {
+        return inflatWordsLength;
+    }
+
+    public int getInflatedXmlLength() {
+        return inflatedXmlLength;
+    }
+
+    /**
+     * @return 解压后的总长度：索引表|单词|XML翻译
+     */
+    public long getInflatedLength() {
+        return (long) inflatWordsIndexLength + inflatWordsLength + inflatedXmlLength;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[type=%s, version=%s, id=%s, entries=%d, inflated=%d]",
+                filePath, type, getVersion(), id, getEntries(), getInflatedLength());
+    }
+}
@@ -0,0 +1,210 @@
+package org.pj.opendict.dicts.lingoes;
+
+import org.pj.opendict.dicts.DictOffset;
+import org.pj.opendict.dicts.DictOffsetTable;
+import org.pj.opendict.dicts.SensitiveStringDecoder;
+import org.pj.opendict.metrics.Metrics;
+import org.pj.opendict.metrics.Phase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Created by pingjiang on 14-6-25.</br>
+ *
+ * 随机访问的单词查询，不需要解压整个词典。</br>
+ *
+ * 查询的时候在索引表上做二分查找，只解压包含需要的索引表片段、单词和XML翻译的数据块。
+ * 第一次查询的时候检查单词的排列顺序（需要读取所有单词，但是不需要解压XML翻译部分）。
+ *
+ * @see LingoesInflatedBlocks 按需解压的数据块
+ * @see LingoesHeadwordIndex 单词的二分查找
+ */
+public class LingoesDictLookup implements LingoesHeadwordIndex.Headwords {
+
+    // 编码为utf-8或者UTF-16LE，第一次读取的时候抽样开头的词条判断，只需要解压开头的数据块
+    private LingoesEncoding wordEncoding;
+    private LingoesEncoding xmlEncoding;
+    private SensitiveStringDecoder wordStringDecoder;
+    private SensitiveStringDecoder xmlStringDecoder;
+
+    private final LingoesInflatedBlocks blocks;
+    private final long wordsOffset;
+    private final long xmlOffset;
+    private final int entries;
+    private LingoesHeadwordIndex headwordIndex;
+
+    public LingoesDictLookup(LingoesInflatedBlocks blocks, int tableLength, int wordsLength, int xmlsLength) {
+        this.blocks = blocks;
+        this.wordsOffset = tableLength;
+        this.xmlOffset = (long) tableLength + wordsLength;
+        this.entries = Math.max(tableLength / DictOffset.bytes() - 1, 0);
+    }
+
+    public LingoesInflatedBlocks getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * @return 词条数
+     */
+    @Override
+    public int size() {
+        return entries;
+    }
+
+    /**
+     * 抽样开头的单词和XML翻译，判断两个部分的编码
+     */
+    private void detectEncodings() throws IOException {
+        if (wordStringDecoder != null) {
+            return;
+        }
+        final int samples = Math.min(entries, LingoesEncoding.SAMPLES);
+        wordEncoding = LingoesEncoding.detect(new LingoesEncoding.Records() {
+            @Override
+            public int size() {
+                return samples;
+            }
+
+            @Override
+            public byte[] get(int index) throws IOException {
+                return readWord(readOffsets(index));
+            }
+        });
+        xmlEncoding = LingoesEncoding.detect(new LingoesEncoding.Records() {
+            @Override
+            public int size() {
+                return samples;
+            }
+
+            @Override
+            public byte[] get(int index) throws IOException {
+                DictOffsetTable offsets = readOffsets(index);
+                return blocks.read(xmlOffset + offsets.getXmlOffset(0), offsets.getXmlLength(0));
+            }
+        });
+        wordStringDecoder = wordEncoding.newDecoder();
+        xmlStringDecoder = xmlEncoding.newDecoder();
+    }
+
+    public synchronized LingoesEncoding getWordEncoding() throws IOException {
+        detectEncodings();
+        return wordEncoding;
+    }
+
+    public synchronized LingoesEncoding getXmlEncoding() throws IOException {
+        detectEncodings();
+        return xmlEncoding;
+    }
+
+    /**
+     * 读取第index个和第index+1个索引
+     */
+    private DictOffsetTable readOffsets(int index) throws IOException {
+        if (index < 0 || index >= entries) {
+            throw new IndexOutOfBoundsException("index=" + index + ", size=" + entries);
+        }
+        byte[] bytes = blocks.read((long) index * DictOffset.bytes(), DictOffset.bytes() * 2);
+        return DictOffsetTable.wrap(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    /**
+     * @return 第index个词条的单词
+     */
+    @Override
+    public synchronized String getWord(int index) throws IOException {
+        detectEncodings();
+        final long start = Metrics.start();
+        byte[] word = readWord(readOffsets(index));
+        String dictWord = wordStringDecoder.decodeString(word, 0, word.length);
+        Metrics.stop(Phase.ENTRY_DECODE, start, word.length);
+        return dictWord;
+    }
+
+    private byte[] readWord(DictOffsetTable offsets) throws IOException {
+        int wordOffset = offsets.getWordOffset(0);
+        int refs = offsets.getRefInt(0);
+        int wordLength = offsets.getWordLength(0) - refs * 4;
+        return blocks.read(wordsOffset + wordOffset + refs * 4, wordLength);
+    }
+
+    /**
+     * @return 第index个词条的XML翻译，已经合并了引用的释义
+     */
+    public synchronized String getXml(int index) throws IOException {
+        detectEncodings();
+        DictOffsetTable offsets = readOffsets(index);
+        int wordOffset = offsets.getWordOffset(0);
+        int refs = offsets.getRefInt(0);
+
+        long start = Metrics.start();
+        if (refs == 0) {
+            String xml = readXml(offsets);
+            Metrics.stop(Phase.ENTRY_DECODE, start, offsets.getXmlLength(0));
+            return xml;
+        }
+        StringBuilder sb = new StringBuilder(offsets.getXmlLength(0) + refs * 64);
+        appendXml(offsets, sb);
+        Metrics.stop(Phase.ENTRY_DECODE, start, offsets.getXmlLength(0));
+
+        start = Metrics.start();
+        long refBytes = 0;
+        for (int j = 0; j < refs; j++) {
+            int newIndex = blocks.getInt(wordsOffset + wordOffset + 4 * j);
+            DictOffsetTable refOffsets = readOffsets(newIndex);
+            refBytes += refOffsets.getXmlLength(0);
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            appendXml(refOffsets, sb);
+        }
+        Metrics.stop(Phase.REF_RESOLVE, start, refBytes);
+        return sb.toString();
+    }
+
+    private String readXml(DictOffsetTable offsets) throws IOException {
+        int xmlStart = offsets.getXmlOffset(0);
+        int xmlLength = offsets.getXmlLength(0);
+        byte[] xml = blocks.read(xmlOffset + xmlStart, xmlLength);
+        return xmlStringDecoder.decodeString(xml, 0, xmlLength);
+    }
+
+    private void appendXml(DictOffsetTable offsets, StringBuilder sb) throws IOException {
+        int xmlStart = offsets.getXmlOffset(0);
+        int xmlLength = offsets.getXmlLength(0);
+        byte[] xml = blocks.read(xmlOffset + xmlStart, xmlLength);
+        xmlStringDecoder.decode(xml, 0, xmlLength, sb);
+    }
+
+    /**
+     * @return 单词索引，第一次调用的时候建立
+     */
+    public synchronized LingoesHeadwordIndex getHeadwordIndex() throws IOException {
+        if (headwordIndex == null) {
+            headwordIndex = LingoesHeadwordIndex.sample(this);
+        }
+        return headwordIndex;
+    }
+
+    /**
+     * 二分查找单词。完全一样的单词优先，否则返回忽略大小写相同的单词
+     *
+     * @param word 单词
+     * @return 词条序号，没有找到返回-1
+     */
+    public synchronized int indexOf(String word) throws IOException {
+        return getHeadwordIndex().indexOf(word);
+    }
+
+    /**
+     * 查询单词的释义
+     *
+     * @param word 单词
+     * @return XML翻译，没有找到返回null
+     */
+    public String lookup(String word) throws IOException {
+        int index = indexOf(word);
+        return index < 0 ? null : getXml(index);
+    }
+}
@@ -1,15 +1,28 @@
 package org.pj.opendict.dicts.lingoes;
 
+import org.pj.opendict.dicts.DictEntryExporter;
+import org.pj.opendict.dicts.DictEntryHandler;
+import org.pj.opendict.dicts.ExportFormat;
+import org.pj.opendict.dicts.InflaterPool;
+import org.pj.opendict.dicts.OffHeapArena;
+import org.pj.opendict.dicts.SegmentedBuffer;
+import org.pj.opendict.metrics.Metrics;
+import org.pj.opendict.metrics.Phase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
-import java.util.zip.InflaterInputStream;
 
 /**
  * Created by pingjiang on 14-6-20.
@@ -54,6 +67,7 @@ import java.util.zip.InflaterInputStream;
  * -- Translations (xml) 翻译
  *
  * TODO: find encoding / language fields to replace auto-detect of encodings
+ * 目前通过抽样少量记录判断编码，见{@link LingoesEncoding}
  *
  * </pre>
  *
@@ -76,7 +90,8 @@ public class LingoesDictReader {
     private static final int LENGTH_COMPRESS_HEADER = LENGTH_INT*7;
 
     private final String filePath;
-    private final ByteBuffer dataRawBytes;
+    private final SegmentedBuffer dataRawBytes;
+    private final long fileSize;
     private int position = 0;
 
     /// 文件头定义
@@ -91,6 +106,11 @@ public class LingoesDictReader {
      */
     private String checksum;
 
+    /**
+     * 校验和的原始字节，可能包含非ASCII字节
+     */
+    private byte[] checksumBytes;
+
     /**
      * len=2,主要版本号
      */
@@ -137,7 +157,7 @@ public class LingoesDictReader {
     /**
      * 压缩数据的结束位置
      */
-    private int limit; // 自己加的字段
+    private long limit; // 自己加的字段
 
     /**
      * 索引表的长度（也是压缩数据的相对偏移地址{相对于信息头结束位置}
@@ -153,7 +173,7 @@ public class LingoesDictReader {
     /**
      * 压缩数据的起始地址，用于提取压缩数据块
      */
-    private int offsetCompressedDataHeader; // 自己加字段
+    private long offsetCompressedDataHeader; // 自己加字段
 
     /**
      * 解压后的索引表长度（单词索引是从解压文件的开始位置开始的，起始位置为0）
@@ -177,11 +197,38 @@ public class LingoesDictReader {
 
     // deflate,inflate
     // 索引数组
-    private final List<Integer> definitionsArray = new ArrayList<Integer>();
-    // 压缩数据块数组
-    private final List<Integer> deflateStreams = new ArrayList<Integer>();
+    private int[] definitionsArray = new int[0];
+    // 压缩数据块数组：每个数据块相对于blocksPosition的结束位置，文件中是无符号的int
+    private long[] deflateStreams = new long[0];
     //int flatOffset;
 
+    /**
+     * 压缩数据块的开始位置，deflateStreams里面的偏移地址都是相对于这个位置的
+     */
+    private long blocksPosition;
+
+    /**
+     * 解压数据块的时候默认的输出数组大小
+     */
+    private static final int BLOCK_OUTPUT_SIZE = 1024 * 16;
+
+    /**
+     * 映射模式下每个线程复制压缩数据块的临时数组
+     */
+    private static final ThreadLocal<byte[]> BLOCK_INPUT = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BLOCK_OUTPUT_SIZE];
+        }
+    };
+
+    private InflaterPool inflaterPool = InflaterPool.shared();
+
+    /**
+     * 解压后数据的缓存，为null的时候每次都重新解压
+     */
+    private InflatedDataCache inflatedDataCache;
+
 
     public String getType() {
         return type;
@@ -191,6 +238,13 @@ public class LingoesDictReader {
         return checksum;
     }
 
+    /**
+     * @return 文件头中20字节校验和的副本，{@link #getChecksum()}会把非ASCII字节替换掉，比较的时候使用这个方法
+     */
+    public byte[] getChecksumBytes() {
+        return checksumBytes.clone();
+    }
+
     public short getMajorVersion() {
         return majorVersion;
     }
@@ -239,7 +293,7 @@ public class LingoesDictReader {
         return infoPosition;
     }
 
-    public int getLimit() {
+    public long getLimit() {
         return limit;
     }
 
@@ -247,7 +301,7 @@ public class LingoesDictReader {
         return definitions;
     }
 
-    public int getOffsetCompressedDataHeader() {
+    public long getOffsetCompressedDataHeader() {
         return offsetCompressedDataHeader;
     }
 
@@ -255,20 +309,71 @@ public class LingoesDictReader {
         return offsetIndex;
     }
 
+    public int getBlocks() {
+        return deflateStreams.length;
+    }
+
+    /**
+     * @return 索引数组的只读视图
+     */
+    public IntBuffer getDefinitionsArray() {
+        return IntBuffer.wrap(definitionsArray).asReadOnlyBuffer();
+    }
+
+    /**
+     * @return 每个压缩数据块结束位置（相对于第一个数据块的开始位置）的只读视图
+     */
+    public LongBuffer getDeflateStreams() {
+        return LongBuffer.wrap(deflateStreams).asReadOnlyBuffer();
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    /**
+     * @return LD2文件的大小
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
     public LingoesDictReader(String filePath) throws IOException {
-        this.filePath = filePath;
+        this(filePath, false);
+    }
 
-        try (RandomAccessFile file = new RandomAccessFile(filePath, "r"); final FileChannel fChannel = file.getChannel();) {
-            dataRawBytes = ByteBuffer.allocate((int) fChannel.size());
-            fChannel.read(dataRawBytes);
-        }
-        dataRawBytes.order(ByteOrder.LITTLE_ENDIAN);
-        dataRawBytes.rewind();
+    /**
+     * 读取LD2文件
+     *
+     * @param filePath LD2文件路径
+     * @param memoryMapped 是否使用内存映射。映射模式下不会把整个文件复制到堆内存，只有访问到的页面才会被加载，
+     *                     并且支持超过2GB的文件。
+     * @throws IOException
+     */
+    public LingoesDictReader(String filePath, boolean memoryMapped) throws IOException {
+        this(filePath, load(filePath, memoryMapped), -1);
+    }
+
+    /**
+     * 解析文件头和数据块索引。data可以只包含文件开头到第一个数据块之前的部分，这时只能读取文件头，
+     * 数据块由调用者自己读取和解压，例如{@link LingoesAsyncLoader}。
+     *
+     * @param filePath LD2文件路径
+     * @param data 文件内容
+     * @param fileSize 文件大小，-1表示data就是整个文件
+     * @throws IOException
+     * @throws IndexOutOfBoundsException data不包含完整的数据块索引
+     */
+    LingoesDictReader(String filePath, SegmentedBuffer data, long fileSize) throws IOException {
+        this.filePath = filePath;
+        this.dataRawBytes = data;
+        this.fileSize = fileSize < 0 ? data.size() : fileSize;
+        final long start = Metrics.start();
 
         readHeader();
         infoPosition = position;
 
-        assert (dataRawBytes.limit() > infoPosition);
+        assert (dataRawBytes.size() > infoPosition);
         int type = dataRawBytes.getInt(infoPosition);
 
         // 暂时只能处理type=3的情况
@@ -288,13 +393,39 @@ public class LingoesDictReader {
         buildDefinitionsArray();
 
         deflateFile();
+        Metrics.stop(Phase.HEADER_PARSE, start, blocksPosition);
+    }
+
+    private static SegmentedBuffer load(String filePath, boolean memoryMapped) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(filePath, "r"); final FileChannel fChannel = file.getChannel();) {
+            if (memoryMapped) {
+                return SegmentedBuffer.map(fChannel);
+            }
+            if (fChannel.size() > Integer.MAX_VALUE) {
+                throw new IOException(String.format("File %s is larger than 2GB, use memory-mapped mode instead", filePath));
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) fChannel.size());
+            while (buffer.hasRemaining() && fChannel.read(buffer) != -1) {
+                // 一次read不一定能读完整个文件
+            }
+            buffer.flip();
+            return SegmentedBuffer.wrap(buffer);
+        }
     }
 
-    private void readHeader() throws UnsupportedEncodingException {
-        type = new String(dataRawBytes.array(), position, LENGTH_TYPE, "ASCII");
+    private String readAscii(int position, int length) throws UnsupportedEncodingException {
+        byte[] bytes = new byte[length];
+        dataRawBytes.get(position, bytes, 0, length);
+        return new String(bytes, "ASCII");
+    }
+
+    private void readHeader() throws IOException {
+        type = readAscii(position, LENGTH_TYPE);
         position += LENGTH_TYPE;
 
-        checksum = new String(dataRawBytes.array(), position, LENGTH_CHECKSUM, "ASCII");
+        checksumBytes = new byte[LENGTH_CHECKSUM];
+        dataRawBytes.get(position, checksumBytes, 0, LENGTH_CHECKSUM);
+        checksum = new String(checksumBytes, "ASCII");
         position += LENGTH_CHECKSUM;
 
         majorVersion = dataRawBytes.getShort(position);
@@ -307,10 +438,15 @@ public class LingoesDictReader {
         position += LENGTH_ID;
 
         int paddingLength = (LENGTH_HEADER - position - 4);
-        padding = new String(dataRawBytes.array(), position, paddingLength, "ASCII");
+        padding = readAscii(position, paddingLength);
         position += paddingLength;
 
-        infoOffset = dataRawBytes.getInt(position);
+        // 偏移地址是无符号的int，超出文件的时候不能当作负数继续读
+        final long offset = dataRawBytes.getInt(position) & 0xFFFFFFFFL;
+        if (LENGTH_HEADER + offset + LENGTH_COMPRESS_HEADER > Math.min(fileSize, Integer.MAX_VALUE)) {
+            throw new IOException(String.format("Info offset %d is out of range in %s", offset, filePath));
+        }
+        infoOffset = (int) offset;
         position += (LENGTH_OFFSET + infoOffset);// position = (LENGTH_HEADER + infoOffset);
     }
 
@@ -321,6 +457,7 @@ public class LingoesDictReader {
      * @param startPosition
      */
     private void readDictionary(int startPosition) {
+        // 长度和偏移地址都是无符号的int，用long计算，超过2GB的时候不会变成负数
         position = startPosition;
         offsetIndex = position + LENGTH_COMPRESS_HEADER;
 
@@ -331,7 +468,7 @@ public class LingoesDictReader {
         // 下面内容总长度(相对于当前位置结束位置）能够计算出压缩数据的结束位置
         withIndexOffset = dataRawBytes.getInt(position);
         // 压缩数据的结束位置
-        limit = (position + withIndexOffset);
+        limit = (position + (withIndexOffset & 0xFFFFFFFFL));
         position += LENGTH_INT;
 
         // 索引长度（或者说是压缩头开始偏移位置【相对于索引开始位置】）
@@ -339,7 +476,7 @@ public class LingoesDictReader {
         // 这里可以计算出索引个数definitions,根据这个可以计算出索引数组
         compressedDataOffset = dataRawBytes.getInt(position);
         definitions = compressedDataOffset/LENGTH_INT;
-        offsetCompressedDataHeader = compressedDataOffset + offsetIndex;
+        offsetCompressedDataHeader = (compressedDataOffset & 0xFFFFFFFFL) + offsetIndex;
         position += LENGTH_INT;
 
         // 索引单词长度
@@ -356,69 +493,326 @@ public class LingoesDictReader {
     }
 
     private void buildDefinitionsArray() {
-        for (int i =0; i < definitions; i++) {
-            int val = dataRawBytes.getInt(offsetIndex + i*LENGTH_INT);
-            definitionsArray.add(val);
+        definitionsArray = new int[Math.max(definitions, 0)];
+        for (int i =0; i < definitionsArray.length; i++) {
+            definitionsArray[i] = dataRawBytes.getInt(offsetIndex + i*LENGTH_INT);
         }
     }
 
-    private void deflateFile() {
+    private void deflateFile() throws IOException {
         // 跳过前面两个整数
-        position = (offsetCompressedDataHeader + LENGTH_INT + LENGTH_INT);
-        dataRawBytes.position(position);
+        long blockPosition = (offsetCompressedDataHeader + LENGTH_INT + LENGTH_INT);
 
         // 读取第一个整数，为0，可以直接丢掉
         // 因为块长度为下一个值-前一个值。处理第一个块的时候没有前一个值，所以不好处理
         // 但是如果我们丢掉这个值后，我们处理的是第二个块，前一个值为0
-        int flatOffset = dataRawBytes.getInt();
+        long flatOffset = dataRawBytes.getInt(blockPosition) & 0xFFFFFFFFL;
+        blockPosition += LENGTH_INT;
 
         // 将偏移地址和当前位置比较，不能操作limit的位置
         // limit后的内容，还不知道是什么
-        while ((flatOffset + dataRawBytes.position()) < limit) {
-            flatOffset = dataRawBytes.getInt();
-            deflateStreams.add(Integer.valueOf(flatOffset));
+        long[] streams = new long[16];
+        int count = 0;
+        while ((flatOffset + blockPosition) < limit) {
+            final long previous = flatOffset;
+            flatOffset = dataRawBytes.getInt(blockPosition) & 0xFFFFFFFFL;
+            blockPosition += LENGTH_INT;
+            if (flatOffset < previous || flatOffset - previous > Integer.MAX_VALUE) {
+                throw new IOException(String.format("Block %d has an invalid end offset %d in %s", count, flatOffset, filePath));
+            }
+            if (count == streams.length) {
+                streams = Arrays.copyOf(streams, count * 2);
+            }
+            streams[count++] = flatOffset;
+        }
+        deflateStreams = Arrays.copyOf(streams, count);
+
+        // 索引读完了就到了数据块blocks
+        blocksPosition = blockPosition;
+    }
+
+    /**
+     * @return 第index个压缩数据块的开始位置
+     */
+    long blockStart(int index) {
+        return blocksPosition + (index == 0 ? 0 : deflateStreams[index - 1]);
+    }
+
+    /**
+     * @return 第index个压缩数据块的结束位置
+     */
+    long blockEnd(int index) {
+        return blocksPosition + deflateStreams[index];
+    }
+
+    /**
+     * 解压一个数据块到dst的off位置。Inflater直接读取堆内存中的压缩数据，映射模式下只把当前数据块复制到线程的临时数组中，
+     * 不经过InflaterInputStream和中间缓冲区。
+     *
+     * @param index 数据块序号
+     * @param inflater 解压器，会被重置
+     * @param dst 输出数组
+     * @param off 输出的开始位置
+     * @param grow dst不够大的时候是否扩大，为false的时候抛出IOException
+     * @return 输出数组，扩大的时候是新的数组。解压的字节数是inflater.getBytesWritten()
+     * @throws IOException 数据块不完整或者损坏
+     */
+    byte[] inflateBlock(int index, Inflater inflater, byte[] dst, int off, boolean grow) throws IOException {
+        final long lastOffset = blockStart(index);
+        final int blockLength = (int) (blockEnd(index) - lastOffset);
+
+        final ByteBuffer blockBuffer = dataRawBytes.slice(lastOffset, blockLength);
+        if (blockBuffer.hasArray()) {
+            return inflate(index, inflater, blockBuffer.array(), blockBuffer.arrayOffset(), blockLength, dst, off, grow);
+        }
+        byte[] input = BLOCK_INPUT.get();
+        if (input.length < blockLength) {
+            input = new byte[blockLength];
+            BLOCK_INPUT.set(input);
+        }
+        blockBuffer.get(input, 0, blockLength);
+        return inflate(index, inflater, input, 0, blockLength, dst, off, grow);
+    }
+
+    /**
+     * 解压一个完整的deflate流到dst的off位置
+     *
+     * @param index 数据块序号，只用于错误信息
+     * @param inflater 解压器，会被重置
+     * @param input 压缩数据
+     * @param inputOff 压缩数据的开始位置
+     * @param inputLength 压缩数据的长度
+     * @param dst 输出数组
+     * @param off 输出的开始位置
+     * @param grow dst不够大的时候是否扩大，为false的时候抛出IOException
+     * @return 输出数组，扩大的时候是新的数组。解压的字节数是inflater.getBytesWritten()
+     * @throws IOException 数据块不完整或者损坏
+     */
+    static byte[] inflate(int index, Inflater inflater, byte[] input, int inputOff, int inputLength,
+                          byte[] dst, int off, boolean grow) throws IOException {
+        final long start = Metrics.start();
+        inflater.reset();
+        inflater.setInput(input, inputOff, inputLength);
+
+        int position = off;
+        try {
+            while (!inflater.finished()) {
+                if (position == dst.length) {
+                    if (grow) {
+                        dst = Arrays.copyOf(dst, Math.max(dst.length * 2, BLOCK_OUTPUT_SIZE));
+                        continue;
+                    }
+                    // 输出已经满了，剩下的只能是校验和
+                    if (inflater.inflate(new byte[1]) > 0 || !inflater.finished()) {
+                        throw new IOException(String.format("Block %d is inflated to more than %d bytes", index, dst.length - off));
+                    }
+                    break;
+                }
+                int n = inflater.inflate(dst, position, dst.length - position);
+                position += n;
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new EOFException(String.format("Block %d is truncated", index));
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(String.format("Block %d is corrupted", index), e);
+        }
+        Metrics.stop(Phase.BLOCK_INFLATE, start, position - off);
+        return dst;
+    }
+
+    /**
+     * @return 一个数据块解压后的大概长度，用于预先分配输出数组
+     */
+    int estimateBlockLength() {
+        if (deflateStreams.length == 0) {
+            return BLOCK_OUTPUT_SIZE;
         }
+        return (int) Math.min(getInflatedLength() / deflateStreams.length + 64, Integer.MAX_VALUE - 8);
+    }
+
+    public InflaterPool getInflaterPool() {
+        return inflaterPool;
+    }
+
+    /**
+     * 默认使用{@link InflaterPool#shared()}，长期运行的服务可以使用自己的池，以便关闭的时候释放本地内存
+     */
+    public void setInflaterPool(InflaterPool inflaterPool) {
+        this.inflaterPool = inflaterPool;
+    }
+
+    public InflatedDataCache getInflatedDataCache() {
+        return inflatedDataCache;
+    }
+
+    /**
+     * 设置以后{@link #decompress(String, int)}、{@link #export(DictEntryHandler, int)}和{@link #openInflated(int, boolean)}
+     * 直接使用缓存的解压数据，没有缓存的时候解压一次保存到缓存目录
+     */
+    public void setInflatedDataCache(InflatedDataCache inflatedDataCache) {
+        this.inflatedDataCache = inflatedDataCache;
     }
 
     public void decompress(String inflatedFilePath) throws IOException {
+        decompress(inflatedFilePath, 1);
+    }
+
+    /**
+     * 解压所有数据块到文件
+     *
+     * @param inflatedFilePath 解压后的文件路径
+     * @param parallelism 并行解压的线程数，1表示顺序解压
+     * @throws IOException
+     */
+    public void decompress(String inflatedFilePath, int parallelism) throws IOException {
+        if (inflatedDataCache != null) {
+            Files.copy(inflatedDataCache.decompress(this, parallelism), Paths.get(inflatedFilePath),
+                    StandardCopyOption.REPLACE_EXISTING);
+            return;
+        }
+        try (final OutputStream out = new BufferedOutputStream(new FileOutputStream(inflatedFilePath), 1024 * 64)) {
+            decompress(out, parallelism);
+        }
+    }
+
+    /**
+     * 按顺序解压所有数据块到输出流，输出流不会被关闭
+     *
+     * @param out 输出流
+     * @throws IOException
+     */
+    public void decompress(OutputStream out) throws IOException {
+        decompress(out, null);
+    }
+
+    /**
+     * 按顺序解压所有数据块到输出流
+     *
+     * @param out 输出流
+     * @param blockStarts 不为null的时候记录每个数据块解压后的开始位置，长度为数据块个数+1
+     * @throws IOException
+     */
+    private void decompress(OutputStream out, long[] blockStarts) throws IOException {
         // 索引读完了就到了数据块blocks
         // 索引内容是int数组，内容是记录了块的开始地址和结束地址
         // 块长度=数组下一个值-当前值
-
-        // 因为前面索引部分读完了，这里就是blocks数据块开始位置了
-        // 索引内容的偏移地址都是相对于这个地址的
-        // 0表示前一个数据块偏移地址
-        final int startOffset = dataRawBytes.position() + 0;
-        int offset = -1;
-        int lastOffset = startOffset;
-        //boolean append = false;
-
-        //BufferedWriter writer = Files.newBufferedWriter(Paths.get(filePath + ".inflated"), Charset.defaultCharset(), append ? StandardOpenOption.APPEND : StandardOpenOption.WRITE);
-        //final String inflatedFilePath = filePath + ".inflated";
-        //final BufferedWriter writer = Files.newBufferedWriter(Paths.get(inflatedFilePath), Charset.defaultCharset());
-        final FileOutputStream out = new FileOutputStream(inflatedFilePath);
-        final Inflater inflator = new Inflater();
-        final byte[] buffer = new byte[1024 * 8];
-        int len = -1;
-
-        // 这里处理的一个技巧是，从第二个值开始处理，第一个值肯定是0
-        for (final Integer offsetRelative : deflateStreams) {
-            // 下一个数据块的offset
-            offset = startOffset + offsetRelative.intValue();
-            inflator.reset();
-
-            try (final InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(dataRawBytes.array(),
-                    lastOffset, offset - lastOffset), inflator, 1024 * 8)) {
-                while ((len = in.read(buffer)) != -1) {
-                    out.write(buffer, 0, len);
+        // 索引内容的偏移地址都是相对于blocksPosition的，第一个块从0开始
+        final Inflater inflater = inflaterPool.acquire();
+        try {
+            byte[] buffer = new byte[estimateBlockLength()];
+            long inflated = 0;
+            for (int i = 0; i < deflateStreams.length; i++) {
+                buffer = inflateBlock(i, inflater, buffer, 0, true);
+                final int length = (int) inflater.getBytesWritten();
+                out.write(buffer, 0, length);
+                if (blockStarts != null) {
+                    blockStarts[i] = inflated;
                 }
+                inflated += length;
+            }
+            if (blockStarts != null) {
+                blockStarts[deflateStreams.length] = inflated;
+            }
+        } finally {
+            inflaterPool.release(inflater);
+        }
+
+        out.flush();
+    }
+
+    /**
+     * 并行解压所有数据块到输出流，输出流不会被关闭。</br>
+     *
+     * 每个数据块都是一个独立的deflate流，可以分别解压。解压结果仍然按照数据块的顺序写入，
+     * 和顺序解压的结果完全一样。同时最多只有parallelism*2个数据块的解压结果在内存中。
+     *
+     * @param out 输出流
+     * @param parallelism 并行解压的线程数，1表示顺序解压
+     * @throws IOException
+     */
+    public void decompress(OutputStream out, int parallelism) throws IOException {
+        decompress(out, parallelism, null);
+    }
+
+    /**
+     * @param blockStarts 不为null的时候记录每个数据块解压后的开始位置，长度为数据块个数+1
+     * @see #decompress(OutputStream, int)
+     */
+    void decompress(OutputStream out, int parallelism, long[] blockStarts) throws IOException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        if (parallelism == 1 || deflateStreams.length < 2) {
+            decompress(out, blockStarts);
+            return;
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+            private int count = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ld2-inflater-" + (count++));
+                thread.setDaemon(true);
+                return thread;
             }
+        });
+        final int window = parallelism * 2;
+        final Deque<Future<ByteBuffer>> inflight = new ArrayDeque<Future<ByteBuffer>>(window);
+        final int blockLength = estimateBlockLength();
+        // 最多window个数据块在解压或者等待写入，写完的输出数组放回来给后面的数据块复用
+        final Queue<byte[]> buffers = new ConcurrentLinkedQueue<byte[]>();
+
+        try {
+            int next = 0;
+            int written = 0;
+            long inflatedLength = 0;
+            while (next < deflateStreams.length || !inflight.isEmpty()) {
+                while (next < deflateStreams.length && inflight.size() < window) {
+                    final int index = next++;
+                    inflight.addLast(executor.submit(new Callable<ByteBuffer>() {
+                        @Override
+                        public ByteBuffer call() throws IOException {
+                            final Inflater inflater = inflaterPool.acquire();
+                            try {
+                                byte[] block = buffers.poll();
+                                if (block == null) {
+                                    block = new byte[blockLength];
+                                }
+                                block = inflateBlock(index, inflater, block, 0, true);
+                                return ByteBuffer.wrap(block, 0, (int) inflater.getBytesWritten());
+                            } finally {
+                                inflaterPool.release(inflater);
+                            }
+                        }
+                    }));
+                }
 
-            lastOffset = offset;
+                // 按照数据块的顺序写入
+                ByteBuffer inflated = inflight.removeFirst().get();
+                out.write(inflated.array(), 0, inflated.limit());
+                if (blockStarts != null) {
+                    blockStarts[written++] = inflatedLength;
+                    inflatedLength += inflated.limit();
+                    blockStarts[written] = inflatedLength;
+                }
+                buffers.offer(inflated.array());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Decompress is interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to inflate block", cause);
+        } finally {
+            executor.shutdownNow();
         }
 
         out.flush();
-        out.close();
     }
 
     private static final void writeInputStream(final InputStream in, final OutputStream out) throws IOException {
@@ -441,4 +835,182 @@ public class LingoesDictReader {
             logger.debug("Dictionary: {}={}", entry.getKey(), entry.getValue());
         }
     }
+
+    /**
+     * 边解压边解析，把每个词条交给handler处理。解压后的数据不会写入临时文件，也不会被读取两次。
+     * 词条按照索引顺序回调，引用后面词条的词条等到引用的XML解压以后才回调，见{@link LingoesInflateStreamDecoder}。
+     *
+     * @param handler 词条处理
+     * @param parallelism 并行解压的线程数
+     * @throws IOException
+     */
+    public void export(DictEntryHandler handler, int parallelism) throws IOException {
+        try (LingoesInflateStreamDecoder decoder = new LingoesInflateStreamDecoder(handler, inflatWordsIndexLength, inflatWordsLength, inflatedXmlLength)) {
+            if (inflatedDataCache != null) {
+                try (InputStream in = Files.newInputStream(inflatedDataCache.decompress(this, parallelism))) {
+                    writeInputStream(in, decoder);
+                }
+                return;
+            }
+            decompress(decoder, parallelism);
+        }
+    }
+
+    /**
+     * 边解压边导出所有词条到文件，解码和写文件在不同的线程中进行，内存占用和词典大小无关
+     *
+     * @param outputPath 输出文件
+     * @param format 格式
+     * @param parallelism 并行解压的线程数
+     * @return 导出的词条数
+     * @throws IOException
+     */
+    public long export(String outputPath, ExportFormat format, int parallelism) throws IOException {
+        final String title = Paths.get(filePath).getFileName().toString().replaceFirst("\\.ld2$", "");
+        try (DictEntryExporter exporter = new DictEntryExporter(outputPath, format, title)) {
+            export(exporter, parallelism);
+            return exporter.getEntries();
+        }
+    }
+
+    /**
+     * @return 解压后的总长度：索引表|单词|XML翻译
+     */
+    public long getInflatedLength() {
+        return (long) inflatWordsIndexLength + inflatWordsLength + inflatedXmlLength;
+    }
+
+    /**
+     * 把所有数据块解压到内存中，适用于比较小的词典
+     *
+     * @param parallelism 并行解压的线程数
+     * @return 解压后的数据
+     * @throws IOException
+     */
+    public ByteBuffer inflate(int parallelism) throws IOException {
+        return inflate(parallelism, null);
+    }
+
+    /**
+     * @param blockStarts 不为null的时候记录每个数据块解压后的开始位置，长度为数据块个数+1
+     * @see #inflate(int)
+     */
+    ByteBuffer inflate(int parallelism, long[] blockStarts) throws IOException {
+        return inflate(parallelism, blockStarts, null);
+    }
+
+    /**
+     * @param arena 不为null的时候解压到这个堆外区域中
+     * @see #inflate(int, long[])
+     */
+    private ByteBuffer inflate(int parallelism, long[] blockStarts, OffHeapArena arena) throws IOException {
+        final long inflatedLength = getInflatedLength();
+        if (inflatedLength > Integer.MAX_VALUE) {
+            throw new IOException(String.format("Inflated data is %d bytes, too large to keep in memory", inflatedLength));
+        }
+
+        final ByteBuffer inflated = arena == null ? ByteBuffer.allocate((int) inflatedLength) : arena.allocate((int) inflatedLength);
+        if (inflated.hasArray() && (parallelism == 1 || deflateStreams.length < 2)) {
+            // 长度已知，直接解压到最终的数组中
+            inflateInto(inflated.array(), inflated.arrayOffset(), inflated.capacity(), blockStarts);
+            return inflated;
+        }
+        decompress(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (len > inflated.remaining()) {
+                    throw new IOException("Inflated data is larger than " + inflated.capacity() + " bytes");
+                }
+                inflated.put(b, off, len);
+            }
+        }, parallelism, blockStarts);
+
+        if (inflated.hasRemaining()) {
+            throw new IOException(String.format("Inflated data is truncated: %d/%d bytes", inflated.position(), inflated.capacity()));
+        }
+        inflated.flip();
+        return inflated;
+    }
+
+    /**
+     * 顺序解压所有数据块到一个已经分配好的数组中，解压后的总长度必须正好是length
+     */
+    private void inflateInto(byte[] dst, int off, int length, long[] blockStarts) throws IOException {
+        final Inflater inflater = inflaterPool.acquire();
+        try {
+            int position = off;
+            for (int i = 0; i < deflateStreams.length; i++) {
+                inflateBlock(i, inflater, dst, position, false);
+                if (blockStarts != null) {
+                    blockStarts[i] = position - off;
+                }
+                position += (int) inflater.getBytesWritten();
+            }
+            if (blockStarts != null) {
+                blockStarts[deflateStreams.length] = position - off;
+            }
+            if (position - off != length) {
+                throw new IOException(String.format("Inflated data is truncated: %d/%d bytes", position - off, length));
+            }
+        } finally {
+            inflaterPool.release(inflater);
+        }
+    }
+
+    /**
+     * 打开一个随机访问的查询器，查询单词的时候只解压需要的数据块
+     *
+     * @param cacheBytes 缓存的解压数据块的最大字节数
+     * @return 查询器
+     * @throws IOException
+     */
+    public LingoesDictLookup openLookup(long cacheBytes) throws IOException {
+        return new LingoesDictLookup(new LingoesInflatedBlocks(this, cacheBytes), inflatWordsIndexLength, inflatWordsLength, inflatedXmlLength);
+    }
+
+    /**
+     * 完全在内存中解压和解析词典
+     *
+     * @param parallelism 并行解压的线程数
+     * @return 解析后的词典
+     * @throws IOException
+     */
+    public LingoesInflateDictReader openInflated(int parallelism) throws IOException {
+        return openInflated(parallelism, true);
+    }
+
+    /**
+     * 完全在内存中解压词典
+     *
+     * @param parallelism 并行解压的线程数
+     * @param buildDict 是否马上建立所有词条的HashMap，为false时只用于查询
+     * @return 解析后的词典
+     * @throws IOException
+     */
+    public LingoesInflateDictReader openInflated(int parallelism, boolean buildDict) throws IOException {
+        if (inflatedDataCache != null) {
+            return inflatedDataCache.open(this, parallelism, buildDict);
+        }
+        return new LingoesInflateDictReader(inflate(parallelism), inflatWordsIndexLength, inflatWordsLength, inflatedXmlLength, buildDict);
+    }
+
+    /**
+     * 解压到堆外区域中，打开查询模式的词典。索引表、单词和XML翻译都不在Java堆中，查询的时候直接在堆外内存上二分查找和解码。</br>
+     *
+     * 压缩的LD2文件也不想放在堆中的时候使用{@link #LingoesDictReader(String, boolean)}映射文件。
+     *
+     * @param parallelism 并行解压的线程数
+     * @param arena 堆外区域，关闭以后返回的词典不能再使用
+     * @return 查询模式的词典
+     * @throws IOException
+     */
+    public LingoesInflateDictReader openOffHeap(int parallelism, OffHeapArena arena) throws IOException {
+        return new LingoesInflateDictReader(inflate(parallelism, null, arena), inflatWordsIndexLength, inflatWordsLength,
+                inflatedXmlLength, false, arena);
+    }
 }
@@ -0,0 +1,120 @@
+package org.pj.opendict.dicts.lingoes;
+
+import org.pj.opendict.dicts.SensitiveStringDecoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Created by pingjiang on 14-6-28.</br>
+ *
+ * 单词和XML翻译部分可能的编码。LD2文件头里面没有记录编码，通过抽样少量记录来判断：
+ * 所有抽样的记录都能严格解码并且没有控制字符的第一个编码就是这个部分的编码。</br>
+ *
+ * ASCII内容的UTF-16LE数据按照UTF-8解码也是合法的，但是会包含大量的'\0'，所以控制字符可以区分这两种编码。
+ */
+public enum LingoesEncoding {
+    UTF_8("UTF-8"),
+    UTF_16LE("UTF-16LE");
+
+    private static Logger logger = LoggerFactory.getLogger(LingoesEncoding.class);
+
+    /**
+     * 每个部分最多抽样的记录数
+     */
+    public static final int SAMPLES = 16;
+
+    /**
+     * 按序号读取一个部分（单词或者XML翻译）的原始记录
+     */
+    public interface Records {
+        int size();
+
+        byte[] get(int index) throws IOException;
+    }
+
+    private final Charset charset;
+
+    LingoesEncoding(String name) {
+        this.charset = Charset.forName(name);
+    }
+
+    public Charset charset() {
+        return charset;
+    }
+
+    public SensitiveStringDecoder newDecoder() {
+        return new SensitiveStringDecoder(charset);
+    }
+
+    /**
+     * 抽样均匀分布的非空记录，判断编码
+     *
+     * @param records 记录
+     * @return 编码，没有可以判断的记录的时候返回{@link #UTF_8}
+     */
+    public static LingoesEncoding detect(Records records) throws IOException {
+        final int size = records.size();
+        final int step = Math.max(size / SAMPLES, 1);
+
+        int[] valid = new int[values().length];
+        int samples = 0;
+        for (int i = 0; i < size && samples < SAMPLES; i += step) {
+            byte[] bytes = records.get(i);
+            if (bytes.length == 0) {
+                continue;
+            }
+            samples++;
+            for (LingoesEncoding encoding : values()) {
+                if (encoding.accepts(bytes)) {
+                    valid[encoding.ordinal()]++;
+                }
+            }
+        }
+
+        // 全部通过的第一个编码，都不能全部通过的时候选择通过最多的
+        LingoesEncoding best = UTF_8;
+        for (LingoesEncoding encoding : values()) {
+            if (valid[encoding.ordinal()] == samples) {
+                best = encoding;
+                break;
+            }
+            if (valid[encoding.ordinal()] > valid[best.ordinal()]) {
+                best = encoding;
+            }
+        }
+        logger.debug("Detected {} from {} samples", best, samples);
+        return best;
+    }
+
+    /**
+     * 能够严格解码并且没有控制字符（制表符和换行除外）
+     */
+    boolean accepts(byte[] bytes) {
+        if (this == UTF_16LE && bytes.length % 2 != 0) {
+            return false;
+        }
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT);
+        CharBuffer chars;
+        try {
+            chars = decoder.decode(ByteBuffer.wrap(bytes));
+        } catch (CharacterCodingException e) {
+            return false;
+        }
+        while (chars.hasRemaining()) {
+            char c = chars.get();
+            if (c < 0x20 && c != '\t' && c != '\n' && c != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,350 @@
+package org.pj.opendict.dicts.lingoes;
+
+import org.pj.opendict.metrics.Metrics;
+import org.pj.opendict.metrics.Phase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Created by pingjiang on 14-6-26.</br>
+ *
+ * 单词的二分查找索引，不需要把所有单词和释义放到HashMap里面。</br>
+ *
+ * 建立索引的时候先检查词典里面单词的排列顺序符合哪一种{@link Collation}，符合的话直接在索引表上二分查找，
+ * 不需要额外的内存；都不符合的时候按照{@link Collation#CASE_INSENSITIVE_THEN_CASE}排序，
+ * 保存一个排好序的词条序号数组（每个词条4字节）。
+ */
+public class LingoesHeadwordIndex {
+    private static Logger logger = LoggerFactory.getLogger(LingoesHeadwordIndex.class);
+
+    /**
+     * 抽样检查的时候最多检查的位置数
+     */
+    private static final int SAMPLES = 64;
+
+    /**
+     * 按序号读取单词
+     */
+    public interface Headwords {
+        int size();
+
+        String getWord(int index) throws IOException;
+
+        /**
+         * 二分查找比较单词用，返回的字符序列只需要在下一次调用之前有效，实现可以复用缓冲区避免分配内存
+         */
+        default CharSequence getWordView(int index) throws IOException {
+            return getWord(index);
+        }
+    }
+
+    /**
+     * 可能的单词排列顺序
+     */
+    public enum Collation {
+        /**
+         * 先忽略大小写比较，再区分大小写比较
+         */
+        CASE_INSENSITIVE_THEN_CASE(true) {
+            @Override
+            public int compare(CharSequence o1, CharSequence o2) {
+                int c = compareIgnoreCase(o1, o2);
+                return c != 0 ? c : compareNatural(o1, o2);
+            }
+        },
+        /**
+         * 忽略大小写，大小写不同的单词之间没有顺序
+         */
+        CASE_INSENSITIVE(true) {
+            @Override
+            public int compare(CharSequence o1, CharSequence o2) {
+                return compareIgnoreCase(o1, o2);
+            }
+        },
+        /**
+         * 按照UTF-16编码顺序
+         */
+        NATURAL(false) {
+            @Override
+            public int compare(CharSequence o1, CharSequence o2) {
+                return compareNatural(o1, o2);
+            }
+        };
+
+        private final boolean caseInsensitive;
+        private final Comparator<String> comparator = new Comparator<String>() {
+            @Override
+            public int compare(String o1, String o2) {
+                return Collation.this.compare(o1, o2);
+            }
+        };
+
+        Collation(boolean caseInsensitive) {
+            this.caseInsensitive = caseInsensitive;
+        }
+
+        /**
+         * 直接比较字符序列，不需要先转换成String
+         */
+        public abstract int compare(CharSequence o1, CharSequence o2);
+
+        public Comparator<String> comparator() {
+            return comparator;
+        }
+    }
+
+    /**
+     * 和{@link String#compareTo(String)}一样
+     */
+    static int compareNatural(CharSequence o1, CharSequence o2) {
+        final int n1 = o1.length();
+        final int n2 = o2.length();
+        for (int i = 0, n = Math.min(n1, n2); i < n; i++) {
+            char c1 = o1.charAt(i);
+            char c2 = o2.charAt(i);
+            if (c1 != c2) {
+                return c1 - c2;
+            }
+        }
+        return n1 - n2;
+    }
+
+    /**
+     * 和{@link String#CASE_INSENSITIVE_ORDER}一样逐个字符比较
+     */
+    static int compareIgnoreCase(CharSequence o1, CharSequence o2) {
+        final int n1 = o1.length();
+        final int n2 = o2.length();
+        for (int i = 0, n = Math.min(n1, n2); i < n; i++) {
+            char c1 = o1.charAt(i);
+            char c2 = o2.charAt(i);
+            if (c1 != c2) {
+                c1 = Character.toUpperCase(c1);
+                c2 = Character.toUpperCase(c2);
+                if (c1 != c2) {
+                    c1 = Character.toLowerCase(c1);
+                    c2 = Character.toLowerCase(c2);
+                    if (c1 != c2) {
+                        return c1 - c2;
+                    }
+                }
+            }
+        }
+        return n1 - n2;
+    }
+
+    private final Headwords headwords;
+    private final Collation collation;
+
+    /**
+     * 排好序的词条序号，词典本身的顺序可以使用的时候为null
+     */
+    private final int[] sorted;
+
+    private LingoesHeadwordIndex(Headwords headwords, Collation collation, int[] sorted) {
+        this.headwords = headwords;
+        this.collation = collation;
+        this.sorted = sorted;
+    }
+
+    /**
+     * 检查所有相邻的单词，建立索引。适用于单词已经在内存中的情况
+     */
+    public static LingoesHeadwordIndex build(Headwords headwords) throws IOException {
+        final long start = Metrics.start();
+        try {
+            return checkAll(headwords);
+        } finally {
+            Metrics.stop(Phase.INDEX_BUILD, start, 0);
+        }
+    }
+
+    private static LingoesHeadwordIndex checkAll(Headwords headwords) throws IOException {
+        boolean[] sortedBy = new boolean[Collation.values().length];
+        Arrays.fill(sortedBy, true);
+        return checkAll(headwords, sortedBy);
+    }
+
+    /**
+     * 检查所有相邻的单词是否符合sortedBy中还没有排除的排列顺序，全部排除以后不再继续检查
+     */
+    private static LingoesHeadwordIndex checkAll(Headwords headwords, boolean[] sortedBy) throws IOException {
+        final int size = headwords.size();
+        String prev = null;
+        for (int i = 0; i < size && any(sortedBy); i++) {
+            String word = headwords.getWord(i);
+            if (prev != null) {
+                check(prev, word, sortedBy);
+            }
+            prev = word;
+        }
+
+        for (Collation collation : Collation.values()) {
+            if (sortedBy[collation.ordinal()]) {
+                return new LingoesHeadwordIndex(headwords, collation, null);
+            }
+        }
+        return sort(headwords);
+    }
+
+    /**
+     * 先检查均匀分布的一部分相邻单词排除不符合的排列顺序，再对剩下的排列顺序检查所有相邻单词。
+     * 适用于读取单词代价比较大的情况（例如需要解压数据块）：抽样已经排除所有排列顺序的时候不需要读取所有单词就可以排序。</br>
+     *
+     * 只通过抽样的顺序是不可靠的，抽样点之间只要有一处顺序不对，二分查找就会找不到存在的单词。
+     */
+    public static LingoesHeadwordIndex sample(Headwords headwords) throws IOException {
+        final long start = Metrics.start();
+        try {
+            return checkSamples(headwords);
+        } finally {
+            Metrics.stop(Phase.INDEX_BUILD, start, 0);
+        }
+    }
+
+    private static LingoesHeadwordIndex checkSamples(Headwords headwords) throws IOException {
+        final int size = headwords.size();
+        if (size <= SAMPLES * 2) {
+            return checkAll(headwords);
+        }
+
+        boolean[] sortedBy = new boolean[Collation.values().length];
+        Arrays.fill(sortedBy, true);
+        final int step = size / SAMPLES;
+        for (int i = 0; i + step < size; i += step) {
+            check(headwords.getWord(i), headwords.getWord(i + 1), sortedBy);
+            check(headwords.getWord(i), headwords.getWord(i + step), sortedBy);
+        }
+
+        if (!any(sortedBy)) {
+            return sort(headwords);
+        }
+        return checkAll(headwords, sortedBy);
+    }
+
+    private static boolean any(boolean[] sortedBy) {
+        for (boolean sorted : sortedBy) {
+            if (sorted) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 不检查顺序，直接使用指定的排列顺序，例如已经在编译后的索引里面记录了顺序
+     */
+    public static LingoesHeadwordIndex of(Headwords headwords, Collation collation, int[] sorted) {
+        return new LingoesHeadwordIndex(headwords, collation, sorted);
+    }
+
+    private static void check(String prev, String word, boolean[] sortedBy) {
+        for (Collation collation : Collation.values()) {
+            if (sortedBy[collation.ordinal()] && collation.compare(prev, word) > 0) {
+                sortedBy[collation.ordinal()] = false;
+            }
+        }
+    }
+
+    private static LingoesHeadwordIndex sort(Headwords headwords) throws IOException {
+        final int size = headwords.size();
+        logger.debug("Headwords are not sorted, sort {} headwords", size);
+
+        // 临时解码所有单词用于排序，排好序以后只保留序号
+        final String[] words = new String[size];
+        Integer[] indexes = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            words[i] = headwords.getWord(i);
+            indexes[i] = i;
+        }
+        final Collation comparator = Collation.CASE_INSENSITIVE_THEN_CASE;
+        Arrays.sort(indexes, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return comparator.compare(words[o1], words[o2]);
+            }
+        });
+
+        int[] sorted = new int[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = indexes[i];
+        }
+        return new LingoesHeadwordIndex(headwords, Collation.CASE_INSENSITIVE_THEN_CASE, sorted);
+    }
+
+    public Collation getCollation() {
+        return collation;
+    }
+
+    /**
+     * @return 是否直接使用词典本身的顺序
+     */
+    public boolean isStoredOrder() {
+        return sorted == null;
+    }
+
+    /**
+     * @return 排好序的词条序号，使用词典本身的顺序时为null
+     */
+    public int[] getSorted() {
+        return sorted;
+    }
+
+    public int size() {
+        return headwords.size();
+    }
+
+    /**
+     * @return 按照排列顺序第position个词条的序号
+     */
+    public int entryAt(int position) {
+        return sorted == null ? position : sorted[position];
+    }
+
+    /**
+     * 二分查找单词。完全一样的单词优先，否则返回忽略大小写相同的单词
+     *
+     * @param word 单词
+     * @return 词条序号，没有找到返回-1
+     */
+    public int indexOf(String word) throws IOException {
+        int index = find(word, collation, true);
+        if (index < 0 && collation.caseInsensitive) {
+            index = find(word, Collation.CASE_INSENSITIVE, false);
+        }
+        return index;
+    }
+
+    /**
+     * 找到第一个不小于word的位置，然后检查所有相等的单词。比较的时候使用单词视图，不需要为每个单词创建String
+     */
+    private int find(String word, Collation comparator, boolean exact) throws IOException {
+        final int size = headwords.size();
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparator.compare(headwords.getWordView(entryAt(mid)), word) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        for (int i = low; i < size; i++) {
+            int entry = entryAt(i);
+            CharSequence candidate = headwords.getWordView(entry);
+            if (comparator.compare(candidate, word) != 0) {
+                break;
+            }
+            if (!exact || word.contentEquals(candidate)) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+}
@@ -1,8 +1,11 @@
 package org.pj.opendict.dicts.lingoes;
 
-import org.pj.opendict.dicts.DictOffset;
+import org.pj.opendict.dicts.DefinitionStore;
 import org.pj.opendict.dicts.DictOffsetTable;
+import org.pj.opendict.dicts.OffHeapArena;
 import org.pj.opendict.dicts.SensitiveStringDecoder;
+import org.pj.opendict.metrics.Metrics;
+import org.pj.opendict.metrics.Phase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -11,20 +14,28 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
-import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
 * Created by pingjiang on 14-6-20.
+*
+* 查询模式下不建立{@link #getDict()}的HashMap，而是通过{@link LingoesHeadwordIndex}在索引表上二分查找，
+* 只解码匹配的词条的XML翻译。
 */ // 读取解压后的文件
-public class LingoesInflateDictReader {
+public class LingoesInflateDictReader implements LingoesHeadwordIndex.Headwords {
 
     private static Logger logger = LoggerFactory.getLogger(LingoesInflateDictReader.class);
 
-    // 默认编码为utf-8,还可以为UTF-16BE
-    private SensitiveStringDecoder wordStringDecoder = new SensitiveStringDecoder(Charset.forName("UTF-8"));
-    private SensitiveStringDecoder xmlStringDecoder = new SensitiveStringDecoder(Charset.forName("UTF-8"));
+    // 编码为utf-8或者UTF-16LE，打开的时候抽样判断
+    private LingoesEncoding wordEncoding;
+    private LingoesEncoding xmlEncoding;
+    private SensitiveStringDecoder wordStringDecoder;
+    private SensitiveStringDecoder xmlStringDecoder;
 
     private final ByteBuffer buffer;
     private int position = 0;
@@ -35,19 +46,88 @@ public class LingoesInflateDictReader {
     private final int wordsOffset;
     private final int xmlOffset;
 
-    private final DictOffsetTable offsetTable = new DictOffsetTable();
-    private final Map<String, String> dict = new HashMap<String, String>();
+    private final DictOffsetTable offsetTable;
+    /**
+     * 堆外数据的时候交给调用者的索引表副本，区域关闭以后也可以安全读取
+     */
+    private DictOffsetTable heapOffsetTable = null;
+    private final OffHeapArena arena;
+    private Map<String, String> dict = null;
+    private LingoesHeadwordIndex headwordIndex = null;
 
-    public DictOffsetTable getOffsetTable() {
-        return offsetTable;
+    /**
+     * 索引表。数据在堆外区域中的时候返回复制到堆内存的索引表（第一次调用的时候复制），
+     * 区域关闭以后读取不会访问已经释放的内存
+     *
+     * @throws IllegalStateException 区域已经关闭并且还没有复制过索引表
+     */
+    public synchronized DictOffsetTable getOffsetTable() {
+        if (arena == null) {
+            return offsetTable;
+        }
+        if (heapOffsetTable == null) {
+            enter();
+            try {
+                ByteBuffer table = ByteBuffer.allocate(tableLength);
+                ByteBuffer view = buffer.duplicate();
+                view.clear();
+                view.limit(tableLength);
+                table.put(view);
+                heapOffsetTable = DictOffsetTable.wrap(table, 0, tableLength);
+            } finally {
+                exit();
+            }
+        }
+        return heapOffsetTable;
     }
 
-    public Map<String, String> getDict() {
+    /**
+     * @return 所有词条，查询模式下第一次调用的时候才会建立
+     */
+    public synchronized Map<String, String> getDict() {
+        if (dict == null) {
+            enter();
+            try {
+                readDeflate();
+            } finally {
+                exit();
+            }
+        }
         return dict;
     }
 
     public LingoesInflateDictReader(String filePath, int tableLength, int wordsLength, int xmlsLength) throws IOException {
+        this(readFile(filePath), tableLength, wordsLength, xmlsLength);
+    }
+
+    public LingoesInflateDictReader(ByteBuffer buffer, int tableLength, int wordsLength, int xmlsLength) {
+        this(buffer, tableLength, wordsLength, xmlsLength, true);
+    }
 
+    /**
+     * 直接解析内存中的解压数据，不需要临时文件
+     *
+     * @param buffer 解压后的数据（堆内存），从0开始
+     * @param tableLength 索引表长度
+     * @param wordsLength 单词长度
+     * @param xmlsLength XML翻译长度
+     * @param buildDict 是否马上解码所有单词，建立HashMap（释义读取的时候才解码）。为false的时候是查询模式，打开几乎不需要时间，
+     *                  内存也不会随着释义的总长度增长
+     */
+    public LingoesInflateDictReader(ByteBuffer buffer, int tableLength, int wordsLength, int xmlsLength, boolean buildDict) {
+        this(buffer, tableLength, wordsLength, xmlsLength, buildDict, null);
+    }
+
+    /**
+     * 解析堆外区域中的解压数据，查询的时候直接在堆外内存上二分查找和解码，区域关闭以后不能再访问
+     *
+     * @param buffer 解压后的数据（direct buffer），从0开始
+     * @param arena buffer所在的堆外区域，为null的时候不检查
+     * @see #LingoesInflateDictReader(ByteBuffer, int, int, int, boolean)
+     */
+    public LingoesInflateDictReader(ByteBuffer buffer, int tableLength, int wordsLength, int xmlsLength, boolean buildDict,
+                                    OffHeapArena arena) {
+        this.arena = arena;
         this.tableLength = tableLength;
         this.wordsLength = wordsLength;
         this.xmlsLength = xmlsLength;
@@ -56,87 +136,466 @@ public class LingoesInflateDictReader {
         this.wordsOffset = this.tableLength;
         this.xmlOffset = this.tableLength + this.wordsLength;
 
-        try (RandomAccessFile file = new RandomAccessFile(filePath, "r"); final FileChannel fChannel = file.getChannel();) {
-            buffer = ByteBuffer.allocate((int) fChannel.size());
-            fChannel.read(buffer);
-        }
+        this.buffer = buffer;
         buffer.order(ByteOrder.LITTLE_ENDIAN);
         buffer.rewind();
 
-        readDeflate();
+        // 索引表直接建立在解压后的数据上
+        this.offsetTable = DictOffsetTable.wrap(buffer, 0, tableLength);
+
+        enter();
+        try {
+            detectEncodings();
+
+            if (buildDict) {
+                readDeflate();
+            }
+        } finally {
+            exit();
+        }
     }
 
-    private DictOffset readDictOffset() {
-        int wordOffset = buffer.getInt();
-        int xmlOffset = buffer.getInt();
-        byte flag = buffer.get();
-        byte ref = buffer.get();
+    /**
+     * 抽样少量单词和XML翻译，判断两个部分的编码
+     */
+    private void detectEncodings() {
+        try {
+            wordEncoding = LingoesEncoding.detect(new LingoesEncoding.Records() {
+                @Override
+                public int size() {
+                    return LingoesInflateDictReader.this.size();
+                }
+
+                @Override
+                public byte[] get(int index) {
+                    int refs = offsetTable.getRefInt(index);
+                    int wordPos = wordsOffset + offsetTable.getWordOffset(index) + refs*4;
+                    return copyBytes(wordPos, wordLength(index, refs));
+                }
+            });
+            xmlEncoding = LingoesEncoding.detect(new LingoesEncoding.Records() {
+                @Override
+                public int size() {
+                    return LingoesInflateDictReader.this.size();
+                }
+
+                @Override
+                public byte[] get(int index) {
+                    int xmlPos = xmlOffset + offsetTable.getXmlOffset(index);
+                    return copyBytes(xmlPos, offsetTable.getXmlLength(index));
+                }
+            });
+        } catch (IOException e) {
+            // 数据都在内存中，不会发生
+            throw new IllegalStateException(e);
+        }
+        wordStringDecoder = wordEncoding.newDecoder();
+        xmlStringDecoder = xmlEncoding.newDecoder();
+    }
 
-        return new DictOffset(wordOffset, xmlOffset, flag, ref);
+    /**
+     * 复制buffer中从position开始的length个字节，不改变buffer的position
+     */
+    private byte[] copyBytes(int position, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        view.get(bytes);
+        return bytes;
     }
 
-    private String readDictWord(DictOffset dictOffset, int refs) {
-        int indexPos = wordsOffset + dictOffset.getWordOffset();
+    public LingoesEncoding getWordEncoding() {
+        return wordEncoding;
+    }
+
+    public LingoesEncoding getXmlEncoding() {
+        return xmlEncoding;
+    }
+
+    /**
+     * @return 数据所在的堆外区域，数据在堆内存中的时候返回null
+     */
+    public OffHeapArena getArena() {
+        return arena;
+    }
+
+    /**
+     * 开始读取数据，堆外区域关闭的时候抛出IllegalStateException，读取完成以后调用{@link #exit()}
+     */
+    private void enter() {
+        if (arena != null) {
+            arena.enter();
+        }
+    }
+
+    private void exit() {
+        if (arena != null) {
+            arena.exit();
+        }
+    }
+
+    private static ByteBuffer readFile(String filePath) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(filePath, "r"); final FileChannel fChannel = file.getChannel();) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) fChannel.size());
+            while (buffer.hasRemaining() && fChannel.read(buffer) != -1) {
+                // 一次read不一定能读完整个文件
+            }
+            return buffer;
+        }
+    }
+
+    private String readDictWord(int index, int refs) {
+        int indexPos = wordsOffset + offsetTable.getWordOffset(index);
         int wordPos = indexPos + refs*4;
+        int wordLength = wordLength(index, refs);
+        return wordStringDecoder.decodeString(buffer, wordPos, wordLength);
+    }
 
-        int wordLength;// 应该忽略-（未知字段index）长度4
-        if (dictOffset.getNext() == null) {
-            wordLength = xmlOffset - dictOffset.getWordOffset() - refs*4;
+    private int xmlLength(int index) {
+        if (index + 1 == offsetTable.size()) {
+            return xmlsLength - offsetTable.getXmlOffset(index);
         } else {
-            wordLength = dictOffset.getWordLength() - refs*4;
+            return offsetTable.getXmlLength(index);
         }
-        System.out.println("read word: position= " + wordPos + ", length= " + wordLength);
-        return new String(wordStringDecoder.decode(buffer.array(), wordPos, wordLength));
     }
 
-    private String readXml(DictOffset dictOffset) {
-        int xmlPos = xmlOffset + dictOffset.getXmlOffset();
-        int xmlLength;
-        if (dictOffset.getNext() == null) {
-            xmlLength = totalLength - dictOffset.getXmlOffset();
+    private int wordLength(int index, int refs) {
+        // 应该忽略-（未知字段index）长度4
+        if (index + 1 == offsetTable.size()) {
+            return wordsLength - offsetTable.getWordOffset(index) - refs*4;
         } else {
-            xmlLength = dictOffset.getXmlLength();
+            return offsetTable.getWordLength(index) - refs*4;
         }
-        System.out.println("read xml: position= " + xmlPos + ", length= " + xmlLength + ", offset= " + dictOffset);
-        return new String(xmlStringDecoder.decode(buffer.array(), xmlPos, xmlLength));
     }
 
-    private void constructOffsetTable() {
-        final int tableSize = tableLength/DictOffset.bytes();
-        //System.out.println("Construct index table size= " + tableSize);
+    private String readXml(int index) {
+        int xmlPos = xmlOffset + offsetTable.getXmlOffset(index);
+        int xmlLength = xmlLength(index);
+        return xmlStringDecoder.decodeString(buffer, xmlPos, xmlLength);
+    }
 
-        for (int i = 0; i < tableSize; i++) {
-            DictOffset dictOffset = readDictOffset();
-            offsetTable.add(dictOffset);
+    /**
+     * @return 词条数（不包括最后一个索引）
+     */
+    @Override
+    public int size() {
+        return Math.max(offsetTable.size() - 1, 0);
+    }
+
+    /**
+     * 索引表和数据都是绝对位置读取，解码器每个线程一个，可以在多个线程中同时调用
+     *
+     * @return 第index个词条的单词
+     */
+    @Override
+    public String getWord(int index) {
+        enter();
+        try {
+            final long start = Metrics.start();
+            final int refs = offsetTable.getRefInt(index);
+            String word = readDictWord(index, refs);
+            Metrics.stop(Phase.ENTRY_DECODE, start, wordLength(index, refs));
+            return word;
+        } finally {
+            exit();
         }
     }
 
-    private void readDeflate() {
-        constructOffsetTable();
-
-        // 这里应该如何来做？
-        for (int i = 0; i < offsetTable.size() - 1; i++) {
-            System.out.println("process i= " + i);
-            DictOffset dictOffset = offsetTable.get(i);
-            // 首先应该获取refs数
-            int refs = dictOffset.getRefInt();
-            String dictWord = readDictWord(dictOffset, refs);
-            int wordPosBase = wordsOffset + dictOffset.getWordOffset();
-            String xml = readXml(dictOffset);
+    /**
+     * @return 第index个词条的单词，使用当前线程的解码缓冲区，二分查找比较单词的时候不分配内存
+     */
+    @Override
+    public CharSequence getWordView(int index) {
+        enter();
+        try {
+            int refs = offsetTable.getRefInt(index);
+            int wordPos = wordsOffset + offsetTable.getWordOffset(index) + refs*4;
+            return wordStringDecoder.decodeView(buffer, wordPos, wordLength(index, refs));
+        } finally {
+            exit();
+        }
+    }
 
+    /**
+     * @return 第index个词条引用的其他词条序号
+     */
+    public int[] getRefs(int index) {
+        enter();
+        try {
+            int refs = offsetTable.getRefInt(index);
+            int wordPosBase = wordsOffset + offsetTable.getWordOffset(index);
+            int[] targets = new int[refs];
+            for (int j = 0; j < refs; j++) {
+                targets[j] = buffer.getInt(wordPosBase + 4*j);
+            }
+            return targets;
+        } finally {
+            exit();
+        }
+    }
+
+    /**
+     * 可以在多个线程中同时调用
+     *
+     * @return 第index个词条的XML翻译，已经合并了引用的释义
+     */
+    public String getXml(int index) {
+        enter();
+        try {
+            final int refs = offsetTable.getRefInt(index);
+            if (refs == 0) {
+                return readOwnXml(index);
+            }
+
+            // 直接解码到一个StringBuilder，不产生中间的字符串
+            long start = Metrics.start();
+            final StringBuilder sb = new StringBuilder();
+            appendXml(index, sb);
+            Metrics.stop(Phase.ENTRY_DECODE, start, xmlLength(index));
+
+            start = Metrics.start();
+            final int wordPosBase = wordsOffset + offsetTable.getWordOffset(index);
+            long refBytes = 0;
             for (int j = 0; j < refs; j++) {
                 int newIndex = buffer.getInt(wordPosBase + 4*j);
-                DictOffset newOffset = offsetTable.get(newIndex);
-                if (xml == null || xml.isEmpty()) {
-                    xml = readXml(newOffset);
-                } else {
-                    xml = xml + ", " + readXml(newOffset);
+                refBytes += xmlLength(newIndex);
+                if (sb.length() > 0) {
+                    sb.append(", ");
                 }
+                appendXml(newIndex, sb);
             }
+            Metrics.stop(Phase.REF_RESOLVE, start, refBytes);
+            return sb.toString();
+        } finally {
+            exit();
+        }
+    }
 
+    /**
+     * @return 第index个词条自己的XML翻译，不包括引用
+     */
+    private String readOwnXml(int index) {
+        final long start = Metrics.start();
+        String xml = readXml(index);
+        Metrics.stop(Phase.ENTRY_DECODE, start, xmlLength(index));
+        return xml;
+    }
+
+    private void appendXml(int index, StringBuilder sb) {
+        xmlStringDecoder.decode(buffer, xmlOffset + offsetTable.getXmlOffset(index), xmlLength(index), sb);
+    }
+
+    /**
+     * @return 单词索引，第一次调用的时候检查单词顺序并建立
+     */
+    public synchronized LingoesHeadwordIndex getHeadwordIndex() {
+        if (headwordIndex == null) {
+            try {
+                headwordIndex = LingoesHeadwordIndex.build(this);
+            } catch (IOException e) {
+                // 数据都在内存中，不会发生
+                throw new IllegalStateException(e);
+            }
+        }
+        return headwordIndex;
+    }
+
+    /**
+     * 二分查找单词。完全一样的单词优先，否则返回忽略大小写相同的单词
+     *
+     * @param word 单词
+     * @return 词条序号，没有找到返回-1
+     */
+    public synchronized int indexOf(String word) {
+        try {
+            return getHeadwordIndex().indexOf(word);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 查询单词的释义，只解码找到的词条
+     *
+     * @param word 单词
+     * @return XML翻译，没有找到返回null
+     */
+    public String lookup(String word) {
+        int index = indexOf(word);
+        return index < 0 ? null : getXml(index);
+    }
+
+    /**
+     * 一个词条：序号、单词和已经合并了引用的XML翻译
+     */
+    public static final class Entry implements Map.Entry<String, String> {
+        private final int index;
+        private final String word;
+        private final String xml;
+
+        Entry(int index, String word, String xml) {
+            this.index = index;
+            this.word = word;
+            this.xml = xml;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getWord() {
+            return word;
+        }
+
+        public String getXml() {
+            return xml;
+        }
+
+        @Override
+        public String getKey() {
+            return word;
+        }
+
+        @Override
+        public String getValue() {
+            return xml;
+        }
+
+        @Override
+        public String setValue(String value) {
+            throw new UnsupportedOperationException("Entry is read only");
+        }
+
+        @Override
+        public String toString() {
+            return word + "=" + xml;
+        }
+    }
+
+    /**
+     * 按照序号范围遍历词条，trySplit按照序号对半分割，每个词条在处理它的线程中解码
+     */
+    private final class EntrySpliterator implements Spliterator<Entry> {
+        private int origin;
+        private final int fence;
+
+        EntrySpliterator(int origin, int fence) {
+            this.origin = origin;
+            this.fence = fence;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Entry> action) {
+            if (origin >= fence) {
+                return false;
+            }
+            action.accept(getEntry(origin++));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Entry> action) {
+            final int end = fence;
+            for (int i = origin; i < end; i++) {
+                action.accept(getEntry(i));
+            }
+            origin = end;
+        }
+
+        @Override
+        public Spliterator<Entry> trySplit() {
+            final int mid = (origin + fence) >>> 1;
+            if (mid <= origin) {
+                return null;
+            }
+            Spliterator<Entry> prefix = new EntrySpliterator(origin, mid);
+            origin = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return fence - origin;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+        }
+    }
+
+    /**
+     * @return 第index个词条
+     */
+    public Entry getEntry(int index) {
+        return new Entry(index, getWord(index), getXml(index));
+    }
+
+    /**
+     * @return 按照序号遍历所有词条的Spliterator，不需要先建立{@link #getDict()}
+     */
+    public Spliterator<Entry> spliterator() {
+        return new EntrySpliterator(0, size());
+    }
+
+    /**
+     * 所有词条的流，调用parallel()以后在多个线程中同时解码单词和XML翻译，例如统计词频：
+     * <pre>
+     *     reader.entries().parallel().collect(Collectors.groupingBy(...))
+     * </pre>
+     *
+     * @return 按照序号排列的词条
+     */
+    public Stream<Entry> entries() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * 建立所有词条的Map：单词解码一次，释义按照原始编码去重保存，引用只记录目标序号，读取的时候才解码和连接
+     */
+    private void readDeflate() {
+        final int size = size();
+        final Map<String, Integer> wordIndex = new HashMap<String, Integer>();
+        final DefinitionStore store = new DefinitionStore(xmlStringDecoder);
+        final int[] definitions = new int[size];
+        final int[] refStarts = new int[size + 1];
+
+        int totalRefs = 0;
+        for (int i = 0; i < size; i++) {
+            String dictWord = getWord(i);
+            final int xmlPos = xmlOffset + offsetTable.getXmlOffset(i);
+            if (buffer.hasArray()) {
+                definitions[i] = store.add(buffer.array(), buffer.arrayOffset() + xmlPos, xmlLength(i));
+            } else {
+                byte[] bytes = copyBytes(xmlPos, xmlLength(i));
+                definitions[i] = store.add(bytes, 0, bytes.length);
+            }
             if (dictWord != null) {
-                dict.put(dictWord, xml);
+                wordIndex.put(dictWord, i);
             }
+            refStarts[i] = totalRefs;
+            totalRefs += offsetTable.getRefInt(i);
         }
+        refStarts[size] = totalRefs;
+
+        final int[] refTargets = new int[totalRefs];
+        for (int i = 0; i < size; i++) {
+            final int refs = refStarts[i + 1] - refStarts[i];
+            if (refs == 0) {
+                continue;
+            }
+            final long start = Metrics.start();
+            final int wordPosBase = wordsOffset + offsetTable.getWordOffset(i);
+            long refBytes = 0;
+            for (int j = 0; j < refs; j++) {
+                int target = buffer.getInt(wordPosBase + 4*j);
+                refTargets[refStarts[i] + j] = target;
+                refBytes += xmlLength(target);
+            }
+            Metrics.stop(Phase.REF_RESOLVE, start, refBytes);
+        }
+
+        logger.debug("Stored {} definitions ({} unique, {} bytes)", size, store.size(), store.getBytes());
+        dict = new LingoesResolvedDict(wordIndex, store, definitions, refStarts, refTargets);
     }
 }
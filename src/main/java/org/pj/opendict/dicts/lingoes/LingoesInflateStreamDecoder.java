@@ -0,0 +1,396 @@
+package org.pj.opendict.dicts.lingoes;
+
+import org.pj.opendict.dicts.DictEntryHandler;
+import org.pj.opendict.dicts.DictOffsetTable;
+import org.pj.opendict.dicts.SensitiveStringDecoder;
+import org.pj.opendict.metrics.Metrics;
+import org.pj.opendict.metrics.Phase;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Created by pingjiang on 14-6-24.</br>
+ *
+ * 边解压边解析的词典解码器，解压后的数据直接写入这个输出流，不需要临时文件。</br>
+ *
+ * 解压后的数据顺序是：索引表|单词|XML翻译。索引表和单词部分比较小，会完整的保存在内存中；
+ * XML翻译部分只保留一个滑动窗口，一个词条的XML（以及它引用的XML）全部到达以后就按照索引顺序回调
+ * {@link DictEntryHandler}，然后丢弃不再需要的数据。被其他词条引用的XML会单独保留下来，
+ * 第一次使用的时候解码一次，最后一个引用它的词条回调以后释放。</br>
+ *
+ * 引用后面词条的词条自己的XML到达以后，只把它自己的XML复制出来等待引用的XML，窗口继续向后移动，
+ * 后面的词条照常回调。所以这样的词条会晚一些回调（不按照索引顺序），但是窗口的大小不受引用距离的影响，
+ * 等待的只有这些词条自己的XML。
+ *
+ * @see LingoesInflateDictReader 一次性加载的版本
+ */
+public class LingoesInflateStreamDecoder extends OutputStream {
+
+    // 编码为utf-8或者UTF-16LE。单词部分收到以后抽样判断单词的编码，第一次回调之前用已经到达的XML判断XML的编码
+    private SensitiveStringDecoder wordStringDecoder;
+    private SensitiveStringDecoder xmlStringDecoder;
+
+    private final DictEntryHandler handler;
+    private final int tableLength;
+    private final int wordsLength;
+    private final int xmlsLength;
+
+    /**
+     * 索引表和单词部分
+     */
+    private final byte[] head;
+    private int headReceived = 0;
+
+    /**
+     * 索引表，最后一项只作为前一项的结束位置
+     */
+    private DictOffsetTable offsetTable;
+    private int entries;
+
+    /**
+     * 第i个及以后的词条中最小的XML开始位置，窗口不能丢弃这个位置之后的数据
+     */
+    private int[] minXmlStarts;
+
+    /**
+     * 每个词条（包括它引用的XML）需要的XML结束位置
+     */
+    private int[] readyAt;
+
+    /**
+     * 被引用的词条按照XML结束位置排序，到达以后保存到retained里面
+     */
+    private int[] targets;
+    private int nextTarget = 0;
+    private final Map<Integer, Retained> retained = new HashMap<Integer, Retained>();
+
+    /**
+     * 每个词条被引用的次数
+     */
+    private int[] refCounts;
+
+    /**
+     * 保留下来的被引用XML
+     */
+    private static final class Retained {
+        byte[] bytes;
+        final int length;
+        String xml;
+        int uses;
+
+        Retained(byte[] bytes, int uses) {
+            this.bytes = bytes;
+            this.length = bytes.length;
+            this.uses = uses;
+        }
+    }
+
+    /**
+     * 等待引用的XML到达的词条
+     */
+    private static final class Pending {
+        final int index;
+        final byte[] xml;
+
+        Pending(int index, byte[] xml) {
+            this.index = index;
+            this.xml = xml;
+        }
+    }
+
+    /**
+     * 按照需要的XML结束位置排序的等待词条
+     */
+    private final PriorityQueue<Pending> pending = new PriorityQueue<Pending>(16, new Comparator<Pending>() {
+        @Override
+        public int compare(Pending a, Pending b) {
+            return Integer.compare(readyAt[a.index], readyAt[b.index]);
+        }
+    });
+
+    /**
+     * XML滑动窗口，window[0]对应XML部分的windowStart位置
+     */
+    private byte[] window = new byte[1024 * 64];
+    private int windowStart = 0;
+    private int windowLength = 0;
+
+    /**
+     * 下一个自己的XML还没有到达的词条，前面的词条已经回调或者在等待
+     */
+    private int next = 0;
+    private int emitted = 0;
+
+    public LingoesInflateStreamDecoder(DictEntryHandler handler, int tableLength, int wordsLength, int xmlsLength) {
+        this.handler = handler;
+        this.tableLength = tableLength;
+        this.wordsLength = wordsLength;
+        this.xmlsLength = xmlsLength;
+        this.head = new byte[tableLength + wordsLength];
+    }
+
+    /**
+     * @return 已经回调的词条数
+     */
+    public int getEntries() {
+        return emitted;
+    }
+
+    /**
+     * @return 等待引用的XML到达的词条数
+     */
+    public int getPending() {
+        return pending.size();
+    }
+
+    /**
+     * @return XML滑动窗口的容量（字节）
+     */
+    public int getWindowCapacity() {
+        return window.length;
+    }
+
+    /**
+     * @return 还保留着的被引用XML个数
+     */
+    public int getRetained() {
+        return retained.size();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (offsetTable == null) {
+            int n = Math.min(len, head.length - headReceived);
+            System.arraycopy(b, off, head, headReceived, n);
+            headReceived += n;
+            off += n;
+            len -= n;
+            if (headReceived == head.length) {
+                parseHead();
+                detectWordEncoding();
+                process();
+            }
+        }
+
+        if (len > 0) {
+            appendXml(b, off, len);
+            process();
+        }
+    }
+
+    /**
+     * 检查所有数据都已经收到并且所有词条都已经回调
+     */
+    @Override
+    public void close() throws IOException {
+        int received = windowStart + windowLength;
+        if (headReceived < head.length || received < xmlsLength || emitted < entries) {
+            throw new IOException(String.format("Inflated data is truncated: received %d/%d bytes, %d/%d entries",
+                    headReceived + received, head.length + xmlsLength, emitted, entries));
+        }
+    }
+
+    private void parseHead() {
+        offsetTable = DictOffsetTable.wrap(ByteBuffer.wrap(head), 0, tableLength);
+        final int tableSize = offsetTable.size();
+        entries = Math.max(tableSize - 1, 0);
+
+        minXmlStarts = new int[entries + 1];
+        minXmlStarts[entries] = xmlsLength;
+        for (int i = entries - 1; i >= 0; i--) {
+            minXmlStarts[i] = Math.min(offsetTable.getXmlOffset(i), minXmlStarts[i + 1]);
+        }
+
+        readyAt = new int[entries];
+        refCounts = new int[tableSize];
+        int referencedCount = 0;
+        for (int i = 0; i < entries; i++) {
+            int end = offsetTable.getXmlOffset(i + 1);
+            for (int j = 0; j < offsetTable.getRefInt(i); j++) {
+                int target = refIndex(i, j);
+                end = Math.max(end, offsetTable.getXmlOffset(target + 1));
+                if (refCounts[target]++ == 0) {
+                    referencedCount++;
+                }
+            }
+            readyAt[i] = end;
+        }
+
+        // 按照结束位置排序，数据到达的时候依次保存
+        long[] sorted = new long[referencedCount];
+        int k = 0;
+        for (int i = 0; i < tableSize; i++) {
+            if (refCounts[i] > 0) {
+                sorted[k++] = ((long) offsetTable.getXmlOffset(i + 1) << 32) | i;
+            }
+        }
+        Arrays.sort(sorted);
+        targets = new int[referencedCount];
+        for (int i = 0; i < referencedCount; i++) {
+            targets[i] = (int) sorted[i];
+        }
+    }
+
+    private void detectWordEncoding() throws IOException {
+        wordStringDecoder = LingoesEncoding.detect(new LingoesEncoding.Records() {
+            @Override
+            public int size() {
+                return entries;
+            }
+
+            @Override
+            public byte[] get(int index) {
+                int refs = offsetTable.getRefInt(index);
+                int wordPos = tableLength + offsetTable.getWordOffset(index) + refs * 4;
+                return Arrays.copyOfRange(head, wordPos, wordPos + offsetTable.getWordLength(index) - refs * 4);
+            }
+        }).newDecoder();
+    }
+
+    /**
+     * 只抽样XML已经完整到达、还在窗口里面的词条
+     */
+    private void detectXmlEncoding(int received) throws IOException {
+        int available = next;
+        while (available < entries && available - next < LingoesEncoding.SAMPLES
+                && offsetTable.getXmlOffset(available + 1) <= received) {
+            available++;
+        }
+        final int count = available - next;
+        xmlStringDecoder = LingoesEncoding.detect(new LingoesEncoding.Records() {
+            @Override
+            public int size() {
+                return count;
+            }
+
+            @Override
+            public byte[] get(int index) {
+                int start = offsetTable.getXmlOffset(next + index) - windowStart;
+                return Arrays.copyOfRange(window, start, start + offsetTable.getXmlLength(next + index));
+            }
+        }).newDecoder();
+    }
+
+    private int refIndex(int entry, int j) {
+        int pos = tableLength + offsetTable.getWordOffset(entry) + j * 4;
+        return ByteBuffer.wrap(head, pos, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+    }
+
+    private void appendXml(byte[] b, int off, int len) {
+        if (windowLength + len > window.length) {
+            window = Arrays.copyOf(window, Math.max(window.length * 2, windowLength + len));
+        }
+        System.arraycopy(b, off, window, windowLength, len);
+        windowLength += len;
+    }
+
+    private void process() throws IOException {
+        final int received = windowStart + windowLength;
+
+        // 先保存已经完整到达的被引用XML
+        while (nextTarget < targets.length && offsetTable.getXmlOffset(targets[nextTarget] + 1) <= received) {
+            int target = targets[nextTarget++];
+            int start = offsetTable.getXmlOffset(target) - windowStart;
+            retained.put(target, new Retained(Arrays.copyOfRange(window, start, start + offsetTable.getXmlLength(target)),
+                    refCounts[target]));
+        }
+
+        // 按照索引顺序回调已经完整的词条，自己的XML到达但是引用的XML还没有到达的词条复制出来等待
+        if (xmlStringDecoder == null && next < entries && offsetTable.getXmlOffset(next + 1) <= received) {
+            detectXmlEncoding(received);
+        }
+        while (next < entries && offsetTable.getXmlOffset(next + 1) <= received) {
+            final int xmlStart = offsetTable.getXmlOffset(next) - windowStart;
+            final int xmlLength = offsetTable.getXmlLength(next);
+            if (readyAt[next] <= received) {
+                emit(next, window, xmlStart, xmlLength);
+            } else {
+                pending.add(new Pending(next, Arrays.copyOfRange(window, xmlStart, xmlStart + xmlLength)));
+            }
+            next++;
+        }
+        while (!pending.isEmpty() && readyAt[pending.peek().index] <= received) {
+            Pending entry = pending.poll();
+            emit(entry.index, entry.xml, 0, entry.xml.length);
+        }
+
+        // 丢弃不再需要的数据
+        int discard = Math.min(minXmlStarts[next] - windowStart, windowLength);
+        if (discard > 0) {
+            System.arraycopy(window, discard, window, 0, windowLength - discard);
+            windowStart += discard;
+            windowLength -= discard;
+        }
+    }
+
+    /**
+     * 回调一个词条
+     *
+     * @param xmlBytes 词条自己的XML所在的数组，窗口或者等待时复制出来的数组
+     */
+    private void emit(int i, byte[] xmlBytes, int xmlStart, int xmlLength) throws IOException {
+        emitted++;
+        long start = Metrics.start();
+        final int refs = offsetTable.getRefInt(i);
+        final int wordPos = tableLength + offsetTable.getWordOffset(i) + refs * 4;
+        final int wordLength = offsetTable.getWordLength(i) - refs * 4;
+        final String dictWord = wordStringDecoder.decodeString(head, wordPos, wordLength);
+
+        if (refs == 0) {
+            String xml = xmlStringDecoder.decodeString(xmlBytes, xmlStart, xmlLength);
+            Metrics.stop(Phase.ENTRY_DECODE, start, wordLength + xmlLength);
+            handler.onEntry(dictWord, xml);
+            return;
+        }
+
+        int capacity = xmlLength;
+        for (int j = 0; j < refs; j++) {
+            capacity += retained.get(refIndex(i, j)).length + 2;
+        }
+        final StringBuilder sb = new StringBuilder(capacity);
+        xmlStringDecoder.decode(xmlBytes, xmlStart, xmlLength, sb);
+        Metrics.stop(Phase.ENTRY_DECODE, start, wordLength + xmlLength);
+
+        start = Metrics.start();
+        long refBytes = 0;
+        for (int j = 0; j < refs; j++) {
+            Retained ref = use(refIndex(i, j));
+            refBytes += ref.length;
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(ref.xml);
+        }
+        Metrics.stop(Phase.REF_RESOLVE, start, refBytes);
+
+        handler.onEntry(dictWord, sb.toString());
+    }
+
+    /**
+     * 使用一次被引用的XML，第一次使用的时候解码，最后一次使用以后释放
+     */
+    private Retained use(int target) {
+        Retained ref = retained.get(target);
+        if (ref.xml == null) {
+            ref.xml = xmlStringDecoder.decodeString(ref.bytes, 0, ref.length);
+            ref.bytes = null;
+        }
+        if (--ref.uses == 0) {
+            retained.remove(target);
+        }
+        return ref;
+    }
+}
@@ -0,0 +1,280 @@
+package org.pj.opendict.dicts.lingoes;
+
+import org.pj.opendict.dicts.InflaterPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Inflater;
+
+/**
+ * Created by pingjiang on 14-6-25.</br>
+ *
+ * 按需解压的数据块。记录每个压缩数据块解压后对应的字节范围，读取解压后数据的时候只解压覆盖这个范围的数据块，
+ * 最近解压的数据块保存在按字节数限制大小的LRU缓存中。</br>
+ *
+ * LD2文件里面没有保存每个数据块解压后的长度，中间数据块的位置不能从长度猜出来。
+ * 打开的时候只解压第一个和最后一个数据块，它们的位置是确定的（从0开始和到总长度结束），
+ * 只读取这两个数据块的时候不需要块映射；第一次读取其他位置的时候扫描解压所有数据块来建立块映射。
+ * 需要反复打开的词典可以用{@link LingoesCompiledIndex}把扫描得到的块映射保存到索引文件中。
+ */
+public class LingoesInflatedBlocks {
+    private static Logger logger = LoggerFactory.getLogger(LingoesInflatedBlocks.class);
+
+    private final LingoesDictReader dictReader;
+    private final long length;
+    private final long cacheBytes;
+
+    /**
+     * starts[i]是第i个数据块解压后的开始位置，starts[blocks]是解压后的总长度
+     */
+    private long[] starts;
+    private boolean scanned = false;
+
+    /**
+     * 没有扫描的时候只知道第一个数据块的结束位置和最后一个数据块的开始位置
+     */
+    private long firstEnd = 0;
+    private long lastStart = 0;
+
+    private long cachedBytes = 0;
+    private long inflatedBlocks = 0;
+    private final LinkedHashMap<Integer, byte[]> cache = new LinkedHashMap<Integer, byte[]>(16, 0.75f, true);
+
+    public LingoesInflatedBlocks(LingoesDictReader dictReader, long cacheBytes) throws IOException {
+        this(dictReader, cacheBytes, false);
+    }
+
+    /**
+     * @param dictReader LD2文件
+     * @param cacheBytes 缓存的解压数据块的最大字节数
+     * @param fullScan 是否马上扫描所有数据块来建立块映射，为false的时候第一次读取中间的数据块时才扫描
+     * @throws IOException
+     */
+    public LingoesInflatedBlocks(LingoesDictReader dictReader, long cacheBytes, boolean fullScan) throws IOException {
+        this.dictReader = dictReader;
+        this.length = dictReader.getInflatedLength();
+        this.cacheBytes = cacheBytes;
+
+        if (fullScan) {
+            starts = new long[dictReader.getBlocks() + 1];
+            scan();
+        } else {
+            probe();
+        }
+    }
+
+    /**
+     * 使用已知的块映射，例如从编译后的索引文件中读取的
+     *
+     * @param dictReader LD2文件
+     * @param cacheBytes 缓存的解压数据块的最大字节数
+     * @param blockStarts 每个数据块解压后的开始位置，长度为数据块个数+1
+     */
+    public LingoesInflatedBlocks(LingoesDictReader dictReader, long cacheBytes, long[] blockStarts) {
+        this.dictReader = dictReader;
+        this.length = dictReader.getInflatedLength();
+        this.cacheBytes = cacheBytes;
+
+        if (blockStarts.length != dictReader.getBlocks() + 1 || blockStarts[blockStarts.length - 1] != length) {
+            throw new IllegalArgumentException("Block map does not match the dictionary");
+        }
+        this.starts = blockStarts.clone();
+        this.scanned = true;
+    }
+
+    /**
+     * @return 解压后的总长度
+     */
+    public long getLength() {
+        return length;
+    }
+
+    public int getBlocks() {
+        return dictReader.getBlocks();
+    }
+
+    /**
+     * @return 第index个数据块解压后的开始位置，还没有扫描的时候先扫描所有数据块
+     * @throws IOException
+     */
+    public synchronized long getBlockStart(int index) throws IOException {
+        if (!scanned && index != 0 && index < starts.length - 2) {
+            scan();
+        }
+        return starts[index];
+    }
+
+    /**
+     * @return 是否已经有完整的块映射
+     */
+    public synchronized boolean isScanned() {
+        return scanned;
+    }
+
+    /**
+     * @return 当前缓存的数据块字节数
+     */
+    public synchronized long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    /**
+     * @return 一共解压过多少次数据块（包括重复解压的）
+     */
+    public synchronized long getInflatedBlocks() {
+        return inflatedBlocks;
+    }
+
+    /**
+     * 读取解压后的数据
+     *
+     * @param position 解压后的位置
+     * @param dst 目标数组
+     * @param off 目标数组的开始位置
+     * @param len 长度
+     * @throws IOException
+     */
+    public synchronized void read(long position, byte[] dst, int off, int len) throws IOException {
+        if (position < 0 || len < 0 || position + len > length) {
+            throw new IndexOutOfBoundsException("position=" + position + ", length=" + len + ", size=" + length);
+        }
+
+        while (len > 0) {
+            if (!scanned && position >= firstEnd && position < lastStart) {
+                // 中间数据块的位置只能通过扫描得到
+                scan();
+            }
+            int index = scanned ? blockIndex(position) : (position < firstEnd ? 0 : starts.length - 2);
+            byte[] block = block(index);
+            int offset = (int) (position - starts[index]);
+            int n = Math.min(len, block.length - offset);
+            System.arraycopy(block, offset, dst, off, n);
+            position += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    public byte[] read(long position, int len) throws IOException {
+        byte[] bytes = new byte[len];
+        read(position, bytes, 0, len);
+        return bytes;
+    }
+
+    public int getInt(long position) throws IOException {
+        byte[] bytes = read(position, 4);
+        return (bytes[0] & 0xFF) | (bytes[1] & 0xFF) << 8 | (bytes[2] & 0xFF) << 16 | (bytes[3] & 0xFF) << 24;
+    }
+
+    private int blockIndex(long position) {
+        int index = Arrays.binarySearch(starts, position);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        // 跳过解压后为空的数据块
+        while (index < starts.length - 2 && starts[index + 1] == position) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * 解压第一个和最后一个数据块，它们的位置不需要扫描就能确定
+     */
+    private void probe() throws IOException {
+        final int blocks = dictReader.getBlocks();
+        starts = new long[blocks + 1];
+        if (blocks < 3) {
+            scan();
+            return;
+        }
+
+        final byte[] first = inflate(0);
+        final byte[] last = inflate(blocks - 1);
+        if (first.length + last.length > length) {
+            throw new IOException(String.format("Inflated length %d does not match the header %d", first.length + last.length, length));
+        }
+        firstEnd = first.length;
+        lastStart = length - last.length;
+        starts[1] = firstEnd;
+        starts[blocks - 1] = lastStart;
+        starts[blocks] = length;
+        put(0, first);
+        put(blocks - 1, last);
+    }
+
+    /**
+     * 解压所有数据块，记录解压后的长度
+     */
+    private void scan() throws IOException {
+        logger.debug("Scan {} blocks to build the block map", dictReader.getBlocks());
+        final int blocks = dictReader.getBlocks();
+        long start = 0;
+        for (int i = 0; i < blocks; i++) {
+            starts[i] = start;
+            start += inflate(i).length;
+        }
+        starts[blocks] = start;
+        scanned = true;
+        cache.clear();
+        cachedBytes = 0;
+
+        if (start != length) {
+            throw new IOException(String.format("Inflated length %d does not match the header %d", start, length));
+        }
+    }
+
+    private byte[] block(int index) throws IOException {
+        byte[] block = cache.get(index);
+        if (block != null) {
+            return block;
+        }
+
+        block = inflate(index);
+        if (block.length != starts[index + 1] - starts[index]) {
+            throw new IOException(String.format("Block %d is inflated to %d bytes, expected %d", index, block.length, starts[index + 1] - starts[index]));
+        }
+        put(index, block);
+        return block;
+    }
+
+    private void put(int index, byte[] block) {
+        if (cache.put(index, block) == null) {
+            cachedBytes += block.length;
+        }
+
+        Iterator<Map.Entry<Integer, byte[]>> it = cache.entrySet().iterator();
+        while (cachedBytes > cacheBytes && cache.size() > 1 && it.hasNext()) {
+            Map.Entry<Integer, byte[]> eldest = it.next();
+            if (eldest.getKey() == index) {
+                continue;
+            }
+            cachedBytes -= eldest.getValue().length;
+            it.remove();
+        }
+    }
+
+    /**
+     * 解压一个数据块。块映射已知的时候按照映射中的长度分配数组，长度正确的时候不需要再复制
+     */
+    private byte[] inflate(int index) throws IOException {
+        inflatedBlocks++;
+        final long expected = starts[index + 1] - starts[index];
+        final int capacity = expected > 0 ? (int) expected : dictReader.estimateBlockLength();
+
+        final InflaterPool pool = dictReader.getInflaterPool();
+        final Inflater inflater = pool.acquire();
+        try {
+            byte[] block = dictReader.inflateBlock(index, inflater, new byte[capacity], 0, true);
+            int length = (int) inflater.getBytesWritten();
+            return length == block.length ? block : Arrays.copyOf(block, length);
+        } finally {
+            pool.release(inflater);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package org.pj.opendict.dicts.lingoes;
+
+import org.pj.opendict.dicts.DefinitionStore;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Created by pingjiang on 14-7-1.</br>
+ *
+ * 单词到XML翻译的只读Map。每个词条自己的释义以原始编码保存在{@link DefinitionStore}中（完全一样的释义只保存一份），
+ * 引用只保存目标词条的序号（和索引表一样按照CSR格式排列），读取的时候才解码并把自己的释义和引用的释义用", "连接起来。</br>
+ *
+ * 连接使用一个预先计算好长度的StringBuilder，和引用的个数成线性关系。Map不引用解压后的数据，只保留Map的时候解压数据可以被回收。
+ */
+final class LingoesResolvedDict extends AbstractMap<String, String> {
+    private final Map<String, Integer> wordIndex;
+    private final DefinitionStore store;
+    private final int[] definitions;
+    private final int[] refStarts;
+    private final int[] refTargets;
+
+    private Set<Map.Entry<String, String>> entrySet;
+
+    /**
+     * @param wordIndex 单词到词条序号
+     * @param store 释义存储
+     * @param definitions 每个词条自己的释义在store中的序号，不包括引用
+     * @param refStarts 第i个词条的引用是refTargets[refStarts[i], refStarts[i+1])，长度为词条数+1
+     * @param refTargets 所有词条引用的词条序号
+     */
+    LingoesResolvedDict(Map<String, Integer> wordIndex, DefinitionStore store, int[] definitions,
+                        int[] refStarts, int[] refTargets) {
+        this.wordIndex = wordIndex;
+        this.store = store;
+        this.definitions = definitions;
+        this.refStarts = refStarts;
+        this.refTargets = refTargets;
+    }
+
+    /**
+     * @return 第index个词条合并了引用以后的释义
+     */
+    String resolve(int index) {
+        final int start = refStarts[index];
+        final int end = refStarts[index + 1];
+        final int own = definitions[index];
+        if (start == end) {
+            return store.get(own);
+        }
+
+        // 按照字节数估计长度，UTF-16LE会多分配一些
+        int length = store.length(own);
+        for (int k = start; k < end; k++) {
+            length += store.length(definitions[refTargets[k]]) + 2;
+        }
+        final StringBuilder sb = new StringBuilder(length);
+        store.appendTo(own, sb);
+        for (int k = start; k < end; k++) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            store.appendTo(definitions[refTargets[k]], sb);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return 释义存储
+     */
+    DefinitionStore getStore() {
+        return store;
+    }
+
+    @Override
+    public int size() {
+        return wordIndex.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return wordIndex.containsKey(key);
+    }
+
+    @Override
+    public String get(Object key) {
+        Integer index = wordIndex.get(key);
+        return index == null ? null : resolve(index);
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<String, String>>() {
+                @Override
+                public Iterator<Map.Entry<String, String>> iterator() {
+                    final Iterator<Map.Entry<String, Integer>> it = wordIndex.entrySet().iterator();
+                    return new Iterator<Map.Entry<String, String>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return it.hasNext();
+                        }
+
+                        @Override
+                        public Map.Entry<String, String> next() {
+                            Map.Entry<String, Integer> entry = it.next();
+                            return new SimpleImmutableEntry<String, String>(entry.getKey(), resolve(entry.getValue()));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return wordIndex.size();
+                }
+            };
+        }
+        return entrySet;
+    }
+}
@@ -0,0 +1,123 @@
+package org.pj.opendict.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Created by pingjiang on 14-6-29.</br>
+ *
+ * 各个加载阶段的统计数据。默认关闭，使用-Dopendict.metrics=true或者{@link #setEnabled(boolean)}打开。</br>
+ *
+ * 使用方式：
+ * <pre>
+ * long start = Metrics.start();
+ * ...
+ * Metrics.stop(Phase.BLOCK_INFLATE, start, bytes);
+ * </pre>
+ * 关闭的时候{@link #start()}只读取一个volatile变量，{@link #stop(Phase, long, long)}直接返回，
+ * 不会调用System.nanoTime()。
+ */
+public final class Metrics {
+    private static Logger logger = LoggerFactory.getLogger(Metrics.class);
+
+    public static final String JMX_DOMAIN = "org.pj.opendict";
+
+    /**
+     * 关闭的时候{@link #start()}的返回值
+     */
+    private static final long DISABLED = 0L;
+
+    private static volatile boolean enabled = Boolean.getBoolean("opendict.metrics");
+
+    private static final PhaseMetrics[] phases = new PhaseMetrics[Phase.values().length];
+    static {
+        for (Phase phase : Phase.values()) {
+            phases[phase.ordinal()] = new PhaseMetrics(phase);
+        }
+    }
+
+    private Metrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    /**
+     * @return 开始时间，关闭的时候返回{@link #DISABLED}
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : DISABLED;
+    }
+
+    /**
+     * 记录从start开始的一次耗时
+     *
+     * @param phase 阶段
+     * @param start {@link #start()}的返回值
+     * @param bytes 处理的字节数
+     */
+    public static void stop(Phase phase, long start, long bytes) {
+        if (start != DISABLED) {
+            phases[phase.ordinal()].record(bytes, System.nanoTime() - start);
+        }
+    }
+
+    public static PhaseMetrics get(Phase phase) {
+        return phases[phase.ordinal()];
+    }
+
+    public static void reset() {
+        for (PhaseMetrics metrics : phases) {
+            metrics.reset();
+        }
+    }
+
+    /**
+     * @return 所有阶段的统计数据，每个阶段一行
+     */
+    public static String report() {
+        StringBuilder sb = new StringBuilder();
+        for (PhaseMetrics metrics : phases) {
+            sb.append(metrics).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static ObjectName objectName(Phase phase) throws JMException {
+        return new ObjectName(JMX_DOMAIN + ":type=Metrics,phase=" + phase.name());
+    }
+
+    /**
+     * 把每个阶段注册为一个MBean，重复注册会被忽略
+     */
+    public static synchronized void registerMBeans() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (PhaseMetrics metrics : phases) {
+            ObjectName name = objectName(metrics.getPhase());
+            if (!server.isRegistered(name)) {
+                server.registerMBean(metrics, name);
+                logger.debug("Registered MBean {}", name);
+            }
+        }
+    }
+
+    public static synchronized void unregisterMBeans() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (Phase phase : Phase.values()) {
+            ObjectName name = objectName(phase);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package org.pj.opendict.metrics;
+
+/**
+ * Created by pingjiang on 14-6-29.</br>
+ *
+ * 加载词典的各个阶段
+ */
+public enum Phase {
+    /**
+     * 解析LD2文件头、词典信息和数据块索引
+     */
+    HEADER_PARSE,
+    /**
+     * 建立单词索引（检查单词顺序、排序）
+     */
+    INDEX_BUILD,
+    /**
+     * 解压一个数据块
+     */
+    BLOCK_INFLATE,
+    /**
+     * 解码一个单词或者一个词条自己的XML翻译
+     */
+    ENTRY_DECODE,
+    /**
+     * 合并一个词条引用的其他词条的XML翻译
+     */
+    REF_RESOLVE,
+    /**
+     * 读取并解析一个LDF文件
+     */
+    LDF_PARSE
+}
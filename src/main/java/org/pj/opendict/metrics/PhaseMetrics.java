@@ -0,0 +1,135 @@
+package org.pj.opendict.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Created by pingjiang on 14-6-29.</br>
+ *
+ * 一个阶段的统计数据：次数、字节数、总耗时和耗时分布。</br>
+ *
+ * 耗时分布是按照2的幂划分的直方图，第i个桶记录耗时在[2^(i-1), 2^i)纳秒之间的次数，
+ * 百分位数返回所在桶的上界，误差不超过2倍。多个线程同时记录的时候只有LongAdder的竞争。
+ */
+public class PhaseMetrics implements PhaseMetricsMBean {
+    private static final int BUCKETS = 64;
+
+    private final Phase phase;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+    private final LongAdder[] histogram = new LongAdder[BUCKETS];
+
+    PhaseMetrics(Phase phase) {
+        this.phase = phase;
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram[i] = new LongAdder();
+        }
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    /**
+     * 记录一次
+     *
+     * @param bytes 处理的字节数
+     * @param elapsedNanos 耗时
+     */
+    public void record(long bytes, long elapsedNanos) {
+        if (elapsedNanos < 0) {
+            elapsedNanos = 0;
+        }
+        count.increment();
+        this.bytes.add(bytes);
+        nanos.add(elapsedNanos);
+        histogram[Math.min(64 - Long.numberOfLeadingZeros(elapsedNanos), BUCKETS - 1)].increment();
+
+        long current = max.get();
+        while (elapsedNanos > current && !max.compareAndSet(current, elapsedNanos)) {
+            current = max.get();
+        }
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getTotalNanos() {
+        return nanos.sum();
+    }
+
+    @Override
+    public long getMeanNanos() {
+        long n = getCount();
+        return n == 0 ? 0 : getTotalNanos() / n;
+    }
+
+    /**
+     * @param percentile 0到100之间
+     * @return 耗时的百分位数（所在桶的上界，不超过最大值）
+     */
+    public long getPercentileNanos(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = histogram[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0) {
+                long upper = i == 0 ? 0 : (i >= 63 ? Long.MAX_VALUE : (1L << i) - 1);
+                return Math.min(upper, getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    @Override
+    public long getP50Nanos() {
+        return getPercentileNanos(50);
+    }
+
+    @Override
+    public long getP99Nanos() {
+        return getPercentileNanos(99);
+    }
+
+    @Override
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    @Override
+    public void reset() {
+        count.reset();
+        bytes.reset();
+        nanos.reset();
+        max.set(0);
+        for (LongAdder bucket : histogram) {
+            bucket.reset();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: count=%d, bytes=%d, total=%.3fms, mean=%dns, p50=%dns, p99=%dns, max=%dns",
+                phase, getCount(), getBytes(), getTotalNanos() / 1e6, getMeanNanos(), getP50Nanos(), getP99Nanos(), getMaxNanos());
+    }
+}
@@ -0,0 +1,24 @@
+package org.pj.opendict.metrics;
+
+/**
+ * Created by pingjiang on 14-6-29.</br>
+ *
+ * 一个阶段的统计数据的JMX接口，时间单位都是纳秒
+ */
+public interface PhaseMetricsMBean {
+    long getCount();
+
+    long getBytes();
+
+    long getTotalNanos();
+
+    long getMeanNanos();
+
+    long getP50Nanos();
+
+    long getP99Nanos();
+
+    long getMaxNanos();
+
+    void reset();
+}
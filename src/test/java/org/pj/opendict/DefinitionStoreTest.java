@@ -0,0 +1,89 @@
+package org.pj.opendict;
+
+import junit.framework.TestCase;
+import org.pj.opendict.dicts.DefinitionStore;
+import org.pj.opendict.dicts.SensitiveStringDecoder;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+public class DefinitionStoreTest extends TestCase {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public void testDeduplicate() throws Exception {
+        DefinitionStore store = new DefinitionStore(new SensitiveStringDecoder(UTF_8));
+        byte[] data = "xx<b>释义</b>yy<b>释义</b>".getBytes(UTF_8);
+        int length = "<b>释义</b>".getBytes(UTF_8).length;
+
+        int first = store.add(data, 2, length);
+        int second = store.add(data, 2 + length + 2, length);
+        int other = store.add(data, 0, 4);
+        int empty = store.add(data, 0, 0);
+        assertEquals(first, second);
+        assertTrue(first != other);
+        assertEquals(3, store.size());
+        assertEquals(length + 4, store.getBytes());
+
+        assertEquals("<b>释义</b>", store.get(first));
+        assertEquals("xx<b", store.get(other));
+        assertEquals("", store.get(empty));
+        assertEquals(0, store.length(empty));
+
+        StringBuilder sb = new StringBuilder("a");
+        assertEquals(9, store.appendTo(first, sb));
+        assertEquals("a<b>释义</b>", sb.toString());
+    }
+
+    public void testEmptyFirst() throws Exception {
+        DefinitionStore store = new DefinitionStore(new SensitiveStringDecoder(UTF_8));
+        byte[] data = "<b>go</b>".getBytes(UTF_8);
+
+        int empty = store.add(data, 0, 0);
+        int other = store.add(data, 0, data.length);
+        assertEquals(0, store.getBytes() - data.length);
+        assertEquals("", store.get(empty));
+        assertEquals("<b>go</b>", store.get(other));
+        assertEquals(empty, store.add(data, 3, 0));
+
+        StringBuilder sb = new StringBuilder("a");
+        assertEquals(0, store.appendTo(empty, sb));
+        assertEquals("a", sb.toString());
+    }
+
+    public void testManyDefinitions() throws Exception {
+        DefinitionStore store = new DefinitionStore(new SensitiveStringDecoder(UTF_8));
+        int[] ids = new int[20000];
+        for (int i = 0; i < ids.length; i++) {
+            byte[] bytes = ("<def>" + (i % 5000) + "</def>").getBytes(UTF_8);
+            ids[i] = store.add(bytes, 0, bytes.length);
+        }
+        assertEquals(5000, store.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i % 5000], ids[i]);
+            assertEquals("<def>" + (i % 5000) + "</def>", store.get(ids[i]));
+        }
+    }
+
+    public void testLargerThanPage() throws Exception {
+        DefinitionStore store = new DefinitionStore(new SensitiveStringDecoder(UTF_8));
+        byte[] small = "small".getBytes(UTF_8);
+        byte[] large = new byte[1024 * 1024 * 3 + 7];
+        Arrays.fill(large, (byte) 'x');
+
+        int a = store.add(small, 0, small.length);
+        int b = store.add(large, 0, large.length);
+        int c = store.add(small, 1, 3);
+        assertEquals("small", store.get(a));
+        assertEquals(large.length, store.get(b).length());
+        assertEquals("mal", store.get(c));
+        assertEquals(b, store.add(large, 0, large.length));
+
+        try {
+            store.get(3);
+            fail();
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package org.pj.opendict;
+
+import junit.framework.TestCase;
+import org.pj.opendict.dicts.DictEntryExporter;
+import org.pj.opendict.dicts.ExportFormat;
+import org.pj.opendict.dicts.Term;
+import org.pj.opendict.dicts.lingoes.LDSourceReader;
+import org.pj.opendict.dicts.lingoes.LingoesDictReader;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class DictEntryExporterTest extends TestCase {
+
+    private SyntheticLD2 ld2;
+    private File dictFile;
+    private File outFile;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        ld2 = SyntheticLD2.sample(3000).blockSize(500);
+        dictFile = File.createTempFile("synthetic", ".ld2");
+        ld2.write(dictFile.toPath());
+        outFile = File.createTempFile("exported", ".out");
+    }
+
+    public void tearDown() throws Exception {
+        dictFile.delete();
+        outFile.delete();
+    }
+
+    public void testLdf() throws Exception {
+        LingoesDictReader dictReader = new LingoesDictReader(dictFile.getPath());
+        assertEquals(ld2.size(), dictReader.export(outFile.getPath(), ExportFormat.LDF, 2));
+
+        Map<String, String> dict = new LinkedHashMap<String, String>();
+        try (LDSourceReader reader = new LDSourceReader(outFile.getPath())) {
+            for (Term term : reader) {
+                dict.put(term.getWords().get(0), term.getExplain());
+            }
+        }
+        assertEquals(ld2.expectedDict(), dict);
+    }
+
+    public void testTsv() throws Exception {
+        LingoesDictReader dictReader = new LingoesDictReader(dictFile.getPath());
+        dictReader.export(outFile.getPath(), ExportFormat.TSV, 2);
+
+        List<String> lines = Files.readAllLines(outFile.toPath(), Charset.forName("UTF-8"));
+        assertEquals(ld2.size(), lines.size());
+        Map<String, String> dict = new LinkedHashMap<String, String>();
+        for (String line : lines) {
+            String[] fields = line.split("\t", -1);
+            assertEquals(2, fields.length);
+            dict.put(fields[0], fields[1]);
+        }
+        assertEquals(ld2.expectedDict(), dict);
+    }
+
+    public void testEscaping() throws Exception {
+        try (DictEntryExporter exporter = new DictEntryExporter(outFile.getPath(), ExportFormat.JSONL, "t")) {
+            exporter.onEntry("a\"b", "x\ny\t\\z");
+        }
+        assertEquals("{\"word\":\"a\\\"b\",\"xml\":\"x\\ny\\t\\\\z\"}\n",
+                new String(Files.readAllBytes(outFile.toPath()), "UTF-8"));
+
+        try (DictEntryExporter exporter = new DictEntryExporter(outFile.getPath(), ExportFormat.TSV, "t")) {
+            exporter.onEntry("a\tb", "x\r\ny");
+        }
+        assertEquals("a\\tb\tx\\r\\ny\n", new String(Files.readAllBytes(outFile.toPath()), "UTF-8"));
+
+        try (DictEntryExporter exporter = new DictEntryExporter(outFile.getPath(), ExportFormat.LDF, "t")) {
+            exporter.onEntry("word", "line1\r\nline2\nline3");
+        }
+        try (LDSourceReader reader = new LDSourceReader(outFile.getPath())) {
+            assertEquals("t", reader.getTitle());
+            assertEquals("line1<br/>line2<br/>line3", reader.readTerm().getExplain());
+            assertNull(reader.readTerm());
+        }
+    }
+
+    public void testLdfRoundTrip() throws Exception {
+        String[] words = {"a|b", "", "c:\\", "\\|", "x\ny", "|", "plain"};
+        // LDF没有转义：|换成全角的｜，换行换成空格，空单词跳过
+        String[] expected = {"a\uFF5Cb", null, "c:\\", "\\\uFF5C", "x y", "\uFF5C", "plain"};
+        long exported;
+        try (DictEntryExporter exporter = new DictEntryExporter(outFile.getPath(), ExportFormat.LDF, "t")) {
+            for (int i = 0; i < words.length; i++) {
+                exporter.onEntry(words[i], "xml" + i);
+            }
+            exported = exporter.getEntries();
+            assertEquals(1, exporter.getSkipped());
+        }
+        assertEquals(words.length - 1, exported);
+
+        try (LDSourceReader reader = new LDSourceReader(outFile.getPath())) {
+            for (int i = 0; i < words.length; i++) {
+                if (expected[i] == null) {
+                    continue;
+                }
+                Term term = reader.readTerm();
+                assertEquals(Arrays.asList(expected[i]), term.getWords());
+                assertEquals("xml" + i, term.getExplain());
+            }
+            assertNull(reader.readTerm());
+        }
+    }
+
+    public void testLdfAlternateWords() throws Exception {
+        // 读取LDF的规则不变：只按照|拆分，没有转义，结尾的空单词被丢掉
+        assertEquals(Arrays.asList("good", "well", "best"), new Term("good|well|best", "x").getWords());
+        assertEquals(Arrays.asList("a\\", "b"), new Term("a\\|b", "x").getWords());
+        assertEquals(Arrays.asList("a\\\\b"), new Term("a\\\\b", "x").getWords());
+        assertEquals(Arrays.asList("a"), new Term("a|", "x").getWords());
+
+        StringBuilder sb = new StringBuilder();
+        ExportFormat.LDF.entry(sb, "b|c", "x");
+        assertEquals(Arrays.asList("b\uFF5Cc"), new Term(sb.substring(0, sb.indexOf("\n")), "x").getWords());
+        assertFalse(ExportFormat.LDF.accepts(""));
+        assertTrue(ExportFormat.TSV.accepts(""));
+    }
+
+    public void testForPath() throws Exception {
+        assertEquals(ExportFormat.JSONL, ExportFormat.forPath("out/dict.JSONL"));
+        assertEquals(ExportFormat.LDF, ExportFormat.forPath("dict.ldf"));
+        assertNull(ExportFormat.forPath("dict.inflated"));
+    }
+}
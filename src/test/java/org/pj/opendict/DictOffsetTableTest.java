@@ -0,0 +1,69 @@
+package org.pj.opendict;
+
+import junit.framework.TestCase;
+import org.pj.opendict.dicts.DictOffset;
+import org.pj.opendict.dicts.DictOffsetTable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class DictOffsetTableTest extends TestCase {
+
+    public void testAdd() throws Exception {
+        DictOffsetTable table = new DictOffsetTable();
+        for (int i = 0; i <= 1000; i++) {
+            table.add(new DictOffset(i * 3, i * 7, (byte) 0, (byte) (i % 3)));
+        }
+
+        assertEquals(1001, table.size());
+        assertEquals(300, table.getWordOffset(100));
+        assertEquals(700, table.getXmlOffset(100));
+        assertEquals(1, table.getRefInt(100));
+        assertEquals(3, table.getWordLength(100));
+        assertEquals(7, table.getXmlLength(100));
+
+        DictOffset dictOffset = table.get(100);
+        assertEquals(3, dictOffset.getWordLength());
+        assertEquals(new DictOffset(300, 700, (byte) 0, (byte) 1), dictOffset);
+    }
+
+    public void testWrap() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 30).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(-1);
+        buffer.putInt(0).putInt(0).put((byte) 0).put((byte) 0);
+        buffer.putInt(5).putInt(20).put((byte) 1).put((byte) 0xFF);
+        buffer.putInt(9).putInt(26).put((byte) 0).put((byte) 0);
+
+        DictOffsetTable table = DictOffsetTable.wrap(buffer, 4, 30);
+        assertEquals(3, table.size());
+        assertEquals(4, table.getWordLength(1));
+        assertEquals(6, table.getXmlLength(1));
+        assertEquals(255, table.getRefInt(1));
+
+        try {
+            table.add(0, 0, (byte) 0, (byte) 0);
+            fail("wrapped table is read only");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    public void testLinkedEqualsIsNotRecursive() throws Exception {
+        DictOffset first = null;
+        DictOffset last = null;
+        for (int i = 0; i < 100000; i++) {
+            DictOffset dictOffset = new DictOffset(i, i, (byte) 0, (byte) 0);
+            if (last != null) {
+                last.setNext(dictOffset);
+                dictOffset.setPrev(last);
+            } else {
+                first = dictOffset;
+            }
+            last = dictOffset;
+        }
+        DictOffset other = new DictOffset(0, 0, (byte) 0, (byte) 0);
+
+        assertEquals(first, other);
+        assertEquals(first.hashCode(), other.hashCode());
+    }
+}
@@ -0,0 +1,151 @@
+package org.pj.opendict;
+
+import junit.framework.TestCase;
+import org.pj.opendict.dicts.DictEntryHandler;
+import org.pj.opendict.dicts.InflaterPool;
+import org.pj.opendict.dicts.lingoes.InflatedDataCache;
+import org.pj.opendict.dicts.lingoes.LingoesDictReader;
+import org.pj.opendict.dicts.lingoes.LingoesInflateDictReader;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Inflater;
+
+public class InflatedDataCacheTest extends TestCase {
+
+    private SyntheticLD2 ld2;
+    private File dictFile;
+    private Path cacheDir;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        ld2 = SyntheticLD2.sample(300).blockSize(400);
+        dictFile = File.createTempFile("synthetic", ".ld2");
+        ld2.write(dictFile.toPath());
+        cacheDir = Files.createTempDirectory("inflated-cache");
+    }
+
+    public void tearDown() throws Exception {
+        dictFile.delete();
+        for (File file : cacheDir.toFile().listFiles()) {
+            file.delete();
+        }
+        Files.delete(cacheDir);
+    }
+
+    public void testReuse() throws Exception {
+        InflatedDataCache cache = new InflatedDataCache(cacheDir.toString(), 1024 * 1024);
+
+        Path first = cache.decompress(new LingoesDictReader(dictFile.getPath()), 2);
+        assertTrue(Arrays.equals(ld2.inflated(), Files.readAllBytes(first)));
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        Path second = cache.decompress(new LingoesDictReader(dictFile.getPath()), 2);
+        assertEquals(first, second);
+        assertEquals(1, cache.getHits());
+
+        LingoesInflateDictReader reader = cache.open(new LingoesDictReader(dictFile.getPath()), 1);
+        assertEquals(ld2.expectedDict(), reader.getDict());
+        assertEquals(2, cache.getHits());
+    }
+
+    public void testTruncatedEntry() throws Exception {
+        InflatedDataCache cache = new InflatedDataCache(cacheDir.toString(), 1024 * 1024);
+        Path path = cache.decompress(new LingoesDictReader(dictFile.getPath()), 1);
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(file.length() / 2);
+        }
+
+        cache.decompress(new LingoesDictReader(dictFile.getPath()), 1);
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertTrue(Arrays.equals(ld2.inflated(), Files.readAllBytes(path)));
+    }
+
+    public void testStaleEntry() throws Exception {
+        InflatedDataCache cache = new InflatedDataCache(cacheDir.toString(), 1024 * 1024);
+        Path first = cache.decompress(new LingoesDictReader(dictFile.getPath()), 1);
+
+        // 内容和修改时间变化以后不能再使用以前的缓存
+        SyntheticLD2 changed = SyntheticLD2.sample(301).blockSize(400);
+        changed.write(dictFile.toPath());
+        Files.setLastModifiedTime(dictFile.toPath(), FileTime.fromMillis(System.currentTimeMillis() + 5000));
+
+        Path second = cache.decompress(new LingoesDictReader(dictFile.getPath()), 1);
+        assertFalse(first.equals(second));
+        assertEquals(0, cache.getHits());
+        assertTrue(Arrays.equals(changed.inflated(), Files.readAllBytes(second)));
+    }
+
+    public void testEviction() throws Exception {
+        long length = ld2.inflated().length;
+        InflatedDataCache cache = new InflatedDataCache(cacheDir.toString(), length * 2);
+
+        Path[] paths = new Path[3];
+        for (int i = 0; i < paths.length; i++) {
+            ld2.id(100 + i).write(dictFile.toPath());
+            paths[i] = cache.decompress(new LingoesDictReader(dictFile.getPath()), 1);
+            Files.setLastModifiedTime(paths[i], FileTime.fromMillis(System.currentTimeMillis() - 60000 + i * 1000));
+        }
+
+        // 最久没有使用的被删除
+        assertFalse(Files.exists(paths[0]));
+        assertTrue(Files.exists(paths[1]));
+        assertTrue(Files.exists(paths[2]));
+        assertEquals(2, cacheDir.toFile().list().length);
+    }
+
+    public void testReaderUsesCache() throws Exception {
+        final InflatedDataCache cache = new InflatedDataCache(cacheDir.toString(), 1024 * 1024);
+        final AtomicInteger acquired = new AtomicInteger();
+        InflaterPool pool = new InflaterPool(4) {
+            @Override
+            public synchronized Inflater acquire() {
+                acquired.incrementAndGet();
+                return super.acquire();
+            }
+        };
+
+        LingoesDictReader first = new LingoesDictReader(dictFile.getPath());
+        first.setInflaterPool(pool);
+        first.setInflatedDataCache(cache);
+        assertEquals(ld2.expectedDict(), first.openInflated(2).getDict());
+        assertTrue(acquired.get() > 0);
+        assertEquals(1, cache.getMisses());
+
+        // 第二次打开直接使用缓存，不再解压
+        acquired.set(0);
+        LingoesDictReader second = new LingoesDictReader(dictFile.getPath());
+        second.setInflaterPool(pool);
+        second.setInflatedDataCache(cache);
+        assertEquals(ld2.expectedDict(), second.openInflated(2, false).getDict());
+
+        final Map<String, String> exported = new LinkedHashMap<String, String>();
+        second.export(new DictEntryHandler() {
+            @Override
+            public void onEntry(String word, String xml) {
+                exported.put(word, xml);
+            }
+        }, 2);
+        assertEquals(ld2.expectedDict(), exported);
+
+        File inflatedFile = new File(cacheDir.toFile(), "copy.bin");
+        second.decompress(inflatedFile.getPath(), 2);
+        assertTrue(Arrays.equals(ld2.inflated(), Files.readAllBytes(inflatedFile.toPath())));
+        inflatedFile.delete();
+
+        assertEquals(0, acquired.get());
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        pool.close();
+    }
+}
@@ -0,0 +1,79 @@
+package org.pj.opendict;
+
+import junit.framework.TestCase;
+import org.pj.opendict.dicts.InflaterPool;
+import org.pj.opendict.dicts.lingoes.LingoesDictLookup;
+import org.pj.opendict.dicts.lingoes.LingoesDictReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Arrays;
+import java.util.zip.Inflater;
+
+public class InflaterPoolTest extends TestCase {
+
+    private SyntheticLD2 ld2;
+    private File dictFile;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        ld2 = SyntheticLD2.sample(1000).blockSize(300);
+        dictFile = File.createTempFile("synthetic", ".ld2");
+        ld2.write(dictFile.toPath());
+    }
+
+    public void tearDown() throws Exception {
+        dictFile.delete();
+    }
+
+    public void testReuse() throws Exception {
+        InflaterPool pool = new InflaterPool(2);
+        Inflater first = pool.acquire();
+        Inflater second = pool.acquire();
+        Inflater third = pool.acquire();
+        assertEquals(3, pool.getCreated());
+
+        pool.release(first);
+        pool.release(second);
+        // 超过上限的直接释放
+        pool.release(third);
+        assertEquals(2, pool.getIdle());
+
+        assertSame(second, pool.acquire());
+        assertEquals(3, pool.getCreated());
+
+        pool.close();
+        assertEquals(0, pool.getIdle());
+        try {
+            pool.acquire();
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public void testDecompress() throws Exception {
+        InflaterPool pool = new InflaterPool(8);
+        for (boolean mapped : new boolean[] { false, true }) {
+            LingoesDictReader dictReader = new LingoesDictReader(dictFile.getPath(), mapped);
+            dictReader.setInflaterPool(pool);
+            assertTrue(dictReader.getBlocks() > 10);
+
+            for (int parallelism : new int[] { 1, 4 }) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                dictReader.decompress(out, parallelism);
+                assertTrue(Arrays.equals(ld2.inflated(), out.toByteArray()));
+                assertEquals(ld2.expectedDict(), dictReader.openInflated(parallelism).getDict());
+            }
+
+            LingoesDictLookup lookup = dictReader.openLookup(1024);
+            assertEquals(ld2.expectedDict().get(ld2.words().get(500)), lookup.lookup(ld2.words().get(500)));
+        }
+
+        // 所有解压器都放回了池中，个数不超过并行的线程数
+        assertTrue(pool.getCreated() <= 4);
+        assertEquals(pool.getCreated(), pool.getIdle());
+        pool.close();
+    }
+}
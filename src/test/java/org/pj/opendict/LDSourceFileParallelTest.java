@@ -0,0 +1,99 @@
+package org.pj.opendict;
+
+import junit.framework.TestCase;
+import org.pj.opendict.dicts.Term;
+import org.pj.opendict.dicts.lingoes.LDSourceFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+public class LDSourceFileParallelTest extends TestCase {
+
+    private File file;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        file = File.createTempFile("synthetic", ".ldf");
+    }
+
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    private static void assertSameFile(LDSourceFile expected, LDSourceFile actual) {
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getCopyright(), actual.getCopyright());
+
+        List<Term> expectedTerms = expected.getTerms();
+        List<Term> actualTerms = actual.getTerms();
+        assertEquals(expectedTerms.size(), actualTerms.size());
+        for (int i = 0; i < expectedTerms.size(); i++) {
+            assertEquals(expectedTerms.get(i).getWords(), actualTerms.get(i).getWords());
+            assertEquals(expectedTerms.get(i).getExplain(), actualTerms.get(i).getExplain());
+        }
+    }
+
+    /**
+     * 混合各种行结束符、多个空行和空释义的文件
+     */
+    private void writeMixed(int count, long seed, boolean truncated) throws IOException {
+        Random random = new Random(seed);
+        String[] newlines = { "\n", "\r\n", "\r" };
+        StringBuilder sb = new StringBuilder();
+        String[] header = { "###Title: mixed", "###Description: d", "###Author: a", "###Email: e", "###Website: w", "###Copyright: c" };
+        for (String line : header) {
+            sb.append(line).append(newlines[random.nextInt(3)]);
+        }
+        for (int i = 0; i < count; i++) {
+            int blanks = random.nextInt(3);
+            for (int j = 0; j < blanks; j++) {
+                sb.append(newlines[random.nextInt(3)]);
+            }
+            sb.append("word").append(i);
+            if (i % 4 == 0) {
+                sb.append("|alt").append(i).append("|单词").append(i);
+            }
+            sb.append(newlines[random.nextInt(3)]);
+            if (i % 9 != 0) {
+                sb.append("<p>释义 ").append(i).append("</p>");
+            }
+            sb.append(newlines[random.nextInt(3)]);
+        }
+        if (truncated) {
+            sb.append("\n\nlast-word-without-explain");
+        }
+        Files.write(file.toPath(), sb.toString().getBytes("UTF-8"));
+    }
+
+    public void testDemo() throws Exception {
+        String demo = ClassLoader.getSystemResource("demo.ldf").getPath();
+        assertSameFile(new LDSourceFile(demo), new LDSourceFile(demo, 4, 16));
+    }
+
+    public void testMatchesSequential() throws Exception {
+        for (int seed = 0; seed < 5; seed++) {
+            writeMixed(2000, seed, seed % 2 == 0);
+            LDSourceFile sequential = new LDSourceFile(file.getPath());
+            for (int chunkSize : new int[] { 1, 37, 1000, 1 << 20 }) {
+                assertSameFile(sequential, new LDSourceFile(file.getPath(), 4, chunkSize));
+            }
+        }
+    }
+
+    public void testShortFile() throws Exception {
+        Files.write(file.toPath(), "###Title: t\n###Description: d\n".getBytes("UTF-8"));
+        try {
+            new LDSourceFile(file.getPath(), 4);
+            fail("short header");
+        } catch (IOException e) {
+            // expected
+        }
+
+        Files.write(file.toPath(), "1\n2\n3\n4\n5\n6".getBytes("UTF-8"));
+        assertEquals(0, new LDSourceFile(file.getPath(), 4, 1).getTerms().size());
+    }
+}
@@ -0,0 +1,128 @@
+package org.pj.opendict;
+
+import junit.framework.TestCase;
+import org.pj.opendict.dicts.Term;
+import org.pj.opendict.dicts.TermHandler;
+import org.pj.opendict.dicts.lingoes.LDSourceFile;
+import org.pj.opendict.dicts.lingoes.LDSourceReader;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class LDSourceReaderTest extends TestCase {
+
+    private String demo;
+    private File file;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        demo = ClassLoader.getSystemResource("demo.ldf").getPath();
+        file = File.createTempFile("synthetic", ".ldf");
+    }
+
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    private static void assertSameTerms(List<Term> expected, List<Term> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getWords(), actual.get(i).getWords());
+            assertEquals(expected.get(i).getExplain(), actual.get(i).getExplain());
+        }
+    }
+
+    public void testHeaderAndTerms() throws Exception {
+        LDSourceFile ldf = new LDSourceFile(demo);
+        try (LDSourceReader reader = new LDSourceReader(demo)) {
+            assertEquals("Lingoes English Dictionary", reader.getTitle());
+            assertEquals("Kevin", reader.getAuthor());
+            assertEquals("Copyright © 2007 Lingoes Project", reader.getCopyright());
+
+            List<Term> terms = new ArrayList<Term>();
+            for (Term term : reader) {
+                terms.add(term);
+            }
+            assertSameTerms(ldf.getTerms(), terms);
+            assertEquals("good", terms.get(3).getWords().get(0));
+            assertNull(reader.readTerm());
+        }
+    }
+
+    public void testStreamAndCallback() throws Exception {
+        try (Stream<Term> terms = new LDSourceReader(demo).terms()) {
+            assertEquals(4, terms.count());
+        }
+
+        final List<String> words = new ArrayList<String>();
+        try (LDSourceReader reader = new LDSourceReader(demo)) {
+            long count = reader.readAll(new TermHandler() {
+                @Override
+                public void onTerm(Term term) {
+                    words.addAll(term.getWords());
+                }
+            });
+            assertEquals(4, count);
+        }
+        assertTrue(words.contains("well"));
+    }
+
+    public void testBlankLinesAndTruncatedTerm() throws Exception {
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), Charset.forName("UTF-8"))) {
+            writer.write("###Title: t\n###Description: d\n###Author: a\n###Email: e\n###Website: w\n###Copyright: c\n");
+            writer.write("\n\n\nalpha\n<a/>\n\n\nbeta|b\n\r\ngamma\n");
+        }
+
+        try (LDSourceReader reader = new LDSourceReader(file.getPath())) {
+            Iterator<Term> terms = reader.iterator();
+            assertTrue(terms.hasNext());
+            assertEquals("<a/>", terms.next().getExplain());
+            Term beta = terms.next();
+            assertEquals("b", beta.getWords().get(1));
+            // 空的释义行也是释义
+            assertEquals("", beta.getExplain());
+            // 只有单词没有释义的词条被忽略
+            assertFalse(terms.hasNext());
+        }
+        assertEquals(2, new LDSourceFile(file.getPath()).getTerms().size());
+    }
+
+    public void testShortHeader() throws Exception {
+        Files.write(file.toPath(), "###Title: t\n###Description: d\n".getBytes("UTF-8"));
+        try {
+            new LDSourceReader(file.getPath());
+            fail("short header");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testLargeFile() throws Exception {
+        final int count = 50000;
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), Charset.forName("UTF-8"))) {
+            writer.write("###Title: t\n###Description: d\n###Author: a\n###Email: e\n###Website: w\n###Copyright: c\n\n");
+            for (int i = 0; i < count; i++) {
+                writer.write("word" + i + "|alt" + i + "\n释义" + i + "\n\n");
+            }
+        }
+
+        try (LDSourceReader reader = new LDSourceReader(file.getPath())) {
+            int i = 0;
+            Term term;
+            while ((term = reader.readTerm()) != null) {
+                assertEquals("alt" + i, term.getWords().get(1));
+                assertEquals("释义" + i, term.getExplain());
+                i++;
+            }
+            assertEquals(count, i);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package org.pj.opendict;
+
+import junit.framework.TestCase;
+import org.pj.opendict.dicts.Term;
+import org.pj.opendict.dicts.lingoes.LDSourceFile;
+import org.pj.opendict.dicts.lingoes.LDSourceReader;
+import org.pj.opendict.dicts.lingoes.LDSourceWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.CharacterCodingException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+public class LDSourceWriterTest extends TestCase {
+
+    private File file;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        file = File.createTempFile("written", ".ldf");
+    }
+
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    private static List<Term> terms(int count) {
+        List<Term> terms = new ArrayList<Term>();
+        for (int i = 0; i < count; i++) {
+            String word = i % 3 == 0 ? "word" + i + "|alt" + i + "|单词" + i : "word" + i;
+            terms.add(new Term(word, "<b>释义</b> " + i));
+        }
+        return terms;
+    }
+
+    private static void assertSameTerms(List<Term> expected, List<Term> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getWords(), actual.get(i).getWords());
+            assertEquals(expected.get(i).getExplain(), actual.get(i).getExplain());
+        }
+    }
+
+    public void testRoundTrip() throws Exception {
+        LDSourceFile ldf = new LDSourceFile(ClassLoader.getSystemResource("demo.ldf").getPath());
+        ldf.write(file.getPath());
+
+        LDSourceFile written = new LDSourceFile(file.getPath());
+        assertEquals(ldf.getTitle(), written.getTitle());
+        assertEquals(ldf.getCopyright(), written.getCopyright());
+        assertSameTerms(ldf.getTerms(), written.getTerms());
+    }
+
+    public void testParallelMatchesSequential() throws Exception {
+        List<Term> terms = terms(20000);
+        for (int parallelism : new int[] { 1, 4 }) {
+            try (LDSourceWriter writer = new LDSourceWriter(file.getPath(), "UTF-8", parallelism)) {
+                writer.writeHeader("t", "d", "a", "e", "w", "c");
+                assertEquals(terms.size(), writer.write(terms.iterator()));
+            }
+            List<Term> actual = new ArrayList<Term>();
+            try (LDSourceReader reader = new LDSourceReader(file.getPath())) {
+                assertEquals("t", reader.getTitle());
+                for (Term term : reader) {
+                    actual.add(term);
+                }
+            }
+            assertSameTerms(terms, actual);
+        }
+    }
+
+    public void testStream() throws Exception {
+        Stream<Term> terms = IntStream.range(0, 10000).mapToObj(new IntFunction<Term>() {
+            @Override
+            public Term apply(int i) {
+                return new Term("w" + i, "e" + i);
+            }
+        });
+        try (LDSourceWriter writer = new LDSourceWriter(file.getPath(), "UTF-16LE", 2)) {
+            writer.writeHeader("t", "d", "a", "e", "w", "c");
+            writer.write(terms);
+        }
+        try (LDSourceReader reader = new LDSourceReader(file.getPath(), "UTF-16LE")) {
+            int i = 0;
+            for (Term term : reader) {
+                assertEquals("w" + i, term.getWords().get(0));
+                assertEquals("e" + i, term.getExplain());
+                i++;
+            }
+            assertEquals(10000, i);
+        }
+    }
+
+    public void testSingleByteOrderMark() throws Exception {
+        List<Term> terms = terms(10000);
+        for (int parallelism : new int[] { 1, 4 }) {
+            try (LDSourceWriter writer = new LDSourceWriter(file.getPath(), "UTF-16", parallelism)) {
+                writer.writeHeader("t", "d", "a", "e", "w", "c");
+                writer.write(terms.iterator());
+            }
+
+            // 只有文件开始的一个BOM，后面都是不带BOM的大端编码
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            assertEquals((byte) 0xFE, bytes[0]);
+            assertEquals((byte) 0xFF, bytes[1]);
+            assertEquals(-1, new String(bytes, 2, bytes.length - 2, "UTF-16BE").indexOf('\uFEFF'));
+
+            List<Term> actual = new ArrayList<Term>();
+            try (LDSourceReader reader = new LDSourceReader(file.getPath(), "UTF-16")) {
+                assertEquals("t", reader.getTitle());
+                for (Term term : reader) {
+                    actual.add(term);
+                }
+            }
+            assertSameTerms(terms, actual);
+        }
+    }
+
+    public void testEmptyHeadwords() throws Exception {
+        List<Term> terms = new ArrayList<Term>();
+        terms.add(new Term("", "e0"));
+        terms.add(new Term("w1", "e1"));
+        terms.add(new Term("x\ny", "e2"));
+        try (LDSourceWriter writer = new LDSourceWriter(file.getPath())) {
+            writer.writeHeader("t", "d", "a", "e", "w", "c");
+            assertEquals(2, writer.write(terms.iterator()));
+            assertEquals(2, writer.getCount());
+        }
+
+        try (LDSourceReader reader = new LDSourceReader(file.getPath())) {
+            assertEquals("w1", reader.readTerm().getWords().get(0));
+            Term term = reader.readTerm();
+            assertEquals("x y", term.getWords().get(0));
+            assertEquals("e2", term.getExplain());
+            assertNull(reader.readTerm());
+        }
+    }
+
+    public void testUnmappable() throws Exception {
+        try {
+            try (LDSourceWriter writer = new LDSourceWriter(file.getPath(), "US-ASCII", 2)) {
+                writer.write(terms(10).iterator());
+            }
+            fail();
+        } catch (CharacterCodingException e) {
+            // 单词不能用ASCII编码
+        } catch (IOException e) {
+            fail(e.toString());
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.pj.opendict;
+
+import junit.framework.TestCase;
+import org.pj.opendict.dicts.lingoes.LingoesAsyncLoader;
+import org.pj.opendict.dicts.lingoes.LingoesDictReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+public class LingoesAsyncLoaderTest extends TestCase {
+
+    private File dictFile;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        dictFile = File.createTempFile("synthetic", ".ld2");
+    }
+
+    public void tearDown() throws Exception {
+        dictFile.delete();
+    }
+
+    public void testDecompress() throws Exception {
+        SyntheticLD2 ld2 = SyntheticLD2.sample(2000).blockSize(256);
+        ld2.write(dictFile.toPath());
+
+        for (int chunkSize : new int[] { 1, 1000, 1024 * 1024 }) {
+            LingoesAsyncLoader loader = new LingoesAsyncLoader(dictFile.getPath(), chunkSize, 3, 2);
+            assertEquals(new LingoesDictReader(dictFile.getPath()).getBlocks(), loader.getBlocks());
+            assertTrue(loader.getChunks() >= 1 && loader.getChunks() <= loader.getBlocks());
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            loader.decompress(out);
+            assertTrue("chunkSize=" + chunkSize, Arrays.equals(ld2.inflated(), out.toByteArray()));
+        }
+
+        LingoesAsyncLoader loader = new LingoesAsyncLoader(dictFile.getPath(), 4096, 2, 3);
+        assertEquals(ld2.expectedDict(), loader.open(true).getDict());
+    }
+
+    public void testLargeBlockTable() throws Exception {
+        // 数据块索引超过第一次读取的64KB
+        SyntheticLD2 ld2 = SyntheticLD2.sample(20000).blockSize(32);
+        ld2.write(dictFile.toPath());
+
+        LingoesAsyncLoader loader = new LingoesAsyncLoader(dictFile.getPath());
+        assertTrue(loader.getBlocks() * 4 > 64 * 1024);
+        assertTrue(Arrays.equals(ld2.inflated(), loader.inflate().array()));
+    }
+
+    public void testTruncated() throws Exception {
+        SyntheticLD2.sample(500).blockSize(256).write(dictFile.toPath());
+        LingoesAsyncLoader loader = new LingoesAsyncLoader(dictFile.getPath(), 1000, 2, 2);
+        try (RandomAccessFile file = new RandomAccessFile(dictFile, "rw")) {
+            file.setLength(file.length() - 100);
+        }
+        try {
+            loader.decompress(new ByteArrayOutputStream());
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
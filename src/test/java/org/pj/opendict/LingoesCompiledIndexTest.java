@@ -0,0 +1,101 @@
+package org.pj.opendict;
+
+import junit.framework.TestCase;
+import org.pj.opendict.dicts.lingoes.LingoesCompiledIndex;
+import org.pj.opendict.dicts.lingoes.LingoesDictReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+public class LingoesCompiledIndexTest extends TestCase {
+
+    private SyntheticLD2 ld2;
+    private File dictFile;
+    private File indexFile;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        ld2 = SyntheticLD2.sample(800).blockSize(400);
+        dictFile = File.createTempFile("synthetic", ".ld2");
+        indexFile = new File(dictFile.getPath() + LingoesCompiledIndex.EXT);
+        ld2.write(dictFile.toPath());
+    }
+
+    public void tearDown() throws Exception {
+        dictFile.delete();
+        indexFile.delete();
+    }
+
+    public void testCompileAndOpen() throws Exception {
+        LingoesCompiledIndex.compile(new LingoesDictReader(dictFile.getPath()), indexFile.getPath(), 2);
+        LingoesCompiledIndex index = LingoesCompiledIndex.open(dictFile.getPath(), indexFile.getPath(), 1024 * 16);
+
+        assertEquals(ld2.size(), index.size());
+        for (Map.Entry<String, String> entry : ld2.expectedDict().entrySet()) {
+            assertEquals(entry.getValue(), index.lookup(entry.getKey()));
+        }
+        assertEquals(ld2.expectedDict().get("word000123"), index.lookup("WORD000123"));
+        assertNull(index.lookup("missing"));
+
+        // 打开索引不需要解压数据块
+        LingoesCompiledIndex reopened = LingoesCompiledIndex.open(dictFile.getPath(), indexFile.getPath(), 1024 * 16);
+        assertEquals(0, reopened.getBlocks().getInflatedBlocks());
+        assertNotNull(reopened.lookup("word000700"));
+        assertTrue(reopened.getBlocks().getInflatedBlocks() <= 4);
+    }
+
+    public void testUnsortedDictionary() throws Exception {
+        SyntheticLD2 unsorted = new SyntheticLD2()
+                .add("pear", "<p/>")
+                .add("apple", "<a/>")
+                .add("zebra", "<z/>", 0, 1)
+                .add("mango", "<m/>");
+        unsorted.write(dictFile.toPath());
+
+        LingoesCompiledIndex index = LingoesCompiledIndex.openOrCompile(dictFile.getPath(), indexFile.getPath(), 1024, 1);
+        assertEquals(unsorted.expectedDict().get("zebra"), index.lookup("zebra"));
+        assertEquals("apple", index.getWord(0));
+        assertEquals(1, index.indexOf("Apple"));
+    }
+
+    public void testBinaryChecksum() throws Exception {
+        byte[] checksum = new byte[20];
+        for (int i = 0; i < checksum.length; i++) {
+            checksum[i] = (byte) (0x80 + i * 7);
+        }
+        SyntheticLD2.sample(100).checksum(checksum).write(dictFile.toPath());
+        assertTrue(Arrays.equals(checksum, new LingoesDictReader(dictFile.getPath()).getChecksumBytes()));
+
+        LingoesCompiledIndex.openOrCompile(dictFile.getPath(), indexFile.getPath(), 1024, 1);
+        LingoesCompiledIndex index = LingoesCompiledIndex.open(dictFile.getPath(), indexFile.getPath(), 1024);
+        assertEquals(100, index.size());
+
+        // 只有校验和不同
+        checksum[3] ^= 1;
+        SyntheticLD2.sample(100).checksum(checksum).write(dictFile.toPath());
+        try {
+            LingoesCompiledIndex.open(dictFile.getPath(), indexFile.getPath(), 1024);
+            fail("stale index");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testStaleIndex() throws Exception {
+        LingoesCompiledIndex.openOrCompile(dictFile.getPath(), indexFile.getPath(), 1024, 2);
+        SyntheticLD2.sample(801).id(42).write(dictFile.toPath());
+
+        try {
+            LingoesCompiledIndex.open(dictFile.getPath(), indexFile.getPath(), 1024);
+            fail("stale index");
+        } catch (IOException e) {
+            // expected
+        }
+
+        LingoesCompiledIndex index = LingoesCompiledIndex.openOrCompile(dictFile.getPath(), indexFile.getPath(), 1024, 2);
+        assertEquals(801, index.size());
+    }
+}
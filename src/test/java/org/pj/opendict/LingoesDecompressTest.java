@@ -0,0 +1,72 @@
+package org.pj.opendict;
+
+import junit.framework.TestCase;
+import org.pj.opendict.dicts.lingoes.LingoesDictReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.Arrays;
+
+public class LingoesDecompressTest extends TestCase {
+
+    private SyntheticLD2 ld2;
+    private File dictFile;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        ld2 = SyntheticLD2.sample(2000).blockSize(256);
+        dictFile = File.createTempFile("synthetic", ".ld2");
+        ld2.write(dictFile.toPath());
+    }
+
+    public void tearDown() throws Exception {
+        dictFile.delete();
+    }
+
+    public void testParallelMatchesSequential() throws Exception {
+        LingoesDictReader dictReader = new LingoesDictReader(dictFile.getPath());
+        assertTrue(dictReader.getBlocks() > 100);
+
+        ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+        dictReader.decompress(sequential);
+
+        for (int parallelism : new int[] { 2, 3, 8 }) {
+            ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+            dictReader.decompress(parallel, parallelism);
+            assertTrue("parallelism=" + parallelism, Arrays.equals(sequential.toByteArray(), parallel.toByteArray()));
+        }
+
+        assertTrue(Arrays.equals(ld2.inflated(), sequential.toByteArray()));
+    }
+
+    public void testParallelMapped() throws Exception {
+        LingoesDictReader dictReader = new LingoesDictReader(dictFile.getPath(), true);
+
+        ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+        dictReader.decompress(parallel, 4);
+        assertTrue(Arrays.equals(ld2.inflated(), parallel.toByteArray()));
+    }
+
+    public void testBlockArrays() throws Exception {
+        LingoesDictReader dictReader = new LingoesDictReader(dictFile.getPath(), true);
+        LongBuffer streams = dictReader.getDeflateStreams();
+        assertEquals(dictReader.getBlocks(), streams.remaining());
+        assertTrue(streams.isReadOnly());
+        for (int i = 1; i < streams.limit(); i++) {
+            assertTrue(streams.get(i) > streams.get(i - 1));
+        }
+
+        IntBuffer definitions = dictReader.getDefinitionsArray();
+        assertEquals(dictReader.getDefinitions(), definitions.remaining());
+        try {
+            streams.put(0, 1);
+            fail();
+        } catch (ReadOnlyBufferException e) {
+            // expected
+        }
+    }
+}
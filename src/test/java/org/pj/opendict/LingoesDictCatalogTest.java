@@ -0,0 +1,85 @@
+package org.pj.opendict;
+
+import junit.framework.TestCase;
+import org.pj.opendict.dicts.lingoes.LingoesDictCatalog;
+import org.pj.opendict.dicts.lingoes.LingoesDictInfo;
+import org.pj.opendict.dicts.lingoes.LingoesDictReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class LingoesDictCatalogTest extends TestCase {
+
+    private Path dictDir;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        dictDir = Files.createTempDirectory("ld2-catalog");
+    }
+
+    public void tearDown() throws Exception {
+        for (File file : dictDir.toFile().listFiles()) {
+            file.delete();
+        }
+        Files.delete(dictDir);
+    }
+
+    public void testProbe() throws Exception {
+        Path path = SyntheticLD2.sample(300).blockSize(400).id(0x1234abcdL).write(dictDir.resolve("a.ld2"));
+
+        LingoesDictInfo info = LingoesDictInfo.probe(path.toString());
+        LingoesDictReader reader = new LingoesDictReader(path.toString());
+        assertEquals(reader.getType(), info.getType());
+        assertEquals(reader.getChecksum(), info.getChecksum());
+        assertEquals(reader.getVersion(), info.getVersion());
+        assertEquals("1234abcd", info.getId());
+        assertEquals(reader.getId(), info.getId());
+        assertEquals(reader.getInfoPosition(), info.getInfoPosition());
+        assertEquals(reader.getDictType(), info.getDictType());
+        assertEquals(reader.getDefinitions(), info.getDefinitions());
+        assertEquals(300, info.getEntries());
+        assertEquals(reader.openInflated(1).size(), info.getEntries());
+        assertEquals(reader.getInflatWordsIndexLength(), info.getInflatWordsIndexLength());
+        assertEquals(reader.getInflatWordsLength(), info.getInflatWordsLength());
+        assertEquals(reader.getInflatedXmlLength(), info.getInflatedXmlLength());
+        assertEquals(reader.getInflatedLength(), info.getInflatedLength());
+        assertEquals(reader.getFileSize(), info.getFileSize());
+    }
+
+    public void testTruncated() throws Exception {
+        Path path = dictDir.resolve("short.ld2");
+        Files.write(path, new byte[50]);
+        try {
+            LingoesDictInfo.probe(path.toString());
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testScan() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            SyntheticLD2.sample(10 + i).id(100 + i).write(dictDir.resolve("dict" + i + (i == 4 ? ".LD2" : ".ld2")));
+        }
+        Files.write(dictDir.resolve("broken.ld2"), new byte[10]);
+        Files.write(dictDir.resolve("readme.txt"), new byte[200]);
+
+        for (int parallelism : new int[] { 1, 3 }) {
+            LingoesDictCatalog catalog = LingoesDictCatalog.scan(dictDir.toString(), parallelism);
+            assertEquals(5, catalog.size());
+            assertEquals(1, catalog.getFailures().size());
+            assertTrue(catalog.getFailures().containsKey(dictDir.resolve("broken.ld2").toString()));
+
+            for (int i = 0; i < 5; i++) {
+                LingoesDictInfo info = catalog.getDicts().get(i);
+                assertTrue(info.getFilePath().endsWith("dict" + i + (i == 4 ? ".LD2" : ".ld2")));
+                assertEquals(10 + i, info.getEntries());
+            }
+            assertEquals(catalog.getDicts().get(2), catalog.findById(Long.toHexString(102)));
+            assertNull(catalog.findById("ffff"));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.pj.opendict;
+
+import junit.framework.TestCase;
+import org.pj.opendict.dicts.lingoes.LingoesDictLookup;
+import org.pj.opendict.dicts.lingoes.LingoesDictReader;
+import org.pj.opendict.dicts.lingoes.LingoesInflatedBlocks;
+
+import java.io.File;
+import java.util.Map;
+
+public class LingoesDictLookupTest extends TestCase {
+
+    private SyntheticLD2 ld2;
+    private File dictFile;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        ld2 = SyntheticLD2.sample(1000).blockSize(300);
+        dictFile = File.createTempFile("synthetic", ".ld2");
+        ld2.write(dictFile.toPath());
+    }
+
+    public void tearDown() throws Exception {
+        dictFile.delete();
+    }
+
+    public void testLookup() throws Exception {
+        LingoesDictReader dictReader = new LingoesDictReader(dictFile.getPath(), true);
+        LingoesDictLookup lookup = dictReader.openLookup(4 * 1024);
+
+        assertEquals(ld2.size(), lookup.size());
+        for (Map.Entry<String, String> entry : ld2.expectedDict().entrySet()) {
+            assertEquals(entry.getValue(), lookup.lookup(entry.getKey()));
+        }
+        assertEquals(lookup.lookup("word000010"), lookup.lookup("WORD000010"));
+        assertNull(lookup.lookup("missing"));
+        assertNull(lookup.lookup(""));
+
+        // 缓存不能超过限制
+        assertTrue(lookup.getBlocks().getCachedBytes() <= 4 * 1024);
+    }
+
+    public void testOnlyNeededBlocks() throws Exception {
+        LingoesDictReader dictReader = new LingoesDictReader(dictFile.getPath());
+        LingoesDictLookup lookup = dictReader.openLookup(0);
+        lookup.getHeadwordIndex();
+
+        long inflated = lookup.getBlocks().getInflatedBlocks();
+        assertEquals(ld2.expectedDict().get("word000500"), lookup.lookup("word000500"));
+        // 二分查找只需要log(n)个索引和单词
+        long log2 = 32 - Integer.numberOfLeadingZeros(ld2.size());
+        assertTrue(lookup.getBlocks().getInflatedBlocks() - inflated <= log2 * 4 + 8);
+        assertTrue(lookup.getBlocks().getInflatedBlocks() - inflated < dictReader.getBlocks() / 2);
+    }
+
+    public void testProbedBlockMap() throws Exception {
+        // 按需建立的块映射和马上扫描所有数据块的结果一样
+        LingoesDictReader dictReader = new LingoesDictReader(dictFile.getPath());
+        LingoesInflatedBlocks scanned = new LingoesInflatedBlocks(dictReader, 1024, true);
+        LingoesInflatedBlocks probed = new LingoesInflatedBlocks(dictReader, 1024);
+        for (int i = 0; i < dictReader.getBlocks(); i++) {
+            assertEquals(scanned.getBlockStart(i), probed.getBlockStart(i));
+        }
+
+        byte[] inflated = ld2.inflated();
+        byte[] read = probed.read(250, 1000);
+        for (int i = 0; i < read.length; i++) {
+            assertEquals(inflated[250 + i], read[i]);
+        }
+    }
+
+    public void testUnequalInnerBlocks() throws Exception {
+        // 中间的数据块大小不同，但是总长度和假设一样大的时候相同，第2个数据块的长度也和第一个一样
+        ld2.blockSizes(300, 400, 300, 200);
+        ld2.write(dictFile.toPath());
+        LingoesDictReader dictReader = new LingoesDictReader(dictFile.getPath());
+        assertEquals(5, dictReader.getBlocks());
+
+        LingoesInflatedBlocks blocks = new LingoesInflatedBlocks(dictReader, 1024 * 1024);
+        assertFalse(blocks.isScanned());
+        byte[] inflated = ld2.inflated();
+        byte[] read = blocks.read(750, 100);
+        for (int i = 0; i < read.length; i++) {
+            assertEquals(inflated[750 + i], read[i]);
+        }
+        assertTrue(blocks.isScanned());
+        assertEquals(700, blocks.getBlockStart(2));
+
+        // 第一个和最后一个数据块不需要扫描
+        blocks = new LingoesInflatedBlocks(dictReader, 1024 * 1024);
+        assertEquals(inflated[10], blocks.read(10, 1)[0]);
+        assertEquals(inflated[inflated.length - 1], blocks.read(inflated.length - 1, 1)[0]);
+        assertFalse(blocks.isScanned());
+
+        LingoesDictLookup lookup = dictReader.openLookup(1024);
+        for (Map.Entry<String, String> entry : ld2.expectedDict().entrySet()) {
+            assertEquals(entry.getValue(), lookup.lookup(entry.getKey()));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.pj.opendict;
+
+import junit.framework.TestCase;
+import org.pj.opendict.dicts.lingoes.LingoesDictReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.LongBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+public class LingoesDictReaderMappedTest extends TestCase {
+
+    private SyntheticLD2 ld2;
+    private File dictFile;
+    private File inflatedFile;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        ld2 = SyntheticLD2.sample(500).blockSize(512);
+        dictFile = File.createTempFile("synthetic", ".ld2");
+        inflatedFile = File.createTempFile("synthetic", ".inflated");
+        ld2.write(dictFile.toPath());
+    }
+
+    public void tearDown() throws Exception {
+        dictFile.delete();
+        inflatedFile.delete();
+    }
+
+    public void testMappedHeader() throws Exception {
+        LingoesDictReader heap = new LingoesDictReader(dictFile.getPath());
+        LingoesDictReader mapped = new LingoesDictReader(dictFile.getPath(), true);
+
+        assertEquals("?LD2", mapped.getType());
+        assertEquals("2.5", mapped.getVersion());
+        assertEquals(3, mapped.getDictType());
+        assertEquals(heap.getId(), mapped.getId());
+        assertEquals(heap.getLimit(), mapped.getLimit());
+        assertEquals(heap.getBlocks(), mapped.getBlocks());
+        assertEquals(ld2.tableLength(), mapped.getInflatWordsIndexLength());
+        assertEquals(ld2.wordsLength(), mapped.getInflatWordsLength());
+        assertEquals(ld2.xmlLength(), mapped.getInflatedXmlLength());
+    }
+
+    public void testMappedDecompress() throws Exception {
+        LingoesDictReader mapped = new LingoesDictReader(dictFile.getPath(), true);
+        mapped.decompress(inflatedFile.getPath());
+
+        assertTrue(Arrays.equals(ld2.inflated(), Files.readAllBytes(inflatedFile.toPath())));
+    }
+
+    public void testUnsignedOffsets() throws Exception {
+        LingoesDictReader heap = new LingoesDictReader(dictFile.getPath());
+        final long lastEnd = 0x80000010L;
+        final long dataStart = heap.getOffsetCompressedDataHeader() + 12 + heap.getBlocks() * 4L;
+
+        // 稀疏文件，超过2GB的偏移地址不能被当作负数
+        try (RandomAccessFile file = new RandomAccessFile(dictFile, "rw")) {
+            file.setLength(dataStart + lastEnd);
+            putUnsignedInt(file, heap.getInfoPosition() + 4, dataStart + lastEnd - heap.getInfoPosition() - 4);
+            putUnsignedInt(file, dataStart - 4, lastEnd);
+        }
+
+        LingoesDictReader mapped = new LingoesDictReader(dictFile.getPath(), true);
+        assertEquals(dataStart + lastEnd, mapped.getLimit());
+        assertEquals(heap.getBlocks(), mapped.getBlocks());
+        LongBuffer streams = mapped.getDeflateStreams();
+        assertEquals(lastEnd, streams.get(streams.limit() - 1));
+    }
+
+    public void testDecreasingOffset() throws Exception {
+        LingoesDictReader heap = new LingoesDictReader(dictFile.getPath());
+        final long dataStart = heap.getOffsetCompressedDataHeader() + 12 + heap.getBlocks() * 4L;
+        try (RandomAccessFile file = new RandomAccessFile(dictFile, "rw")) {
+            putUnsignedInt(file, dataStart - 4, 1);
+        }
+
+        try {
+            new LingoesDictReader(dictFile.getPath());
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static void putUnsignedInt(RandomAccessFile file, long position, long value) throws IOException {
+        file.seek(position);
+        file.write(new byte[]{(byte) value, (byte) (value >>> 8), (byte) (value >>> 16), (byte) (value >>> 24)});
+    }
+}
@@ -0,0 +1,104 @@
+package org.pj.opendict;
+
+import junit.framework.TestCase;
+import org.pj.opendict.dicts.DictEntryHandler;
+import org.pj.opendict.dicts.lingoes.LingoesCompiledIndex;
+import org.pj.opendict.dicts.lingoes.LingoesDictLookup;
+import org.pj.opendict.dicts.lingoes.LingoesDictReader;
+import org.pj.opendict.dicts.lingoes.LingoesEncoding;
+import org.pj.opendict.dicts.lingoes.LingoesInflateDictReader;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class LingoesEncodingTest extends TestCase {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset UTF_16LE = Charset.forName("UTF-16LE");
+
+    private File dictFile;
+    private File indexFile;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        dictFile = File.createTempFile("synthetic", ".ld2");
+        indexFile = new File(dictFile.getPath() + LingoesCompiledIndex.EXT);
+    }
+
+    public void tearDown() throws Exception {
+        dictFile.delete();
+        indexFile.delete();
+    }
+
+    public void testDetect() throws Exception {
+        final byte[][] samples = {
+                "apple".getBytes(UTF_16LE),
+                "中文".getBytes(UTF_16LE),
+                new byte[0],
+                "<b>banana</b>".getBytes(UTF_16LE)
+        };
+        LingoesEncoding.Records records = new LingoesEncoding.Records() {
+            @Override
+            public int size() {
+                return samples.length;
+            }
+
+            @Override
+            public byte[] get(int index) {
+                return samples[index];
+            }
+        };
+        assertEquals(LingoesEncoding.UTF_16LE, LingoesEncoding.detect(records));
+
+        samples[0] = "apple".getBytes(UTF_8);
+        samples[1] = "中文".getBytes(UTF_8);
+        samples[3] = "<b>banana</b>".getBytes(UTF_8);
+        assertEquals(LingoesEncoding.UTF_8, LingoesEncoding.detect(records));
+    }
+
+    public void testInflated() throws Exception {
+        SyntheticLD2 ld2 = SyntheticLD2.sample(200).charset(UTF_8, UTF_16LE);
+        ld2.write(dictFile.toPath());
+
+        LingoesInflateDictReader reader = new LingoesDictReader(dictFile.getPath()).openInflated(2);
+        assertEquals(LingoesEncoding.UTF_8, reader.getWordEncoding());
+        assertEquals(LingoesEncoding.UTF_16LE, reader.getXmlEncoding());
+        assertEquals(ld2.expectedDict(), reader.getDict());
+    }
+
+    public void testStreamingAndLookup() throws Exception {
+        SyntheticLD2 ld2 = SyntheticLD2.sample(200).blockSize(300).charset(UTF_16LE, UTF_16LE);
+        ld2.write(dictFile.toPath());
+
+        LingoesDictReader dictReader = new LingoesDictReader(dictFile.getPath());
+        final Map<String, String> dict = new LinkedHashMap<String, String>();
+        dictReader.export(new DictEntryHandler() {
+            @Override
+            public void onEntry(String word, String xml) {
+                dict.put(word, xml);
+            }
+        }, 2);
+        assertEquals(ld2.expectedDict(), dict);
+
+        LingoesDictLookup lookup = dictReader.openLookup(1024 * 16);
+        assertEquals(LingoesEncoding.UTF_16LE, lookup.getWordEncoding());
+        assertEquals(LingoesEncoding.UTF_16LE, lookup.getXmlEncoding());
+        assertEquals(ld2.expectedDict().get("word000150"), lookup.lookup("word000150"));
+    }
+
+    public void testCompiledIndex() throws Exception {
+        SyntheticLD2 ld2 = SyntheticLD2.sample(200).charset(UTF_16LE, UTF_8);
+        ld2.write(dictFile.toPath());
+
+        LingoesCompiledIndex.openOrCompile(dictFile.getPath(), indexFile.getPath(), 1024 * 16, 2);
+        LingoesCompiledIndex index = LingoesCompiledIndex.open(dictFile.getPath(), indexFile.getPath(), 1024 * 16);
+        assertEquals(LingoesEncoding.UTF_16LE, index.getWordEncoding());
+        assertEquals(LingoesEncoding.UTF_8, index.getXmlEncoding());
+        for (Map.Entry<String, String> entry : ld2.expectedDict().entrySet()) {
+            assertEquals(entry.getValue(), index.lookup(entry.getKey()));
+        }
+    }
+}
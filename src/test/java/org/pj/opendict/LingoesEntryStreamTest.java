@@ -0,0 +1,83 @@
+package org.pj.opendict;
+
+import junit.framework.TestCase;
+import org.pj.opendict.dicts.lingoes.LingoesInflateDictReader;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+public class LingoesEntryStreamTest extends TestCase {
+
+    private SyntheticLD2 ld2;
+    private LingoesInflateDictReader reader;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        ld2 = SyntheticLD2.sample(5000);
+        byte[] inflated = ld2.inflated();
+        reader = new LingoesInflateDictReader(ByteBuffer.wrap(inflated), ld2.tableLength(),
+                ld2.wordsLength(), ld2.xmlLength(), false);
+    }
+
+    public void testSequential() throws Exception {
+        Map<String, String> dict = new LinkedHashMap<String, String>();
+        List<Integer> indexes = new ArrayList<Integer>();
+        for (LingoesInflateDictReader.Entry entry : reader.entries().collect(Collectors.toList())) {
+            dict.put(entry.getWord(), entry.getXml());
+            indexes.add(entry.getIndex());
+        }
+        assertEquals(ld2.expectedDict(), dict);
+        assertEquals(ld2.words(), new ArrayList<String>(dict.keySet()));
+        for (int i = 0; i < indexes.size(); i++) {
+            assertEquals(i, (int) indexes.get(i));
+        }
+    }
+
+    public void testParallel() throws Exception {
+        Map<String, String> dict = reader.entries().parallel()
+                .collect(Collectors.toMap(new Function<LingoesInflateDictReader.Entry, String>() {
+                    @Override
+                    public String apply(LingoesInflateDictReader.Entry entry) {
+                        return entry.getKey();
+                    }
+                }, new Function<LingoesInflateDictReader.Entry, String>() {
+                    @Override
+                    public String apply(LingoesInflateDictReader.Entry entry) {
+                        return entry.getValue();
+                    }
+                }));
+        assertEquals(ld2.expectedDict(), dict);
+
+        // 并行的时候保持顺序
+        List<String> words = reader.entries().parallel().map(new Function<LingoesInflateDictReader.Entry, String>() {
+            @Override
+            public String apply(LingoesInflateDictReader.Entry entry) {
+                return entry.getWord();
+            }
+        }).collect(Collectors.<String>toList());
+        assertEquals(ld2.words(), words);
+    }
+
+    public void testSplit() throws Exception {
+        Spliterator<LingoesInflateDictReader.Entry> right = reader.spliterator();
+        assertEquals(reader.size(), right.getExactSizeIfKnown());
+        Spliterator<LingoesInflateDictReader.Entry> left = right.trySplit();
+        assertNotNull(left);
+        assertEquals(reader.size(), left.estimateSize() + right.estimateSize());
+        assertTrue(left.hasCharacteristics(Spliterator.SUBSIZED | Spliterator.ORDERED));
+
+        // 只有一个词条的时候不能再分割
+        while (left.estimateSize() > 1) {
+            left = left.trySplit();
+        }
+        assertNull(left.trySplit());
+        assertEquals(1, left.getExactSizeIfKnown());
+    }
+}
@@ -0,0 +1,103 @@
+package org.pj.opendict;
+
+import junit.framework.TestCase;
+import org.pj.opendict.dicts.lingoes.LingoesHeadwordIndex;
+import org.pj.opendict.dicts.lingoes.LingoesInflateDictReader;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class LingoesHeadwordIndexTest extends TestCase {
+
+    private static LingoesInflateDictReader open(SyntheticLD2 ld2) {
+        return new LingoesInflateDictReader(ByteBuffer.wrap(ld2.inflated()), ld2.tableLength(), ld2.wordsLength(), ld2.xmlLength(), false);
+    }
+
+    public void testStoredOrder() throws Exception {
+        SyntheticLD2 ld2 = SyntheticLD2.sample(500);
+        LingoesInflateDictReader reader = open(ld2);
+
+        for (Map.Entry<String, String> entry : ld2.expectedDict().entrySet()) {
+            assertEquals(entry.getValue(), reader.lookup(entry.getKey()));
+        }
+        assertNull(reader.lookup("word"));
+        assertNull(reader.lookup("zzz"));
+
+        assertTrue(reader.getHeadwordIndex().isStoredOrder());
+        assertEquals(LingoesHeadwordIndex.Collation.CASE_INSENSITIVE_THEN_CASE, reader.getHeadwordIndex().getCollation());
+    }
+
+    public void testCaseInsensitive() throws Exception {
+        SyntheticLD2 ld2 = new SyntheticLD2()
+                .add("apple", "<a>1</a>")
+                .add("Apple", "<a>2</a>")
+                .add("banana", "<b>3</b>")
+                .add("Cherry", "<c>4</c>");
+        LingoesInflateDictReader reader = open(ld2);
+
+        assertEquals(LingoesHeadwordIndex.Collation.CASE_INSENSITIVE, reader.getHeadwordIndex().getCollation());
+        assertEquals("<a>1</a>", reader.lookup("apple"));
+        assertEquals("<a>2</a>", reader.lookup("Apple"));
+        assertEquals("<a>1</a>", reader.lookup("APPLE"));
+        assertEquals("<c>4</c>", reader.lookup("cherry"));
+    }
+
+    public void testUnsortedFallback() throws Exception {
+        SyntheticLD2 ld2 = new SyntheticLD2()
+                .add("pear", "<p/>")
+                .add("apple", "<a/>")
+                .add("zebra", "<z/>")
+                .add("mango", "<m/>", 1);
+        LingoesInflateDictReader reader = open(ld2);
+
+        assertFalse(reader.getHeadwordIndex().isStoredOrder());
+        assertEquals(1, reader.indexOf("apple"));
+        assertEquals("<m/>, <a/>", reader.lookup("mango"));
+        assertEquals("<z/>", reader.lookup("Zebra"));
+        assertEquals(-1, reader.indexOf("kiwi"));
+    }
+
+    public void testInversionBetweenSamples() throws Exception {
+        final List<String> words = new ArrayList<String>();
+        for (int i = 0; i < 1000; i++) {
+            words.add(String.format("word%04d", i));
+        }
+        // 抽样点之间只有一处顺序不对
+        Collections.swap(words, 5, 6);
+        LingoesHeadwordIndex.Headwords headwords = new LingoesHeadwordIndex.Headwords() {
+            @Override
+            public int size() {
+                return words.size();
+            }
+
+            @Override
+            public String getWord(int index) {
+                return words.get(index);
+            }
+        };
+
+        LingoesHeadwordIndex index = LingoesHeadwordIndex.sample(headwords);
+        assertFalse(index.isStoredOrder());
+        for (int i = 0; i < words.size(); i++) {
+            assertEquals(i, index.indexOf(words.get(i)));
+        }
+
+        Collections.swap(words, 5, 6);
+        assertTrue(LingoesHeadwordIndex.sample(headwords).isStoredOrder());
+    }
+
+    public void testCollationMatchesString() throws Exception {
+        String[] words = {"", "a", "A", "ab", "aB", "b", "\u00e9", "\u00c9", "\u0130", "i", "\u4e2d"};
+        for (String o1 : words) {
+            for (String o2 : words) {
+                assertEquals(Integer.signum(o1.compareTo(o2)),
+                        Integer.signum(LingoesHeadwordIndex.Collation.NATURAL.compare(new StringBuilder(o1), o2)));
+                assertEquals(Integer.signum(String.CASE_INSENSITIVE_ORDER.compare(o1, o2)),
+                        Integer.signum(LingoesHeadwordIndex.Collation.CASE_INSENSITIVE.compare(new StringBuilder(o1), o2)));
+            }
+        }
+    }
+}
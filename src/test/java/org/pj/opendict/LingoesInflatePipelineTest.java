@@ -0,0 +1,185 @@
+package org.pj.opendict;
+
+import junit.framework.TestCase;
+import org.pj.opendict.dicts.DictEntryHandler;
+import org.pj.opendict.dicts.lingoes.LingoesDictReader;
+import org.pj.opendict.dicts.lingoes.LingoesInflateDictReader;
+import org.pj.opendict.dicts.lingoes.LingoesInflateStreamDecoder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class LingoesInflatePipelineTest extends TestCase {
+
+    private SyntheticLD2 ld2;
+    private File dictFile;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        ld2 = SyntheticLD2.sample(300).blockSize(200);
+        dictFile = File.createTempFile("synthetic", ".ld2");
+        ld2.write(dictFile.toPath());
+    }
+
+    public void tearDown() throws Exception {
+        dictFile.delete();
+    }
+
+    public void testInMemory() throws Exception {
+        LingoesDictReader dictReader = new LingoesDictReader(dictFile.getPath());
+        LingoesInflateDictReader inflateDictReader = dictReader.openInflated(2);
+
+        assertEquals(ld2.expectedDict(), inflateDictReader.getDict());
+    }
+
+    public void testStreaming() throws Exception {
+        LingoesDictReader dictReader = new LingoesDictReader(dictFile.getPath(), true);
+        final Map<String, String> dict = new LinkedHashMap<String, String>();
+        dictReader.export(new DictEntryHandler() {
+            @Override
+            public void onEntry(String word, String xml) {
+                dict.put(word, xml);
+            }
+        }, 3);
+
+        assertEquals(ld2.expectedDict(), dict);
+        assertEquals(ld2.words(), new ArrayList<String>(dict.keySet()));
+    }
+
+    public void testForwardReferences() throws Exception {
+        // 前面的词条引用后面的释义，需要等到后面的XML到达以后才能回调
+        SyntheticLD2 forward = new SyntheticLD2()
+                .add("alpha", "", 3)
+                .add("beta", "<b>beta</b>", 0)
+                .add("gamma", "<g>gamma</g>")
+                .add("delta", "<d>delta</d>");
+        byte[] inflated = forward.inflated();
+
+        final Map<String, String> dict = new LinkedHashMap<String, String>();
+        LingoesInflateStreamDecoder decoder = new LingoesInflateStreamDecoder(new DictEntryHandler() {
+            @Override
+            public void onEntry(String word, String xml) {
+                dict.put(word, xml);
+            }
+        }, forward.tableLength(), forward.wordsLength(), forward.xmlLength());
+        for (byte b : inflated) {
+            decoder.write(b);
+        }
+        decoder.close();
+
+        assertEquals(forward.expectedDict(), dict);
+    }
+
+    public void testFarForwardReference() throws Exception {
+        // 第一个词条引用最后一个词条，中间的XML不能因为等待引用而一直留在窗口中
+        final int count = 20000;
+        SyntheticLD2 forward = new SyntheticLD2().add("a", "<a/>", count);
+        for (int i = 1; i <= count; i++) {
+            forward.add(String.format("w%06d", i), "<C><F><I><N>definition of word " + i + " with some padding text</N></I></F></C>");
+        }
+        byte[] inflated = forward.inflated();
+        assertTrue(forward.xmlLength() > 1024 * 1024);
+
+        final Map<String, String> dict = new LinkedHashMap<String, String>();
+        LingoesInflateStreamDecoder decoder = new LingoesInflateStreamDecoder(new DictEntryHandler() {
+            @Override
+            public void onEntry(String word, String xml) {
+                dict.put(word, xml);
+            }
+        }, forward.tableLength(), forward.wordsLength(), forward.xmlLength());
+        int maxPending = 0;
+        for (int off = 0; off < inflated.length; off += 4096) {
+            decoder.write(inflated, off, Math.min(4096, inflated.length - off));
+            maxPending = Math.max(maxPending, decoder.getPending());
+        }
+        decoder.close();
+
+        assertEquals(forward.expectedDict(), dict);
+        assertEquals(count + 1, decoder.getEntries());
+        assertEquals(1, maxPending);
+        assertEquals(0, decoder.getPending());
+        // 窗口保持初始大小，和XML部分的长度无关
+        assertTrue(decoder.getWindowCapacity() <= 64 * 1024);
+    }
+
+    public void testSharedDefinitions() throws Exception {
+        // 很多变形引用同一个释义，有的还有自己的释义
+        SyntheticLD2 shared = new SyntheticLD2().add("go", "<g>go</g>");
+        for (int i = 1; i <= 200; i++) {
+            shared.add("go" + i, i % 2 == 0 ? "" : "<f>" + i + "</f>", 0, Math.max(i - 1, 0));
+        }
+        byte[] inflated = shared.inflated();
+        LingoesInflateDictReader reader = new LingoesInflateDictReader(ByteBuffer.wrap(inflated), shared.tableLength(),
+                shared.wordsLength(), shared.xmlLength());
+
+        Map<String, String> dict = reader.getDict();
+        assertEquals(shared.expectedDict(), dict);
+        assertEquals(shared.size(), dict.size());
+        for (int i = 0; i < reader.size(); i++) {
+            assertEquals(reader.getXml(i), dict.get(reader.getWord(i)));
+        }
+        // 引用只连接目标词条自己的释义
+        assertEquals("<g>go</g>, <f>1</f>", dict.get("go2"));
+        assertNull(dict.get("missing"));
+        assertTrue(dict.containsKey("go200"));
+    }
+
+    public void testStreamingSharedDefinitions() throws Exception {
+        SyntheticLD2 shared = new SyntheticLD2().add("go", "<g>go</g>");
+        for (int i = 1; i <= 200; i++) {
+            shared.add("go" + i, i % 2 == 0 ? "" : "<f>" + i + "</f>", 0, Math.max(i - 1, 0));
+        }
+        shared.add("went", "<w/>");
+        byte[] inflated = shared.inflated();
+
+        final Map<String, String> dict = new LinkedHashMap<String, String>();
+        LingoesInflateStreamDecoder decoder = new LingoesInflateStreamDecoder(new DictEntryHandler() {
+            @Override
+            public void onEntry(String word, String xml) {
+                dict.put(word, xml);
+            }
+        }, shared.tableLength(), shared.wordsLength(), shared.xmlLength());
+        for (int off = 0; off < inflated.length; off += 97) {
+            decoder.write(inflated, off, Math.min(97, inflated.length - off));
+        }
+        decoder.close();
+
+        assertEquals(shared.expectedDict(), dict);
+        assertEquals("<g>go</g>, <f>1</f>", dict.get("go2"));
+        // 所有引用都已经使用过，保留的XML全部释放
+        assertEquals(0, decoder.getRetained());
+    }
+
+    public void testEmptyFirstDefinition() throws Exception {
+        // 第一个词条自己没有释义
+        SyntheticLD2 empty = new SyntheticLD2()
+                .add("alpha", "", 1)
+                .add("beta", "<b>beta</b>");
+        empty.write(dictFile.toPath());
+
+        Map<String, String> dict = new LingoesDictReader(dictFile.getPath()).openInflated(1).getDict();
+        assertEquals(empty.expectedDict(), dict);
+        assertEquals("<b>beta</b>", dict.get("alpha"));
+    }
+
+    public void testTruncated() throws Exception {
+        byte[] inflated = ld2.inflated();
+        LingoesInflateStreamDecoder decoder = new LingoesInflateStreamDecoder(new DictEntryHandler() {
+            @Override
+            public void onEntry(String word, String xml) {
+            }
+        }, ld2.tableLength(), ld2.wordsLength(), ld2.xmlLength());
+        decoder.write(inflated, 0, inflated.length - 10);
+        try {
+            decoder.close();
+            fail("truncated data");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
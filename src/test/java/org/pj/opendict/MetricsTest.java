@@ -0,0 +1,97 @@
+package org.pj.opendict;
+
+import junit.framework.TestCase;
+import org.pj.opendict.dicts.lingoes.LingoesDictReader;
+import org.pj.opendict.dicts.lingoes.LingoesInflateDictReader;
+import org.pj.opendict.metrics.Metrics;
+import org.pj.opendict.metrics.Phase;
+import org.pj.opendict.metrics.PhaseMetrics;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+public class MetricsTest extends TestCase {
+
+    private SyntheticLD2 ld2;
+    private File dictFile;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        ld2 = SyntheticLD2.sample(100).blockSize(300);
+        dictFile = File.createTempFile("synthetic", ".ld2");
+        ld2.write(dictFile.toPath());
+        Metrics.reset();
+    }
+
+    public void tearDown() throws Exception {
+        Metrics.setEnabled(false);
+        Metrics.reset();
+        dictFile.delete();
+    }
+
+    public void testDisabled() throws Exception {
+        Metrics.setEnabled(false);
+        new LingoesDictReader(dictFile.getPath()).openInflated(1);
+
+        for (Phase phase : Phase.values()) {
+            assertEquals(0, Metrics.get(phase).getCount());
+        }
+    }
+
+    public void testPhases() throws Exception {
+        Metrics.setEnabled(true);
+        LingoesDictReader dictReader = new LingoesDictReader(dictFile.getPath());
+        LingoesInflateDictReader reader = dictReader.openInflated(2);
+        reader.getHeadwordIndex();
+
+        assertEquals(1, Metrics.get(Phase.HEADER_PARSE).getCount());
+        assertEquals(dictReader.getBlocks(), Metrics.get(Phase.BLOCK_INFLATE).getCount());
+        assertEquals(dictReader.getInflatedLength(), Metrics.get(Phase.BLOCK_INFLATE).getBytes());
+        assertEquals(1, Metrics.get(Phase.INDEX_BUILD).getCount());
+        // 建立HashMap的时候每个词条解码一次单词（释义读取的时候才解码），建立单词索引的时候再解码一次单词
+        assertEquals(ld2.size() * 2, Metrics.get(Phase.ENTRY_DECODE).getCount());
+        int referencing = 0;
+        for (int i = 0; i < reader.size(); i++) {
+            if (reader.getRefs(i).length > 0) {
+                referencing++;
+            }
+        }
+        assertTrue(referencing > 0);
+        assertEquals(referencing, Metrics.get(Phase.REF_RESOLVE).getCount());
+        assertTrue(Metrics.report().contains("BLOCK_INFLATE"));
+    }
+
+    public void testHistogram() throws Exception {
+        PhaseMetrics metrics = Metrics.get(Phase.LDF_PARSE);
+        for (int i = 1; i <= 100; i++) {
+            metrics.record(10, i * 1000);
+        }
+
+        assertEquals(100, metrics.getCount());
+        assertEquals(1000, metrics.getBytes());
+        assertEquals(100000, metrics.getMaxNanos());
+        assertEquals(50500, metrics.getMeanNanos());
+        // 百分位数是所在桶的上界，误差不超过2倍
+        assertTrue(metrics.getP50Nanos() >= 50000 && metrics.getP50Nanos() < 100000);
+        assertTrue(metrics.getP99Nanos() >= 99000 && metrics.getP99Nanos() <= 100000);
+    }
+
+    public void testJmx() throws Exception {
+        Metrics.registerMBeans();
+        try {
+            Metrics.get(Phase.BLOCK_INFLATE).record(123, 456);
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(Metrics.JMX_DOMAIN + ":type=Metrics,phase=BLOCK_INFLATE");
+            assertEquals(1L, server.getAttribute(name, "Count"));
+            assertEquals(123L, server.getAttribute(name, "Bytes"));
+            // 重复注册会被忽略
+            Metrics.registerMBeans();
+        } finally {
+            Metrics.unregisterMBeans();
+        }
+    }
+}
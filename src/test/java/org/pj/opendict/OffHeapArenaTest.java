@@ -0,0 +1,173 @@
+package org.pj.opendict;
+
+import junit.framework.TestCase;
+import org.pj.opendict.dicts.DictOffsetTable;
+import org.pj.opendict.dicts.OffHeapArena;
+import org.pj.opendict.dicts.lingoes.LingoesDictReader;
+import org.pj.opendict.dicts.lingoes.LingoesInflateDictReader;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class OffHeapArenaTest extends TestCase {
+
+    private SyntheticLD2 ld2;
+    private File dictFile;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        ld2 = SyntheticLD2.sample(2000).blockSize(700);
+        dictFile = File.createTempFile("synthetic", ".ld2");
+        ld2.write(dictFile.toPath());
+    }
+
+    public void tearDown() throws Exception {
+        dictFile.delete();
+    }
+
+    public void testLookup() throws Exception {
+        LingoesDictReader dictReader = new LingoesDictReader(dictFile.getPath(), true);
+        try (OffHeapArena arena = new OffHeapArena()) {
+            LingoesInflateDictReader reader = dictReader.openOffHeap(2, arena);
+            assertSame(arena, reader.getArena());
+            assertEquals(dictReader.getInflatedLength(), arena.getAllocated());
+
+            for (Map.Entry<String, String> entry : ld2.expectedDict().entrySet()) {
+                assertEquals(entry.getValue(), reader.lookup(entry.getKey()));
+            }
+            assertNull(reader.lookup("missing word"));
+            // 建立Map也可以直接读取堆外数据
+            assertEquals(ld2.expectedDict(), reader.getDict());
+        }
+    }
+
+    public void testClosed() throws Exception {
+        LingoesDictReader dictReader = new LingoesDictReader(dictFile.getPath());
+        OffHeapArena arena = new OffHeapArena();
+        LingoesInflateDictReader first = dictReader.openOffHeap(1, arena);
+        LingoesInflateDictReader second = dictReader.openOffHeap(1, arena);
+        assertEquals(dictReader.getInflatedLength() * 2, arena.getAllocated());
+        assertEquals(first.getXml(0), second.getXml(0));
+
+        arena.close();
+        assertFalse(arena.isOpen());
+        assertEquals(0, arena.getAllocated());
+        for (LingoesInflateDictReader reader : new LingoesInflateDictReader[] { first, second }) {
+            try {
+                reader.getXml(0);
+                fail();
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        }
+        try {
+            arena.allocate(16);
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public void testOffsetTableAfterClose() throws Exception {
+        LingoesDictReader dictReader = new LingoesDictReader(dictFile.getPath());
+        OffHeapArena arena = new OffHeapArena();
+        LingoesInflateDictReader reader = dictReader.openOffHeap(1, arena);
+        LingoesInflateDictReader unused = dictReader.openOffHeap(1, arena);
+        DictOffsetTable table = reader.getOffsetTable();
+        assertSame(table, reader.getOffsetTable());
+        final int[] xmlOffsets = new int[table.size()];
+        for (int i = 0; i < table.size(); i++) {
+            xmlOffsets[i] = table.getXmlOffset(i);
+        }
+
+        arena.close();
+        // 已经拿到的索引表在堆内存中，区域关闭以后仍然可以读取
+        assertEquals(ld2.size() + 1, table.size());
+        for (int i = 0; i < table.size(); i++) {
+            assertEquals(xmlOffsets[i], table.getXmlOffset(i));
+        }
+        try {
+            unused.getOffsetTable();
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public void testCloseWaitsForReaders() throws Exception {
+        final OffHeapArena arena = new OffHeapArena();
+        arena.allocate(1024);
+        arena.enter();
+
+        final CountDownLatch closed = new CountDownLatch(1);
+        Thread closer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                arena.close();
+                closed.countDown();
+            }
+        });
+        closer.start();
+
+        // 正在读取的时候不能释放内存
+        assertFalse(closed.await(200, TimeUnit.MILLISECONDS));
+        arena.exit();
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+        closer.join();
+        assertEquals(0, arena.getAllocated());
+
+        try {
+            arena.enter();
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public void testCloseWhileLooking() throws Exception {
+        final LingoesDictReader dictReader = new LingoesDictReader(dictFile.getPath());
+        final OffHeapArena arena = new OffHeapArena();
+        final LingoesInflateDictReader reader = dictReader.openOffHeap(1, arena);
+        final Map<String, String> expected = ld2.expectedDict();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        int count = 0;
+                        while (true) {
+                            for (Map.Entry<String, String> entry : expected.entrySet()) {
+                                try {
+                                    assertEquals(entry.getValue(), reader.lookup(entry.getKey()));
+                                } catch (IllegalStateException e) {
+                                    // 关闭以后不能再读取
+                                    return count;
+                                }
+                                count++;
+                            }
+                        }
+                    }
+                }));
+            }
+            Thread.sleep(100);
+            arena.close();
+            for (Future<Integer> future : futures) {
+                assertTrue(future.get(10, TimeUnit.SECONDS) >= 0);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
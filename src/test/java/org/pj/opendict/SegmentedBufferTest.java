@@ -0,0 +1,68 @@
+package org.pj.opendict;
+
+import junit.framework.TestCase;
+import org.pj.opendict.dicts.SegmentedBuffer;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+
+public class SegmentedBufferTest extends TestCase {
+
+    private File file;
+    private byte[] bytes;
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        bytes = new byte[1000];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i * 7);
+        }
+        file = File.createTempFile("segmented", ".bin");
+        Files.write(file.toPath(), bytes);
+    }
+
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    public void testReadAcrossSegments() throws Exception {
+        ByteBuffer expected = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            SegmentedBuffer buffer = SegmentedBuffer.map(channel, 64);
+            assertEquals(16, buffer.getSegmentCount());
+            assertEquals(bytes.length, buffer.size());
+
+            for (int i = 0; i < bytes.length - 8; i++) {
+                assertEquals(expected.get(i), buffer.get(i));
+                assertEquals(expected.getShort(i), buffer.getShort(i));
+                assertEquals(expected.getInt(i), buffer.getInt(i));
+                assertEquals(expected.getLong(i), buffer.getLong(i));
+            }
+
+            ByteBuffer slice = buffer.slice(60, 200);
+            for (int i = 0; i < 200; i++) {
+                assertEquals(bytes[60 + i], slice.get(i));
+            }
+        }
+    }
+
+    public void testWrap() throws Exception {
+        SegmentedBuffer buffer = SegmentedBuffer.wrap(ByteBuffer.wrap(bytes));
+        assertEquals(1, buffer.getSegmentCount());
+        assertEquals(ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).getInt(996), buffer.getInt(996));
+        assertTrue(buffer.slice(10, 20).hasArray());
+
+        try {
+            buffer.getInt(997);
+            fail("read beyond the end");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package org.pj.opendict;
+
+import junit.framework.TestCase;
+import org.pj.opendict.dicts.SensitiveStringDecoder;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class SensitiveStringDecoderTest extends TestCase {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset UTF_16LE = Charset.forName("UTF-16LE");
+
+    private static final String[] WORDS = {"", "apple", "café", "naïve résumé", "中文词典", "abc中文def", "xÿĀy"};
+
+    public void testDecode() throws Exception {
+        for (Charset cs : new Charset[]{UTF_8, UTF_16LE, Charset.forName("ISO-8859-1"), Charset.forName("GBK")}) {
+            SensitiveStringDecoder decoder = new SensitiveStringDecoder(cs);
+            for (String word : WORDS) {
+                if (!cs.newEncoder().canEncode(word)) {
+                    continue;
+                }
+                byte[] padded = ("#" + word + "#").getBytes(cs);
+                byte[] prefix = "#".getBytes(cs);
+                int off = prefix.length;
+                int len = padded.length - 2 * prefix.length;
+
+                assertEquals(word, new String(decoder.decode(padded, off, len)));
+                assertEquals(word, decoder.decodeString(padded, off, len));
+                assertEquals(word, decoder.decodeView(padded, off, len).toString());
+
+                StringBuilder sb = new StringBuilder(">");
+                assertEquals(word.length(), decoder.decode(padded, off, len, sb));
+                assertEquals(">" + word, sb.toString());
+            }
+        }
+    }
+
+    public void testDirectBuffer() throws Exception {
+        for (Charset cs : new Charset[]{UTF_8, UTF_16LE, Charset.forName("ISO-8859-1"), Charset.forName("GBK")}) {
+            SensitiveStringDecoder decoder = new SensitiveStringDecoder(cs);
+            for (String word : WORDS) {
+                if (!cs.newEncoder().canEncode(word)) {
+                    continue;
+                }
+                byte[] padded = ("#" + word + "#").getBytes(cs);
+                ByteBuffer direct = ByteBuffer.allocateDirect(padded.length);
+                direct.put(padded);
+                direct.position(1);
+                int off = "#".getBytes(cs).length;
+                int len = padded.length - 2 * off;
+
+                assertEquals(word, decoder.decodeString(direct, off, len));
+                assertEquals(word, decoder.decodeView(direct, off, len).toString());
+                StringBuilder sb = new StringBuilder(">");
+                assertEquals(word.length(), decoder.decode(direct, off, len, sb));
+                assertEquals(">" + word, sb.toString());
+                // 绝对位置读取，不改变position
+                assertEquals(1, direct.position());
+
+                // 堆内的ByteBuffer使用数组
+                assertEquals(word, decoder.decodeString(ByteBuffer.wrap(padded), off, len));
+            }
+        }
+    }
+
+    public void testViewIsReused() throws Exception {
+        SensitiveStringDecoder decoder = new SensitiveStringDecoder(UTF_8);
+        byte[] bytes = "hello world".getBytes(UTF_8);
+
+        CharSequence first = decoder.decodeView(bytes, 0, 5);
+        assertEquals("hello", first.toString());
+        CharSequence second = decoder.decodeView(bytes, 6, 5);
+        assertSame(first, second);
+        assertEquals("world", second.toString());
+        assertEquals('w', second.charAt(0));
+        assertEquals(5, second.length());
+    }
+
+    public void testMalformed() throws Exception {
+        SensitiveStringDecoder decoder = new SensitiveStringDecoder(UTF_8);
+        byte[] bytes = {'a', 'b', (byte) 0xC3};
+        try {
+            decoder.decodeString(bytes, 0, bytes.length);
+            fail("malformed input");
+        } catch (Error e) {
+            // expected
+        }
+        // 出错以后解码器还可以继续使用
+        assertEquals("ab", decoder.decodeString(bytes, 0, 2));
+    }
+
+    public void testConcurrentDecode() throws Exception {
+        final SensitiveStringDecoder decoder = new SensitiveStringDecoder(UTF_8);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+            for (int t = 0; t < 4; t++) {
+                final int seed = t;
+                futures.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        for (int i = 0; i < 2000; i++) {
+                            String word = WORDS[(i + seed) % WORDS.length] + i;
+                            byte[] bytes = word.getBytes(UTF_8);
+                            if (!word.contentEquals(decoder.decodeView(bytes, 0, bytes.length))) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> future : futures) {
+                assertTrue(future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testDoesNotRetainInput() throws Exception {
+        SensitiveStringDecoder decoder = new SensitiveStringDecoder(UTF_8);
+        byte[] bytes = "中文词典".getBytes(UTF_8);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes);
+        assertEquals("中文词典", decoder.decodeString(bytes, 0, bytes.length));
+        assertEquals("中文词典", decoder.decodeString(direct, 0, bytes.length));
+
+        // 解码器的线程缓存不能让解码过的数据一直留在内存中
+        WeakReference<byte[]> bytesRef = new WeakReference<byte[]>(bytes);
+        WeakReference<ByteBuffer> directRef = new WeakReference<ByteBuffer>(direct);
+        bytes = null;
+        direct = null;
+        for (int i = 0; i < 50 && (bytesRef.get() != null || directRef.get() != null); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(bytesRef.get());
+        assertNull(directRef.get());
+
+        byte[] other = "词典".getBytes(UTF_8);
+        assertEquals("词典", decoder.decodeString(other, 0, other.length));
+    }
+}
@@ -0,0 +1,240 @@
+package org.pj.opendict;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * 测试用的LD2文件生成器，按照LingoesDictReader的解析方式生成一个最小的type=3词典文件。
+ * 基准测试模块通过test-jar使用同一个生成器。
+ */
+public class SyntheticLD2 {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static class Entry {
+        final String word;
+        final String xml;
+        final int[] refs;
+
+        Entry(String word, String xml, int[] refs) {
+            this.word = word;
+            this.xml = xml;
+            this.refs = refs;
+        }
+    }
+
+    private final List<Entry> entries = new ArrayList<Entry>();
+    private Charset wordCharset = UTF_8;
+    private Charset xmlCharset = UTF_8;
+    private int blockSize = 1024;
+    private int[] blockSizes = null;
+    private int infoOffset = 64;
+    private long id = 0x1234abcdL;
+    private byte[] checksum = defaultChecksum();
+
+    /**
+     * 生成count个按字母顺序排列的单词，每隔几个单词增加一个引用前一个单词的词条
+     */
+    public static SyntheticLD2 sample(int count) {
+        SyntheticLD2 ld2 = new SyntheticLD2();
+        for (int i = 0; i < count; i++) {
+            String word = String.format("word%06d", i);
+            if (i > 0 && i % 5 == 0) {
+                ld2.add(word, "", i - 1);
+            } else {
+                ld2.add(word, "<C><F><H></H><I><N><![CDATA[definition of " + word + " #" + i + "]]></N></I></F></C>");
+            }
+        }
+        return ld2;
+    }
+
+    public SyntheticLD2 add(String word, String xml, int... refs) {
+        entries.add(new Entry(word, xml, refs));
+        return this;
+    }
+
+    public SyntheticLD2 blockSize(int blockSize) {
+        this.blockSize = blockSize;
+        return this;
+    }
+
+    /**
+     * 指定前面几个数据块解压后的大小，剩下的数据都放在最后一个数据块中
+     */
+    public SyntheticLD2 blockSizes(int... blockSizes) {
+        this.blockSizes = blockSizes.clone();
+        return this;
+    }
+
+    public SyntheticLD2 charset(Charset wordCharset, Charset xmlCharset) {
+        this.wordCharset = wordCharset;
+        this.xmlCharset = xmlCharset;
+        return this;
+    }
+
+    public SyntheticLD2 checksum(byte[] checksum) {
+        this.checksum = Arrays.copyOf(checksum, 20);
+        return this;
+    }
+
+    public SyntheticLD2 id(long id) {
+        this.id = id;
+        return this;
+    }
+
+    /**
+     * 真实的校验和是二进制数据，默认也包含非ASCII字节
+     */
+    private static byte[] defaultChecksum() {
+        byte[] checksum = new byte[20];
+        for (int i = 0; i < checksum.length; i++) {
+            checksum[i] = (byte) (i % 2 == 0 ? 'c' : 0x80 + i * 3);
+        }
+        return checksum;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int tableLength() {
+        return (entries.size() + 1) * 10;
+    }
+
+    public int wordsLength() {
+        int length = 0;
+        for (Entry entry : entries) {
+            length += entry.refs.length * 4 + entry.word.getBytes(wordCharset).length;
+        }
+        return length;
+    }
+
+    public int xmlLength() {
+        int length = 0;
+        for (Entry entry : entries) {
+            length += entry.xml.getBytes(xmlCharset).length;
+        }
+        return length;
+    }
+
+    /**
+     * @return 解压后的数据：索引表|单词|XML
+     */
+    public byte[] inflated() {
+        ByteBuffer table = ByteBuffer.allocate(tableLength()).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer words = ByteBuffer.allocate(wordsLength()).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer xmls = ByteBuffer.allocate(xmlLength());
+        for (Entry entry : entries) {
+            table.putInt(words.position()).putInt(xmls.position()).put((byte) 0).put((byte) entry.refs.length);
+            for (int ref : entry.refs) {
+                words.putInt(ref);
+            }
+            words.put(entry.word.getBytes(wordCharset));
+            xmls.put(entry.xml.getBytes(xmlCharset));
+        }
+        table.putInt(words.position()).putInt(xmls.position()).put((byte) 0).put((byte) 0);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(table.array(), 0, table.capacity());
+        out.write(words.array(), 0, words.capacity());
+        out.write(xmls.array(), 0, xmls.capacity());
+        return out.toByteArray();
+    }
+
+    /**
+     * @return 按照LingoesInflateDictReader的方式解析出来的词典内容
+     */
+    public Map<String, String> expectedDict() {
+        Map<String, String> dict = new LinkedHashMap<String, String>();
+        for (Entry entry : entries) {
+            String xml = entry.xml;
+            for (int ref : entry.refs) {
+                String refXml = entries.get(ref).xml;
+                xml = xml.isEmpty() ? refXml : xml + ", " + refXml;
+            }
+            dict.put(entry.word, xml);
+        }
+        return dict;
+    }
+
+    public List<String> words() {
+        List<String> words = new ArrayList<String>();
+        for (Entry entry : entries) {
+            words.add(entry.word);
+        }
+        return words;
+    }
+
+    public byte[] build() {
+        byte[] inflated = inflated();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        List<Integer> blockEnds = new ArrayList<Integer>();
+        Deflater deflater = new Deflater();
+        byte[] buffer = new byte[4096];
+        for (int start = 0, block = 0; start < inflated.length; block++) {
+            int size = Math.min(blockSize, inflated.length - start);
+            if (blockSizes != null) {
+                size = block < blockSizes.length ? blockSizes[block] : inflated.length - start;
+            }
+            deflater.reset();
+            deflater.setInput(inflated, start, size);
+            start += size;
+            deflater.finish();
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                compressed.write(buffer, 0, n);
+            }
+            blockEnds.add(compressed.size());
+        }
+        deflater.end();
+
+        final int definitions = 4;
+        final int infoPosition = 96 + infoOffset;
+        final int offsetIndex = infoPosition + 28;
+        final int compressedHeader = offsetIndex + definitions * 4;
+        final int dataStart = compressedHeader + 12 + blockEnds.size() * 4;
+        final int limit = dataStart + compressed.size();
+
+        ByteBuffer file = ByteBuffer.allocate(limit).order(ByteOrder.LITTLE_ENDIAN);
+        file.put("?LD2".getBytes(UTF_8));
+        file.put(checksum);
+        file.putShort((short) 2).putShort((short) 5);
+        file.putLong(id);
+        file.position(92);
+        file.putInt(infoOffset);
+
+        file.position(infoPosition);
+        file.putInt(3);
+        file.putInt(limit - infoPosition - 4);
+        file.putInt(definitions * 4);
+        file.putInt(tableLength());
+        file.putInt(wordsLength());
+        file.putInt(xmlLength());
+        file.putInt(0);
+        for (int i = 0; i < definitions; i++) {
+            file.putInt(i);
+        }
+
+        file.putInt(0).putInt(0).putInt(0);
+        for (Integer end : blockEnds) {
+            file.putInt(end);
+        }
+        file.put(compressed.toByteArray());
+        return file.array();
+    }
+
+    public Path write(Path path) throws IOException {
+        Files.write(path, build());
+        return path;
+    }
+}
@@ -0,0 +1,89 @@
+package org.pj.opendict;
+
+import junit.framework.TestCase;
+import org.pj.opendict.dicts.Term;
+import org.pj.opendict.dicts.TermIndex;
+import org.pj.opendict.dicts.lingoes.LDSourceFile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TermIndexTest extends TestCase {
+
+    private static Term linearSearch(List<Term> terms, String word) {
+        for (Term term : terms) {
+            if (term.getWords().contains(word)) {
+                return term;
+            }
+        }
+        return null;
+    }
+
+    public void testAlternateWords() throws Exception {
+        LDSourceFile ldf = new LDSourceFile(ClassLoader.getSystemResource("demo.ldf").getPath());
+
+        // best同时是一个词条和good|well|best的替代单词，返回第一个
+        assertSame(ldf.getTerms().get(2), ldf.searchTerm("best"));
+        assertSame(ldf.getTerms().get(3), ldf.searchTerm("well"));
+        assertSame(ldf.getTerms().get(3), ldf.searchTerm("good"));
+        assertNull(ldf.searchTerm("Well"));
+        assertSame(ldf.getTerms().get(3), ldf.searchTerm("Well", true));
+        assertNull(ldf.searchTerm("missing", true));
+        assertNull(ldf.searchTerm(null));
+    }
+
+    public void testMatchesLinearSearch() throws Exception {
+        Random random = new Random(7);
+        List<Term> terms = new ArrayList<Term>();
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder word = new StringBuilder("w" + random.nextInt(3000));
+            int alternates = random.nextInt(3);
+            for (int j = 0; j < alternates; j++) {
+                word.append("|a").append(random.nextInt(3000));
+            }
+            terms.add(new Term(word.toString(), "explain " + i));
+        }
+
+        TermIndex index = new TermIndex(terms, false);
+        for (int i = 0; i < 3000; i++) {
+            assertSame(linearSearch(terms, "w" + i), index.get("w" + i));
+            assertSame(linearSearch(terms, "a" + i), index.get("a" + i));
+        }
+    }
+
+    public void testUpdate() throws Exception {
+        List<Term> terms = new ArrayList<Term>();
+        terms.add(new Term("apple|Apfel", "<a/>"));
+        TermIndex index = new TermIndex(terms, true);
+        assertEquals(2, index.size());
+        assertEquals(0, index.indexOf("APFEL"));
+
+        // 后面增加的词条自动加入索引
+        terms.add(new Term("banana", "<b/>"));
+        assertEquals(1, index.indexOf("Banana"));
+
+        // 替换词条以后重新建立
+        terms.set(0, new Term("cherry", "<c/>"));
+        index.rebuild();
+        assertEquals(-1, index.indexOf("apple"));
+        assertEquals(0, index.indexOf("CHERRY"));
+
+        terms.remove(1);
+        assertEquals(-1, index.indexOf("banana"));
+        assertEquals(1, index.size());
+    }
+
+    public void testCaseFolding() throws Exception {
+        List<Term> terms = new ArrayList<Term>();
+        terms.add(new Term("Straße|ÉCOLE|İstanbul", "x"));
+        TermIndex index = new TermIndex(terms, true);
+        for (String word : new String[] { "straße", "STRASSE", "école", "istanbul", "İSTANBUL" }) {
+            boolean expected = false;
+            for (String key : terms.get(0).getWords()) {
+                expected |= key.equalsIgnoreCase(word);
+            }
+            assertEquals(word, expected, index.indexOf(word) == 0);
+        }
+    }
+}